@@ -0,0 +1,198 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.App;
+import com.github.votingsessionmanager.domain.Lease;
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.mongodb.MongoClient;
+import com.mongodb.ServerAddress;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.mongo.embedded.EmbeddedMongoAutoConfiguration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs three nodes of the application, each in its own JVM, against one embedded mongodb and checks that exactly one of
+ * them leads the session expiry job and that another takes over when the leader stops or crashes. Run with
+ * {@code ./gradlew failoverTest}, node logs go to {@code build/failoverTest}.
+ */
+public class LeaderFailoverTest {
+
+    private static final String DATABASE = "failover";
+    private static final String JOB = "session-expiry";
+    private static final int NODES = 3;
+    private static final Duration LEASE_TTL = Duration.ofSeconds(3);
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofMillis(500);
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+    private static final Duration SLACK = Duration.ofSeconds(1);
+    private static final File LOG_DIRECTORY = new File("build/failoverTest");
+
+    private static MongodExecutable mongod;
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+    private static int port;
+
+    private final Map<String, Process> nodes = new LinkedHashMap<>();
+
+    @BeforeAll
+    public static void startMongo() throws IOException {
+        port = Network.getFreeServerPort();
+        mongod = MongodStarter.getDefaultInstance().prepare(new MongodConfigBuilder()
+                .version(Version.Main.V4_0)
+                .net(new Net("localhost", port, Network.localhostIsIPv6()))
+                .build());
+        mongod.start();
+
+        client = new MongoClient(new ServerAddress("localhost", port));
+        mongoTemplate = new MongoTemplate(client, DATABASE);
+        LOG_DIRECTORY.mkdirs();
+    }
+
+    @AfterAll
+    public static void stopMongo() {
+        client.close();
+        mongod.stop();
+    }
+
+    @BeforeEach
+    public void startNodes() throws IOException {
+        for (int i = 1; i <= NODES; i++) {
+            String nodeId = "node-" + i;
+            nodes.put(nodeId, new ProcessBuilder(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"),
+                    App.class.getName(),
+                    "--spring.data.mongodb.uri=mongodb://localhost:" + port + "/" + DATABASE,
+                    "--spring.autoconfigure.exclude=" + EmbeddedMongoAutoConfiguration.class.getName(),
+                    "--server.port=0",
+                    "--leader_election.node_id=" + nodeId,
+                    "--leader_election.lease_ttl=" + LEASE_TTL.toMillis() + "ms",
+                    "--leader_election.heartbeat_interval=" + HEARTBEAT_INTERVAL.toMillis() + "ms",
+                    "--session_expiry.sweep_interval=" + HEARTBEAT_INTERVAL.toMillis() + "ms")
+                    .redirectErrorStream(true)
+                    .redirectOutput(new File(LOG_DIRECTORY, nodeId + ".log"))
+                    .start());
+        }
+    }
+
+    @AfterEach
+    public void stopNodes() throws InterruptedException {
+        for (Process node : nodes.values()) {
+            node.destroyForcibly().waitFor();
+        }
+
+        mongoTemplate.getDb().drop();
+    }
+
+    @Test
+    public void shouldElectExactlyOneLeader() throws InterruptedException {
+        Lease leader = awaitLeader(null, STARTUP_TIMEOUT);
+        long end = System.nanoTime() + LEASE_TTL.multipliedBy(2).toNanos();
+
+        while (System.nanoTime() < end) {
+            Lease lease = mongoTemplate.findById(JOB, Lease.class);
+
+            assertEquals(leader.getHolder(), lease.getHolder());
+            assertEquals(leader.getToken(), lease.getToken());
+            Thread.sleep(HEARTBEAT_INTERVAL.toMillis() / 2);
+        }
+    }
+
+    @Test
+    public void shouldTakeOverWhenTheLeaderCrashes() throws InterruptedException {
+        Lease crashed = awaitLeader(null, STARTUP_TIMEOUT);
+
+        nodes.get(crashed.getHolder()).destroyForcibly().waitFor();
+        long crashedAt = System.nanoTime();
+
+        Lease next = awaitLeader(crashed.getHolder(), LEASE_TTL.plus(HEARTBEAT_INTERVAL).plus(SLACK));
+
+        assertTrue(next.getToken() > crashed.getToken());
+        assertTrue(Duration.ofNanos(System.nanoTime() - crashedAt).compareTo(LEASE_TTL.plus(HEARTBEAT_INTERVAL).plus(SLACK)) <= 0);
+    }
+
+    @Test
+    public void shouldTakeOverRightAwayWhenTheLeaderStops() throws InterruptedException {
+        Lease stopped = awaitLeader(null, STARTUP_TIMEOUT);
+
+        nodes.get(stopped.getHolder()).destroy();
+        nodes.get(stopped.getHolder()).waitFor();
+
+        Lease next = awaitLeader(stopped.getHolder(), HEARTBEAT_INTERVAL.plus(SLACK));
+
+        assertTrue(next.getToken() > stopped.getToken());
+    }
+
+    @Test
+    public void shouldKeepClosingExpiredSessionsAfterFailover() throws InterruptedException {
+        Lease crashed = awaitLeader(null, STARTUP_TIMEOUT);
+        assertSweepCloses(openedSession());
+
+        nodes.get(crashed.getHolder()).destroyForcibly().waitFor();
+        awaitLeader(crashed.getHolder(), LEASE_TTL.plus(HEARTBEAT_INTERVAL).plus(SLACK));
+
+        assertSweepCloses(openedSession());
+    }
+
+    /**
+     * Waits for a node other than the excluded one to hold an unexpired lease on the job.
+     */
+    private Lease awaitLeader(String excludedHolder, Duration timeout) throws InterruptedException {
+        return await(() -> {
+            Lease lease = mongoTemplate.findById(JOB, Lease.class);
+            boolean held = lease != null && !lease.getHolder().equals(excludedHolder) && lease.getExpiresAt().isAfter(LocalDateTime.now());
+            return held ? lease : null;
+        }, timeout, "No node took the lease of " + JOB + " within " + timeout + ".");
+    }
+
+    private void assertSweepCloses(Session session) throws InterruptedException {
+        Duration timeout = HEARTBEAT_INTERVAL.multipliedBy(2).plus(SLACK);
+
+        await(() -> {
+            Session stored = mongoTemplate.findById(session.getId(), Session.class);
+            return stored.getStatus().equals(SessionStatus.CLOSED) ? stored : null;
+        }, timeout, "Expired session " + session.getId() + " wasn't closed within " + timeout + ".");
+    }
+
+    private Session openedSession() {
+        Session session = new Session(null, "1", 1, SessionStatus.OPENED);
+        session.setStartDate(LocalDateTime.now().minusMinutes(1));
+        session.setEndDate(LocalDateTime.now());
+        return mongoTemplate.insert(session);
+    }
+
+    private <T> T await(Supplier<T> condition, Duration timeout, String failure) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+
+        while (System.nanoTime() < deadline) {
+            T result = condition.get();
+
+            if (result != null) {
+                return result;
+            }
+
+            Thread.sleep(50);
+        }
+
+        return fail(failure);
+    }
+}
@@ -0,0 +1,286 @@
+package com.github.votingsessionmanager.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+import com.github.votingsessionmanager.feign.AsyncCPFValidator;
+import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.github.votingsessionmanager.repository.AgendaResultRepository;
+import com.github.votingsessionmanager.repository.SessionRepository;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import com.github.votingsessionmanager.service.AgendaCache;
+import com.github.votingsessionmanager.service.AgendaResultsProjector;
+import com.github.votingsessionmanager.service.LiveResults;
+import com.github.votingsessionmanager.service.SessionExpiryScheduler;
+import com.github.votingsessionmanager.service.VoteBuffer;
+import com.github.votingsessionmanager.service.VoteJournal;
+import com.github.votingsessionmanager.service.VoteWriter;
+import com.github.votingsessionmanager.service.VotingMetrics;
+import com.github.votingsessionmanager.service.VotingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.DirectFieldAccessor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Repository stand-ins keeping agendas, sessions and votes in memory, with the same results as the mongodb
+ * implementations for the methods used on the benchmarked paths. Each call waits {@code latencyNanos} first, parking
+ * the caller as a blocking mongodb round trip would. Other methods throw {@link UnsupportedOperationException}.
+ */
+public class InMemoryRepositories {
+
+    private final long latencyNanos;
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<String, Agenda> agendas = new ConcurrentHashMap<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Vote> votes = new ConcurrentHashMap<>();
+    private final Set<String> voteKeys = ConcurrentHashMap.newKeySet();
+
+    public InMemoryRepositories(long latencyNanos) {
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * {@link VotingService} on these repositories, with the vote buffer, agenda cache and expiry scheduler disabled
+     * as they are by default.
+     */
+    public VotingService votingService(AsyncCPFValidator cpfValidator) {
+        AgendaRepository agendaRepository = agendaRepository();
+        SessionRepository sessionRepository = sessionRepository();
+        VoteRepository voteRepository = voteRepository();
+
+        LiveResults liveResults = new LiveResults(agendaRepository, sessionRepository, new ObjectMapper(), new SimpleMeterRegistry());
+
+        VoteWriter voteWriter = new VoteWriter(voteRepository, new SimpleMeterRegistry());
+        DirectFieldAccessor voteWriterSettings = new DirectFieldAccessor(voteWriter);
+        voteWriterSettings.setPropertyValue("stripes", 256);
+        voteWriterSettings.setPropertyValue("maxBatchSize", 500);
+        voteWriter.start();
+
+        return new VotingService(
+                agendaRepository,
+                sessionRepository,
+                voteRepository,
+                proxy(AgendaResultRepository.class, new HashMap<>()),
+                voteWriter,
+                cpfValidator,
+                new VoteBuffer(voteRepository, new VoteJournal(voteRepository), new SimpleMeterRegistry()),
+                new SessionExpiryScheduler(sessionRepository, liveResults, null),
+                new AgendaCache(agendaRepository, null, new SimpleMeterRegistry()),
+                new VotingMetrics(new SimpleMeterRegistry()),
+                liveResults,
+                new AgendaResultsProjector(null, null));
+    }
+
+    /**
+     * Marks the votes cast so far, {@link #deleteVotesAfter(long)} deletes the ones cast after it.
+     */
+    public long markVotes() {
+        return ids.get();
+    }
+
+    /**
+     * Deletes the votes cast after the mark, tallies are left as they are.
+     */
+    public void deleteVotesAfter(long mark) {
+        votes.values().removeIf(vote -> {
+            if (Long.parseLong(vote.getId(), 16) <= mark) {
+                return false;
+            }
+
+            voteKeys.remove(vote.getAgendaId() + ":" + vote.getMemberId());
+            voteKeys.remove(vote.getAgendaId() + ":cpf:" + vote.getMemberCPF());
+            return true;
+        });
+    }
+
+    public AgendaRepository agendaRepository() {
+        Map<String, Handler> methods = new HashMap<>();
+        methods.put("findById", args -> Optional.ofNullable(agendas.get((String) args[0])).map(InMemoryRepositories::copy));
+        methods.put("save", args -> {
+            Agenda agenda = (Agenda) args[0];
+
+            if (agenda.getId() == null) {
+                agenda.setId(nextId());
+            }
+
+            agendas.put(agenda.getId(), copy(agenda));
+            return agenda;
+        });
+
+        return proxy(AgendaRepository.class, methods);
+    }
+
+    public SessionRepository sessionRepository() {
+        Map<String, Handler> methods = new HashMap<>();
+        methods.put("findById", args -> Optional.ofNullable(sessions.get((String) args[0])).map(InMemoryRepositories::copy));
+        methods.put("findByAgendaId", args -> findSessions((String) args[0]));
+        methods.put("findSummariesByAgendaId", args -> findSessions((String) args[0]));
+        methods.put("save", args -> {
+            Session session = (Session) args[0];
+
+            if (session.getId() == null) {
+                session.setId(nextId());
+            }
+
+            sessions.put(session.getId(), copy(session));
+            return session;
+        });
+        methods.put("closeOpenedSessions", args -> {
+            long closed = 0;
+
+            for (Session session : sessions.values()) {
+                boolean opened = session.getAgendaId().equals(args[0]) && session.getStatus().equals(SessionStatus.OPENED);
+
+                if (opened && sessions.replace(session.getId(), session, closed(session))) {
+                    closed++;
+                }
+            }
+
+            return closed;
+        });
+
+        return proxy(SessionRepository.class, methods);
+    }
+
+    @SuppressWarnings("unchecked")
+    public VoteRepository voteRepository() {
+        Map<String, Handler> methods = new HashMap<>();
+        methods.put("insertIntoOpenedSession", args -> insertIntoOpenedSession((Vote) args[0]));
+        methods.put("insertAllIntoOpenedSession", args -> ((List<Vote>) args[2]).stream()
+                .map(this::insertIntoOpenedSession)
+                .collect(Collectors.toList()));
+
+        return proxy(VoteRepository.class, methods);
+    }
+
+    private VoteOutcome insertIntoOpenedSession(Vote vote) {
+        if (!voteKeys.add(vote.getAgendaId() + ":" + vote.getMemberId())) {
+            return VoteOutcome.DUPLICATE;
+        }
+
+        if (!voteKeys.add(vote.getAgendaId() + ":cpf:" + vote.getMemberCPF())) {
+            voteKeys.remove(vote.getAgendaId() + ":" + vote.getMemberId());
+            return VoteOutcome.DUPLICATE;
+        }
+
+        boolean yes = vote.getVoteOption().equals(VoteOption.SIM);
+        LocalDateTime now = LocalDateTime.now();
+        Session counted = sessions.computeIfPresent(vote.getSessionId(), (id, session) -> {
+            if (!session.getStatus().equals(SessionStatus.OPENED) || !session.getEndDate().isAfter(now)) {
+                return session;
+            }
+
+            Session updated = copy(session);
+            updated.setYesCount(session.getYesCount() + (yes ? 1 : 0));
+            updated.setNoCount(session.getNoCount() + (yes ? 0 : 1));
+            return updated;
+        });
+
+        if (counted == null || !counted.getStatus().equals(SessionStatus.OPENED) || !counted.getEndDate().isAfter(now)) {
+            voteKeys.remove(vote.getAgendaId() + ":" + vote.getMemberId());
+            voteKeys.remove(vote.getAgendaId() + ":cpf:" + vote.getMemberCPF());
+            return VoteOutcome.CLOSED;
+        }
+
+        vote.setId(nextId());
+        votes.put(vote.getId(), vote);
+        agendas.computeIfPresent(vote.getAgendaId(), (id, agenda) -> {
+            Agenda updated = copy(agenda);
+            updated.setYesCount(agenda.getYesCount() + (yes ? 1 : 0));
+            updated.setNoCount(agenda.getNoCount() + (yes ? 0 : 1));
+            return updated;
+        });
+
+        return VoteOutcome.ACCEPTED;
+    }
+
+    private List<Session> findSessions(String agendaId) {
+        return sessions.values().stream()
+                .filter(session -> session.getAgendaId().equals(agendaId))
+                .map(InMemoryRepositories::copy)
+                .collect(Collectors.toList());
+    }
+
+    private String nextId() {
+        return Long.toHexString(ids.incrementAndGet());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> repository, Map<String, Handler> methods) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass().equals(Object.class)) {
+                return invokeOnObject(proxy, method, args);
+            }
+
+            Handler implementation = methods.get(method.getName());
+
+            if (implementation == null) {
+                throw new UnsupportedOperationException(repository.getSimpleName() + "." + method.getName());
+            }
+
+            if (latencyNanos > 0) {
+                LockSupport.parkNanos(latencyNanos);
+            }
+
+            return implementation.handle(args);
+        };
+
+        return (T) Proxy.newProxyInstance(repository.getClassLoader(), new Class<?>[]{repository}, handler);
+    }
+
+    private static Object invokeOnObject(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "InMemory" + proxy.getClass().getInterfaces()[0].getSimpleName();
+        }
+    }
+
+    private static Session closed(Session session) {
+        Session closed = copy(session);
+        closed.setStatus(SessionStatus.CLOSED);
+        return closed;
+    }
+
+    private static Agenda copy(Agenda agenda) {
+        Agenda copy = new Agenda(agenda.getId(), agenda.getDescription());
+        copy.setStatus(agenda.getStatus());
+        copy.setResult(agenda.getResult());
+        copy.setYesCount(agenda.getYesCount());
+        copy.setNoCount(agenda.getNoCount());
+        return copy;
+    }
+
+    private static Session copy(Session session) {
+        Session copy = new Session(session.getId(), session.getAgendaId(), session.getDuration(), session.getStatus());
+        copy.setStartDate(session.getStartDate());
+        copy.setEndDate(session.getEndDate());
+        copy.setYesCount(session.getYesCount());
+        copy.setNoCount(session.getNoCount());
+        return copy;
+    }
+
+    private interface Handler {
+        Object handle(Object[] args);
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.votingsessionmanager.benchmark;
+
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
+import com.github.votingsessionmanager.domain.VoterStatus;
+import com.github.votingsessionmanager.feign.CPFValidator;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Answers ABLE_TO_VOTE for every CPF after waiting {@code latencyNanos}, as a call to the user info service would.
+ */
+public class StubCPFValidator implements CPFValidator {
+
+    private static final CPFStatusDTO ABLE_TO_VOTE = new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE);
+
+    private final long latencyNanos;
+
+    public StubCPFValidator(long latencyNanos) {
+        this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public CPFStatusDTO validateCPF(String cpf) {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+
+        return ABLE_TO_VOTE;
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.votingsessionmanager.benchmark;
+
+import com.github.votingsessionmanager.config.VirtualThreads;
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.feign.AsyncCPFValidator;
+import com.github.votingsessionmanager.repository.SessionRepository;
+import com.github.votingsessionmanager.service.VotingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of bursts of concurrent votes through {@link VotingService#registerVote(Vote, String)}, with requests
+ * and CPF validations run the way {@code AppConfig} runs them: on Tomcat's 200 worker threads and the CPF validator
+ * pool, or with {@code virtual_threads.enabled} on one virtual thread each. Every mongodb call and CPF validation
+ * waits for the configured latency. The virtual mode needs Java 21 or newer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class VirtualThreadsBenchmark {
+
+    private static final int CONCURRENT_VOTES = 2000;
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int CPF_EXECUTOR_POOL_SIZE = 64;
+    private static final int CPF_EXECUTOR_QUEUE_CAPACITY = 1000;
+    private static final int CPF_MAX_CONNECTIONS = 200;
+    private static final Duration CPF_READ_TIMEOUT = Duration.ofSeconds(2);
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"1"})
+    public long mongodbLatencyMillis;
+
+    @Param({"20"})
+    public long cpfLatencyMillis;
+
+    private ExecutorService requests;
+    private AsyncCPFValidator cpfValidator;
+    private VotingService votingService;
+    private String agendaId;
+    private final AtomicLong members = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StubCPFValidator stub = new StubCPFValidator(TimeUnit.MILLISECONDS.toNanos(cpfLatencyMillis));
+
+        if (threads.equals("virtual")) {
+            requests = VirtualThreads.newThreadPerTaskExecutor("http-");
+            cpfValidator = new AsyncCPFValidator(stub, VirtualThreads.newThreadPerTaskExecutor("cpf-validator-"), CPF_MAX_CONNECTIONS, CPF_READ_TIMEOUT);
+        } else {
+            requests = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+            cpfValidator = new AsyncCPFValidator(stub, new ThreadPoolExecutor(
+                    CPF_EXECUTOR_POOL_SIZE,
+                    CPF_EXECUTOR_POOL_SIZE,
+                    60,
+                    TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(CPF_EXECUTOR_QUEUE_CAPACITY)));
+        }
+
+        InMemoryRepositories repositories = new InMemoryRepositories(TimeUnit.MILLISECONDS.toNanos(mongodbLatencyMillis));
+        SessionRepository sessionRepository = repositories.sessionRepository();
+        votingService = repositories.votingService(cpfValidator);
+
+        Agenda agenda = new Agenda(null, "Benchmark");
+        agenda.setStatus(AgendaStatus.OPENED);
+        agendaId = repositories.agendaRepository().save(agenda).getId();
+
+        Session session = new Session(null, agendaId, TimeUnit.DAYS.toMinutes(1), SessionStatus.OPENED);
+        session.setStartDate(LocalDateTime.now());
+        session.setEndDate(session.getStartDate().plusMinutes(session.getDuration()));
+        sessionRepository.save(session);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        requests.shutdown();
+        cpfValidator.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENT_VOTES)
+    public void registerVotes() throws InterruptedException, ExecutionException {
+        List<Future<Vote>> votes = new ArrayList<>(CONCURRENT_VOTES);
+
+        for (int i = 0; i < CONCURRENT_VOTES; i++) {
+            String member = Long.toString(members.incrementAndGet());
+            Vote vote = new Vote(member, member, i % 2 == 0 ? VoteOption.SIM : VoteOption.NAO);
+            votes.add(requests.submit(() -> votingService.registerVote(vote, agendaId)));
+        }
+
+        for (Future<Vote> vote : votes) {
+            vote.get();
+        }
+    }
+}
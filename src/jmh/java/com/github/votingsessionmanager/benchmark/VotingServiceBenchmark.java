@@ -0,0 +1,127 @@
+package com.github.votingsessionmanager.benchmark;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.feign.AsyncCPFValidator;
+import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.github.votingsessionmanager.repository.SessionRepository;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import com.github.votingsessionmanager.service.VotingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CPU and allocation cost of the {@link VotingService} hot paths on an agenda with {@code votes} votes already cast in
+ * its opened session, next to closed ones. Repositories and the CPF validator answer without latency, so only the
+ * service, the CPF validator pool hand-off and the stand-ins are measured. Votes registered by an iteration are
+ * deleted after it, so every iteration starts from the same {@code votes}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class VotingServiceBenchmark {
+
+    private static final int SESSIONS = 10;
+    private static final int CPF_EXECUTOR_POOL_SIZE = 64;
+    private static final int CPF_EXECUTOR_QUEUE_CAPACITY = 1000;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int votes;
+
+    private AsyncCPFValidator cpfValidator;
+    private InMemoryRepositories repositories;
+    private VotingService votingService;
+    private Agenda agenda;
+    private long castVotes;
+    private final AtomicLong members = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void castVotes() {
+        cpfValidator = new AsyncCPFValidator(new StubCPFValidator(0), new ThreadPoolExecutor(
+                CPF_EXECUTOR_POOL_SIZE,
+                CPF_EXECUTOR_POOL_SIZE,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(CPF_EXECUTOR_QUEUE_CAPACITY)));
+
+        repositories = new InMemoryRepositories(0);
+        AgendaRepository agendaRepository = repositories.agendaRepository();
+        SessionRepository sessionRepository = repositories.sessionRepository();
+        VoteRepository voteRepository = repositories.voteRepository();
+        votingService = repositories.votingService(cpfValidator);
+
+        Agenda opened = new Agenda(null, "Benchmark");
+        opened.setStatus(AgendaStatus.OPENED);
+        String agendaId = agendaRepository.save(opened).getId();
+        LocalDateTime now = LocalDateTime.now();
+        Session session = null;
+
+        for (int i = SESSIONS - 1; i >= 0; i--) {
+            session = new Session(null, agendaId, TimeUnit.DAYS.toMinutes(1), i == 0 ? SessionStatus.OPENED : SessionStatus.CLOSED);
+            session.setStartDate(now.minusDays(i));
+            session.setEndDate(session.getStartDate().plusMinutes(session.getDuration()));
+            sessionRepository.save(session);
+        }
+
+        for (int i = 0; i < votes; i++) {
+            Vote vote = new Vote("m" + i, "c" + i, i % 2 == 0 ? VoteOption.SIM : VoteOption.NAO);
+            vote.setAgendaId(agendaId);
+            vote.setSessionId(session.getId());
+            voteRepository.insertIntoOpenedSession(vote);
+        }
+
+        agenda = agendaRepository.findById(agendaId).get();
+        castVotes = repositories.markVotes();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteRegisteredVotes() {
+        repositories.deleteVotesAfter(castVotes);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopCpfValidator() {
+        cpfValidator.shutdown();
+    }
+
+    @Benchmark
+    public Vote registerVote() {
+        String member = Long.toString(members.incrementAndGet());
+        return votingService.registerVote(new Vote(member, member, VoteOption.SIM), agenda.getId());
+    }
+
+    @Benchmark
+    public String calculateResult() {
+        return votingService.calculateResult(agenda);
+    }
+
+    @Benchmark
+    public List<Session> findAndUpdateSessionsByAgendaId() {
+        return votingService.findAndUpdateSessionsByAgendaId(agenda.getId());
+    }
+}
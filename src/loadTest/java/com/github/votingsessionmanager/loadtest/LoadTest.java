@@ -0,0 +1,90 @@
+package com.github.votingsessionmanager.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.votingsessionmanager.App;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.mongo.embedded.EmbeddedMongoAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reproduces a vote storm on one box: starts mongodb, unless {@code --mongodb_uri} points to one, and the stub user
+ * info service, starts the application against them, runs a {@link VoteStorm} and writes its report. Exits with 1
+ * when an accepted vote went missing. Mongodb is started here rather than by Spring Boot's embedded mongodb support,
+ * so it is also used with {@code --mongodb_uri}.
+ */
+public class LoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+    private static final String DATABASE = "voting_session_load_test";
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = new LoadTestOptions(args);
+        StubUserInfoService userInfo = new StubUserInfoService(options);
+        MongodExecutable mongod = null;
+        ConfigurableApplicationContext app = null;
+        Map<String, Object> report;
+
+        try {
+            String mongodbUri = options.get("mongodb_uri");
+
+            if (mongodbUri.isEmpty()) {
+                int port = Network.getFreeServerPort();
+                mongod = MongodStarter.getDefaultInstance().prepare(new MongodConfigBuilder()
+                        .version(Version.Main.V4_0)
+                        .net(new Net("localhost", port, Network.localhostIsIPv6()))
+                        .build());
+                mongod.start();
+                mongodbUri = "mongodb://localhost:" + port + "/" + DATABASE;
+            }
+
+            userInfo.start();
+
+            List<String> appArgs = new ArrayList<>(options.getAppArgs());
+            appArgs.add("--spring.data.mongodb.uri=" + mongodbUri);
+            appArgs.add("--cpf_validator.url=" + userInfo.getUrl());
+            appArgs.add("--spring.autoconfigure.exclude=" + EmbeddedMongoAutoConfiguration.class.getName());
+
+            if (appArgs.stream().noneMatch(arg -> arg.startsWith("--server.port="))) {
+                appArgs.add("--server.port=0");
+            }
+
+            app = new SpringApplicationBuilder(App.class).run(appArgs.toArray(new String[0]));
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+
+            report = new VoteStorm(options, "http://localhost:" + port).run();
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+
+            userInfo.stop();
+
+            if (mongod != null) {
+                mongod.stop();
+            }
+        }
+
+        File file = new File(options.get("report"));
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        objectMapper.writeValue(file, report);
+
+        logger.info("Load test report, also written to {}:\n{}", file, objectMapper.writeValueAsString(report));
+        System.exit(Boolean.TRUE.equals(report.get("passed")) ? 0 : 1);
+    }
+}
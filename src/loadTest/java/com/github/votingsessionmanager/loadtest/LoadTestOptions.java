@@ -0,0 +1,83 @@
+package com.github.votingsessionmanager.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Options of the load test, given as {@code --name=value}. Any other {@code --name=value} argument is passed on to
+ * the application, e.g. {@code --vote_buffer.enabled=true}.
+ */
+class LoadTestOptions {
+
+    static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("votes", "10000");
+        DEFAULTS.put("concurrency", "200");
+        DEFAULTS.put("repeat", "1");
+        DEFAULTS.put("idempotency_keys", "false");
+        DEFAULTS.put("ack", "PERSISTED");
+        DEFAULTS.put("pollers", "4");
+        DEFAULTS.put("poll_interval", "200ms");
+        DEFAULTS.put("session_duration", "10");
+        DEFAULTS.put("mongodb_uri", "");
+        DEFAULTS.put("cpf.latency", "20ms");
+        DEFAULTS.put("cpf.latency_jitter", "0ms");
+        DEFAULTS.put("cpf.error_rate", "0");
+        DEFAULTS.put("cpf.timeout_rate", "0");
+        DEFAULTS.put("cpf.timeout", "5s");
+        DEFAULTS.put("cpf.unable_rate", "0");
+        DEFAULTS.put("cpf.invalid_rate", "0");
+        DEFAULTS.put("report", "build/reports/loadTest/report.json");
+    }
+
+    private final Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+    private final List<String> appArgs = new ArrayList<>();
+
+    LoadTestOptions(String[] args) {
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg + ".");
+            }
+
+            String name = arg.substring(2, separator);
+
+            if (DEFAULTS.containsKey(name)) {
+                options.put(name, arg.substring(separator + 1));
+            } else {
+                appArgs.add(arg);
+            }
+        }
+    }
+
+    String get(String name) {
+        return options.get(name);
+    }
+
+    int getInt(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    double getDouble(String name) {
+        return Double.parseDouble(options.get(name));
+    }
+
+    Duration getDuration(String name) {
+        return DurationStyle.detectAndParse(options.get(name));
+    }
+
+    List<String> getAppArgs() {
+        return appArgs;
+    }
+
+    Map<String, String> asMap() {
+        return new LinkedHashMap<>(options);
+    }
+}
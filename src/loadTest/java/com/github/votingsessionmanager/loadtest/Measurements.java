@@ -0,0 +1,78 @@
+package com.github.votingsessionmanager.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies and status codes of the requests made by the load test, per endpoint. Requests that got no response are
+ * recorded with status 0.
+ */
+class Measurements {
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    void record(String endpoint, long startNanos, long endNanos, int status) {
+        endpoints.computeIfAbsent(endpoint, Endpoint::new).record(startNanos, endNanos, status);
+    }
+
+    /**
+     * Count, statuses, throughput over the time the endpoint was called and p50/p95/p99/max latency of each endpoint.
+     */
+    Map<String, Map<String, Object>> summarize() {
+        Map<String, Map<String, Object>> summary = new TreeMap<>();
+        endpoints.values().forEach(endpoint -> summary.put(endpoint.name, endpoint.summarize()));
+        return summary;
+    }
+
+    private static class Endpoint {
+        private final String name;
+        private final Map<Integer, Long> statuses = new TreeMap<>();
+        private long[] latencies = new long[1024];
+        private int count;
+        private long firstStart = Long.MAX_VALUE;
+        private long lastEnd = Long.MIN_VALUE;
+
+        private Endpoint(String name) {
+            this.name = name;
+        }
+
+        private synchronized void record(long startNanos, long endNanos, int status) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+
+            latencies[count++] = endNanos - startNanos;
+            statuses.merge(status, 1L, Long::sum);
+            firstStart = Math.min(firstStart, startNanos);
+            lastEnd = Math.max(lastEnd, endNanos);
+        }
+
+        private synchronized Map<String, Object> summarize() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            double seconds = Math.max(lastEnd - firstStart, 1) / 1e9;
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", count);
+            summary.put("statuses", new TreeMap<>(statuses));
+            summary.put("throughput", Math.round(count / seconds * 10) / 10.0);
+            summary.put("p50_ms", millis(percentile(sorted, 0.50)));
+            summary.put("p95_ms", millis(percentile(sorted, 0.95)));
+            summary.put("p99_ms", millis(percentile(sorted, 0.99)));
+            summary.put("max_ms", millis(sorted[sorted.length - 1]));
+            return summary;
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            return sorted[Math.max((int) Math.ceil(percentile * sorted.length) - 1, 0)];
+        }
+
+        private static double millis(long nanos) {
+            return Math.round(nanos / (double) TimeUnit.MILLISECONDS.toNanos(1) * 10) / 10.0;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.votingsessionmanager.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for the user info service's {@code GET /users/{cpf}}. Every answer waits {@code latency} plus up to
+ * {@code latency_jitter}. A share of the requests, drawn at random, fails with 503 ({@code error_rate}), answers only
+ * after {@code timeout} ({@code timeout_rate}), is UNABLE_TO_VOTE ({@code unable_rate}) or is an invalid CPF, a 404
+ * ({@code invalid_rate}). The others are ABLE_TO_VOTE.
+ */
+class StubUserInfoService {
+
+    private final Duration latency;
+    private final Duration latencyJitter;
+    private final double errorRate;
+    private final double timeoutRate;
+    private final Duration timeout;
+    private final double unableRate;
+    private final double invalidRate;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    StubUserInfoService(LoadTestOptions options) {
+        this.latency = options.getDuration("cpf.latency");
+        this.latencyJitter = options.getDuration("cpf.latency_jitter");
+        this.errorRate = options.getDouble("cpf.error_rate");
+        this.timeoutRate = options.getDouble("cpf.timeout_rate");
+        this.timeout = options.getDuration("cpf.timeout");
+        this.unableRate = options.getDouble("cpf.unable_rate");
+        this.invalidRate = options.getDouble("cpf.invalid_rate");
+    }
+
+    void start() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext("/users/", this::answer);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private void answer(HttpExchange exchange) throws IOException {
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            double draw = random.nextDouble();
+            long jitter = latencyJitter.isZero() ? 0 : random.nextLong(latencyJitter.toNanos());
+
+            TimeUnit.NANOSECONDS.sleep(latency.toNanos() + jitter);
+
+            if (draw < errorRate) {
+                respond(exchange, 503, "{\"message\":\"Service Unavailable\"}");
+            } else if (draw < errorRate + timeoutRate) {
+                TimeUnit.NANOSECONDS.sleep(timeout.toNanos());
+                respond(exchange, 200, "{\"status\":\"ABLE_TO_VOTE\"}");
+            } else if (draw < errorRate + timeoutRate + unableRate) {
+                respond(exchange, 200, "{\"status\":\"UNABLE_TO_VOTE\"}");
+            } else if (draw < errorRate + timeoutRate + unableRate + invalidRate) {
+                respond(exchange, 404, "{\"message\":\"Not Found\"}");
+            } else {
+                respond(exchange, 200, "{\"status\":\"ABLE_TO_VOTE\"}");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
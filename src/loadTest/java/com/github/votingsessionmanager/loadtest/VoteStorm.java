@@ -0,0 +1,240 @@
+package com.github.votingsessionmanager.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.impl.client.HttpClients;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * One vote storm against a running application: creates an agenda, opens a session, casts {@code votes} votes from
+ * {@code concurrency} clients while {@code pollers} clients keep reading the agenda and its sessions, then closes the
+ * agenda and reads back every stored vote. Each accepted vote, 200 or 202, must be stored and counted. With
+ * {@code repeat} above 1 every member sends that many votes back to back, from different clients, and exactly one of
+ * them must be accepted and stored. With {@code idempotency_keys=true} the votes of a member share an
+ * {@code Idempotency-Key}, so the repeats are retries answered with the accepted vote.
+ */
+class VoteStorm {
+
+    private static final int VOTES_PAGE_SIZE = 1000;
+    private static final int MAX_MISSING_REPORTED = 20;
+
+    private final LoadTestOptions options;
+    private final String baseUrl;
+    private final Measurements measurements = new Measurements();
+    private final Set<String> accepted = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger acceptedTwice = new AtomicInteger();
+    private final AtomicInteger replayed = new AtomicInteger();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RestTemplate restTemplate;
+    private volatile boolean storming;
+
+    VoteStorm(LoadTestOptions options, String baseUrl) {
+        int connections = options.getInt("concurrency") + options.getInt("pollers") + 1;
+
+        this.options = options;
+        this.baseUrl = baseUrl;
+        this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(HttpClients.custom()
+                .setMaxConnTotal(connections)
+                .setMaxConnPerRoute(connections)
+                .build()));
+        this.restTemplate.setErrorHandler(new ResponseErrorHandler() {
+            @Override
+            public boolean hasError(ClientHttpResponse response) {
+                return false;
+            }
+
+            @Override
+            public void handleError(ClientHttpResponse response) {
+            }
+        });
+    }
+
+    /**
+     * Runs the storm and returns the report, {@code passed} is false when an accepted vote is missing, a member's vote
+     * was accepted or stored twice, or the tally doesn't match the stored votes.
+     */
+    Map<String, Object> run() throws Exception {
+        String agendaId = read(expect(201, request("POST /v1/agenda", HttpMethod.POST, "/v1/agenda", json("description", "Load test")))).get("id").asText();
+
+        Map<String, Object> session = json("agendaId", agendaId);
+        session.put("duration", options.getInt("session_duration"));
+        String sessionId = read(expect(201, request("POST /v1/session", HttpMethod.POST, "/v1/session", session))).get("id").asText();
+
+        storming = true;
+        ExecutorService pollers = Executors.newFixedThreadPool(options.getInt("pollers"));
+
+        for (int i = 0; i < options.getInt("pollers"); i++) {
+            pollers.execute(() -> poll(agendaId, sessionId));
+        }
+
+        long start = System.nanoTime();
+        castVotes(agendaId);
+        long stormNanos = System.nanoTime() - start;
+
+        storming = false;
+        pollers.shutdown();
+        pollers.awaitTermination(1, TimeUnit.MINUTES);
+
+        JsonNode closed = read(expect(200, request("PATCH /v1/agenda/{agendaId}", HttpMethod.PATCH, "/v1/agenda/" + agendaId, json("agendaStatus", "CLOSED"))));
+        long tally = closed.get("yesCount").asLong() + closed.get("noCount").asLong();
+        List<String> storedVotes = readStoredVotes(sessionId);
+        Set<String> stored = new HashSet<>(storedVotes);
+
+        Set<String> missing = new HashSet<>(accepted);
+        missing.removeAll(stored);
+        Set<String> storedWithoutAck = new HashSet<>(stored);
+        storedWithoutAck.removeAll(accepted);
+
+        Map<String, Object> votes = new LinkedHashMap<>();
+        votes.put("sent", options.getInt("votes"));
+        votes.put("accepted", accepted.size());
+        votes.put("stored", storedVotes.size());
+        votes.put("tally", tally);
+        votes.put("accepted_twice", acceptedTwice.get());
+        votes.put("replayed", replayed.get());
+        votes.put("stored_twice", storedVotes.size() - stored.size());
+        votes.put("missing", missing.size());
+        votes.put("missing_members", missing.stream().sorted().limit(MAX_MISSING_REPORTED).collect(Collectors.toList()));
+        votes.put("stored_without_ack", storedWithoutAck.size());
+        votes.put("storm_seconds", Math.round(stormNanos / 1e7) / 100.0);
+        votes.put("storm_throughput", Math.round(options.getInt("votes") / (stormNanos / 1e9) * 10) / 10.0);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("passed", missing.isEmpty() && acceptedTwice.get() == 0 && storedVotes.size() == stored.size() && tally == storedVotes.size());
+        report.put("options", options.asMap());
+        report.put("votes", votes);
+        report.put("endpoints", measurements.summarize());
+        return report;
+    }
+
+    private void castVotes(String agendaId) throws InterruptedException {
+        int votes = options.getInt("votes");
+        int concurrency = options.getInt("concurrency");
+        int repeat = options.getInt("repeat");
+        boolean idempotencyKeys = Boolean.parseBoolean(options.get("idempotency_keys"));
+        String uri = "/v1/session/vote/" + agendaId + "?ack=" + options.get("ack");
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService voters = Executors.newFixedThreadPool(concurrency);
+
+        for (int i = 0; i < concurrency; i++) {
+            voters.execute(() -> {
+                for (int vote = next.getAndIncrement(); vote < votes; vote = next.getAndIncrement()) {
+                    int memberNumber = vote / repeat;
+                    String member = "member-" + memberNumber;
+                    Map<String, Object> body = json("memberId", member);
+                    body.put("memberCPF", String.format("%011d", memberNumber));
+                    body.put("voteOption", memberNumber % 2 == 0 ? "SIM" : "NAO");
+
+                    ResponseEntity<String> response = request("PATCH /v1/session/vote/{agendaId}", HttpMethod.PATCH, uri, body, idempotencyKeys ? member : null);
+
+                    if (response != null && response.getStatusCode().is2xxSuccessful() && !accepted.add(member)) {
+                        (idempotencyKeys ? replayed : acceptedTwice).incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        voters.shutdown();
+        voters.awaitTermination(1, TimeUnit.DAYS);
+    }
+
+    private void poll(String agendaId, String sessionId) {
+        long interval = options.getDuration("poll_interval").toMillis();
+
+        while (storming) {
+            request("GET /v1/agenda/{agendaId}", HttpMethod.GET, "/v1/agenda/" + agendaId, null);
+            request("GET /v1/session/agenda/{agendaId}", HttpMethod.GET, "/v1/session/agenda/" + agendaId, null);
+            request("GET /v1/session/{sessionId}", HttpMethod.GET, "/v1/session/" + sessionId, null);
+
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private List<String> readStoredVotes(String sessionId) throws IOException {
+        List<String> stored = new ArrayList<>();
+        String after = null;
+
+        do {
+            String uri = "/v1/session/" + sessionId + "/votes?limit=" + VOTES_PAGE_SIZE + (after == null ? "" : "&after=" + after);
+            ResponseEntity<String> page = expect(200, request("GET /v1/session/{sessionId}/votes", HttpMethod.GET, uri, null));
+
+            for (JsonNode vote : read(page)) {
+                stored.add(vote.get("memberId").asText());
+            }
+
+            after = page.getHeaders().getFirst("Next-Cursor");
+        } while (after != null);
+
+        return stored;
+    }
+
+    private ResponseEntity<String> request(String endpoint, HttpMethod method, String uri, Object body) {
+        return request(endpoint, method, uri, body, null);
+    }
+
+    private ResponseEntity<String> request(String endpoint, HttpMethod method, String uri, Object body, String idempotencyKey) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        if (idempotencyKey != null) {
+            headers.set("Idempotency-Key", idempotencyKey);
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            ResponseEntity<String> response = restTemplate.exchange(baseUrl + uri, method, new HttpEntity<>(body, headers), String.class);
+            measurements.record(endpoint, start, System.nanoTime(), response.getStatusCodeValue());
+            return response;
+        } catch (ResourceAccessException e) {
+            measurements.record(endpoint, start, System.nanoTime(), 0);
+            return null;
+        }
+    }
+
+    private ResponseEntity<String> expect(int status, ResponseEntity<String> response) {
+        if (response == null || response.getStatusCodeValue() != status) {
+            throw new IllegalStateException("Expected " + status + ", got " + (response == null ? "no response" : response.getStatusCodeValue() + " " + response.getBody()) + ".");
+        }
+
+        return response;
+    }
+
+    private JsonNode read(ResponseEntity<String> response) throws IOException {
+        return objectMapper.readTree(response.getBody());
+    }
+
+    private static Map<String, Object> json(String name, Object value) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put(name, value);
+        return json;
+    }
+}
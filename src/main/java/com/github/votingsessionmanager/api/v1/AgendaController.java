@@ -1,38 +1,121 @@
 package com.github.votingsessionmanager.api.v1;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaResult;
+import com.github.votingsessionmanager.domain.AgendaStatus;
 import com.github.votingsessionmanager.domain.AgendaStatusDTO;
+import com.github.votingsessionmanager.domain.TallyReconciliationDTO;
+import com.github.votingsessionmanager.service.LiveResults;
 import com.github.votingsessionmanager.service.VotingService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/v1/agenda")
 public class AgendaController {
 
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     private VotingService service;
+    private ObjectMapper objectMapper;
+    private LiveResults liveResults;
 
     @Autowired
-    public AgendaController(VotingService service) {
+    public AgendaController(VotingService service, ObjectMapper objectMapper, LiveResults liveResults) {
         this.service = service;
+        this.objectMapper = objectMapper;
+        this.liveResults = liveResults;
     }
 
     @Operation(
-            summary = "Find all agendas",
-            description = "Use to find all agendas",
+            summary = "Find agendas",
+            description = "Use to find agendas a page at a time, optionally by status and creation date range. When there may be more agendas the Next-Cursor header holds the value to pass as after for the next page",
             responses = {
-                    @ApiResponse(responseCode = "200", description = "Success")
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "400", description = "Invalid page size")
             }
     )
     @GetMapping
     @ResponseBody
-    public List<Agenda> findAll() {
-        return service.findAllAgendas();
+    public ResponseEntity<List<Agenda>> findAll(
+            @RequestParam(required = false) AgendaStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) {
+        List<Agenda> agendas = service.findAgendas(status, createdFrom, createdTo, after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (agendas.size() == limit) {
+            response.header("Next-Cursor", agendas.get(limit - 1).getId());
+        }
+
+        return response.body(agendas);
+    }
+
+    @Operation(
+            summary = "Find agenda results",
+            description = "Use to read the results of all agendas a page at a time, optionally by status, from the agenda_results collection kept up to date in the background. When there may be more results the Next-Cursor header holds the value to pass as after for the next page",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "400", description = "Invalid page size"),
+                    @ApiResponse(responseCode = "404", description = "Agenda results are not enabled, see agenda_results.enabled")
+            }
+    )
+    @GetMapping("/results")
+    @ResponseBody
+    public ResponseEntity<List<AgendaResult>> findResults(
+            @RequestParam(required = false) AgendaStatus status,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) {
+        List<AgendaResult> results = service.findAgendaResults(status, after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (results.size() == limit) {
+            response.header("Next-Cursor", results.get(limit - 1).getId());
+        }
+
+        return response.body(results);
+    }
+
+    @Operation(
+            summary = "Stream agendas",
+            description = "Use to export all agendas matching the filters as newline delimited JSON, written as they are read",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success")
+            }
+    )
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamAll(
+            @RequestParam(required = false) AgendaStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo) {
+        StreamingResponseBody body = output -> service.streamAgendas(status, createdFrom, createdTo, agenda -> {
+            try {
+                output.write(objectMapper.writeValueAsBytes(agenda));
+                output.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON)).body(body);
     }
 
     @Operation(
@@ -49,6 +132,33 @@ public class AgendaController {
         return service.findAgendaById(agendaId);
     }
 
+    @Operation(
+            summary = "Watch agenda results",
+            description = "Use to follow the results of an agenda as Server-Sent Events: a snapshot on connect and every few seconds, tally events with the votes taken since the previous event and status events when a session opens or closes or the agenda closes, which also ends the stream",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "404", description = "Agenda ID not found")
+            }
+    )
+    @GetMapping(value = "/{agendaId}/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter watchResults(@PathVariable String agendaId) {
+        SseEmitter emitter = new SseEmitter(liveResults.getTimeout().toMillis());
+
+        emitter.onCompletion(liveResults.subscribeAsync(agendaId, new LiveResults.Listener() {
+            @Override
+            public void onEvent(String name, String data) throws IOException {
+                emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void onComplete() {
+                emitter.complete();
+            }
+        }));
+
+        return emitter;
+    }
+
     @Operation(
             summary = "Create new agenda",
             description = "Use to create a new agenda",
@@ -78,4 +188,19 @@ public class AgendaController {
     public Agenda closeAgenda(@RequestBody AgendaStatusDTO update, @PathVariable String agendaId) {
         return service.closeAgenda(update, agendaId);
     }
+
+    @Operation(
+            summary = "Reconcile agenda tally",
+            description = "Use to recompute the vote counters of a closed agenda and its sessions from the registered votes and report any drift",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "400", description = "Agenda is opened"),
+                    @ApiResponse(responseCode = "404", description = "Agenda ID not found")
+            }
+    )
+    @PostMapping("/{agendaId}/reconcile")
+    @ResponseBody
+    public TallyReconciliationDTO reconcileTally(@PathVariable String agendaId) {
+        return service.reconcileTally(agendaId);
+    }
 }
@@ -13,7 +13,7 @@ public class ExceptionController {
 
     private static final Logger logger = LoggerFactory.getLogger(ExceptionController.class);
 
-    @ExceptionHandler(IdNotFoundException.class)
+    @ExceptionHandler({IdNotFoundException.class, AgendaResultsDisabledException.class})
     public ResponseEntity<String> handleNotFound(RuntimeException ex) {
         logger.info(ex.getMessage());
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
@@ -23,10 +23,23 @@ public class ExceptionController {
             AgendaStatusException.class,
             SessionStatusException.class,
             RequiredFieldException.class,
-            InvalidVoteException.class
+            InvalidVoteException.class,
+            InvalidPageException.class
     })
     public ResponseEntity<String> handleBadRequest(RuntimeException ex) {
         logger.info(ex.getMessage());
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
     }
+
+    @ExceptionHandler(IdempotencyKeyException.class)
+    public ResponseEntity<String> handleUnprocessableEntity(RuntimeException ex) {
+        logger.info(ex.getMessage());
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @ExceptionHandler({CPFValidatorUnavailableException.class, PendingVotesException.class})
+    public ResponseEntity<String> handleServiceUnavailable(RuntimeException ex) {
+        logger.warn(ex.getMessage());
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
 }
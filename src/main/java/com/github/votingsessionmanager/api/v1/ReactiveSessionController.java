@@ -0,0 +1,203 @@
+package com.github.votingsessionmanager.api.v1;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.votingsessionmanager.domain.AckLevel;
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteResultDTO;
+import com.github.votingsessionmanager.service.ReactiveVotingService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@Profile("reactive")
+@RequestMapping("/v1/session")
+public class ReactiveSessionController {
+
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private ReactiveVotingService votingService;
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    public ReactiveSessionController(ReactiveVotingService votingService, ObjectMapper objectMapper) {
+        this.votingService = votingService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Operation(
+            summary = "Find sessions",
+            description = "Use to find sessions a page at a time, optionally by status and start date range. When there may be more sessions the Next-Cursor header holds the value to pass as after for the next page",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "400", description = "Invalid page size")
+            }
+    )
+    @GetMapping
+    @ResponseBody
+    public Mono<ResponseEntity<List<Session>>> findAll(
+            @RequestParam(required = false) SessionStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTo,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) {
+        return votingService.findSessions(status, startFrom, startTo, after, limit).map(sessions -> {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+            if (sessions.size() == limit) {
+                response.header("Next-Cursor", sessions.get(limit - 1).getId());
+            }
+
+            return response.body(sessions);
+        });
+    }
+
+    @Operation(
+            summary = "Stream sessions",
+            description = "Use to export all sessions matching the filters as newline delimited JSON, written as they are read",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success")
+            }
+    )
+    @GetMapping("/stream")
+    public ResponseEntity<Flux<String>> streamAll(
+            @RequestParam(required = false) SessionStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTo) {
+        Flux<String> body = votingService.streamSessions(status, startFrom, startTo).map(session -> {
+            try {
+                return objectMapper.writeValueAsString(session) + '\n';
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON)).body(body);
+    }
+
+    @Operation(
+            summary = "Find session by ID",
+            description = "Use to find an session by its ID",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "404", description = "Session ID not found")
+            }
+    )
+    @GetMapping("/{sessionId}")
+    @ResponseBody
+    public Mono<Session> findById(@PathVariable String sessionId) {
+        return votingService.findAndUpdateSessionById(sessionId);
+    }
+
+    @Operation(
+            summary = "Find session votes",
+            description = "Use to find the votes of a session a page at a time. When there may be more votes the Next-Cursor header holds the value to pass as after for the next page",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "400", description = "Invalid page size"),
+                    @ApiResponse(responseCode = "404", description = "Session ID not found")
+            }
+    )
+    @GetMapping("/{sessionId}/votes")
+    @ResponseBody
+    public Mono<ResponseEntity<List<Vote>>> findVotes(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) {
+        return votingService.findSessionVotes(sessionId, after, limit).map(votes -> {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+            if (votes.size() == limit) {
+                response.header("Next-Cursor", votes.get(limit - 1).getId());
+            }
+
+            return response.body(votes);
+        });
+    }
+
+    @Operation(
+            summary = "Find sessions by agenda ID",
+            description = "Use to find all sessions created by agenda ID",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "404", description = "Agenda ID not found")
+            }
+    )
+    @GetMapping("/agenda/{agendaId}")
+    @ResponseBody
+    public Mono<List<Session>> findByAgendaId(@PathVariable String agendaId) {
+        return votingService.findAndUpdateSessionsByAgendaId(agendaId);
+    }
+
+    @Operation(
+            summary = "Create new session",
+            description = "Use to create a new session",
+            responses = {
+                    @ApiResponse(responseCode = "201", description = "Success"),
+                    @ApiResponse(responseCode = "400", description = "Missing required fields, the agenda is CLOSED or there's already an opened session for the agenda"),
+                    @ApiResponse(responseCode = "404", description = "Agenda ID not found")
+            }
+    )
+    @PostMapping
+    @ResponseBody
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Session> createSession(@RequestBody Session session) {
+        return votingService.createSession(session);
+    }
+
+    @Operation(
+            summary = "Register new vote",
+            description = "Use to register a new vote on a opened session for the agenda. The write-behind buffer is not used by the reactive stack, the vote is always acknowledged once persisted. Retries sent with the same Idempotency-Key header get the answer of the registered vote",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success, the vote is persisted"),
+                    @ApiResponse(responseCode = "400", description = "Invalid vote, missing required fields or agenda is closed"),
+                    @ApiResponse(responseCode = "404", description = "Agenda ID not found"),
+                    @ApiResponse(responseCode = "422", description = "Idempotency key invalid or already used for another vote")
+            }
+    )
+    @PatchMapping("/vote/{agendaId}")
+    @ResponseBody
+    public Mono<ResponseEntity<Vote>> registerVote(
+            @RequestBody Vote vote,
+            @PathVariable String agendaId,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        Mono<Vote> registration = idempotencyKey == null
+                ? votingService.registerVote(vote, agendaId)
+                : votingService.registerVote(vote, agendaId, idempotencyKey);
+
+        return registration.map(registered -> ResponseEntity
+                .status(HttpStatus.OK)
+                .header("Vote-Ack", AckLevel.PERSISTED.name())
+                .body(registered));
+    }
+
+    @Operation(
+            summary = "Register a batch of votes",
+            description = "Use to register many votes at once on the opened session for the agenda, each vote gets its own result. Votes whose CPF couldn't be validated are UNAVAILABLE and can be sent again",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "400", description = "Empty or oversized batch, agenda is closed or there's no opened session"),
+                    @ApiResponse(responseCode = "404", description = "Agenda ID not found")
+            }
+    )
+    @PatchMapping("/vote/{agendaId}/batch")
+    @ResponseBody
+    public Mono<List<VoteResultDTO>> registerVotes(@RequestBody List<Vote> votes, @PathVariable String agendaId) {
+        return votingService.registerVotes(votes, agendaId);
+    }
+}
@@ -1,38 +1,96 @@
 package com.github.votingsessionmanager.api.v1;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.votingsessionmanager.domain.AckLevel;
 import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
 import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteReceipt;
+import com.github.votingsessionmanager.domain.VoteResultDTO;
+import com.github.votingsessionmanager.service.IdempotencyStore;
 import com.github.votingsessionmanager.service.VotingService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/v1/session")
 public class SessionController {
 
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     private VotingService votingService;
+    private ObjectMapper objectMapper;
+    private IdempotencyStore idempotencyStore;
 
     @Autowired
-    public SessionController(VotingService votingService) {
+    public SessionController(VotingService votingService, ObjectMapper objectMapper, IdempotencyStore idempotencyStore) {
         this.votingService = votingService;
+        this.objectMapper = objectMapper;
+        this.idempotencyStore = idempotencyStore;
     }
 
     @Operation(
-            summary = "Find all sessions",
-            description = "Use to find all sessions",
+            summary = "Find sessions",
+            description = "Use to find sessions a page at a time, optionally by status and start date range. When there may be more sessions the Next-Cursor header holds the value to pass as after for the next page",
             responses = {
-                    @ApiResponse(responseCode = "200", description = "Success")
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "400", description = "Invalid page size")
             }
     )
     @GetMapping
     @ResponseBody
-    public List<Session> findAll() {
-        return votingService.findAllSessions();
+    public ResponseEntity<List<Session>> findAll(
+            @RequestParam(required = false) SessionStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTo,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) {
+        List<Session> sessions = votingService.findSessions(status, startFrom, startTo, after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (sessions.size() == limit) {
+            response.header("Next-Cursor", sessions.get(limit - 1).getId());
+        }
+
+        return response.body(sessions);
+    }
+
+    @Operation(
+            summary = "Stream sessions",
+            description = "Use to export all sessions matching the filters as newline delimited JSON, written as they are read",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success")
+            }
+    )
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamAll(
+            @RequestParam(required = false) SessionStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTo) {
+        StreamingResponseBody body = output -> votingService.streamSessions(status, startFrom, startTo, session -> {
+            try {
+                output.write(objectMapper.writeValueAsBytes(session));
+                output.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON)).body(body);
     }
 
     @Operation(
@@ -49,6 +107,31 @@ public class SessionController {
         return votingService.findAndUpdateSessionById(sessionId);
     }
 
+    @Operation(
+            summary = "Find session votes",
+            description = "Use to find the votes of a session a page at a time. When there may be more votes the Next-Cursor header holds the value to pass as after for the next page",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "400", description = "Invalid page size"),
+                    @ApiResponse(responseCode = "404", description = "Session ID not found")
+            }
+    )
+    @GetMapping("/{sessionId}/votes")
+    @ResponseBody
+    public ResponseEntity<List<Vote>> findVotes(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) {
+        List<Vote> votes = votingService.findSessionVotes(sessionId, after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (votes.size() == limit) {
+            response.header("Next-Cursor", votes.get(limit - 1).getId());
+        }
+
+        return response.body(votes);
+    }
+
     @Operation(
             summary = "Find sessions by agenda ID",
             description = "Use to find all sessions created by agenda ID",
@@ -81,16 +164,49 @@ public class SessionController {
 
     @Operation(
             summary = "Register new vote",
-            description = "Use to register a new vote on a opened session for the agenda",
+            description = "Use to register a new vote on a opened session for the agenda. With ack=BUFFERED or ack=JOURNALED and the write-behind buffer enabled, the vote is acknowledged once buffered (or synced to the local journal) and written later. Retries sent with the same Idempotency-Key header get the answer of the registered vote",
             responses = {
-                    @ApiResponse(responseCode = "201", description = "Success"),
+                    @ApiResponse(responseCode = "200", description = "Success, the vote is persisted"),
+                    @ApiResponse(responseCode = "202", description = "Accepted, the vote is buffered or journaled and not persisted yet"),
                     @ApiResponse(responseCode = "400", description = "Invalid vote, missing required fields or agenda is closed"),
-                    @ApiResponse(responseCode = "404", description = "Agenda ID not found")
+                    @ApiResponse(responseCode = "404", description = "Agenda ID not found"),
+                    @ApiResponse(responseCode = "422", description = "Idempotency key invalid or already used for another vote")
             }
     )
     @PatchMapping("/vote/{agendaId}")
     @ResponseBody
-    public Vote registerVote(@RequestBody Vote vote, @PathVariable String agendaId) {
-        return votingService.registerVote(vote, agendaId);
+    public ResponseEntity<Vote> registerVote(
+            @RequestBody Vote vote,
+            @PathVariable String agendaId,
+            @RequestParam(defaultValue = "PERSISTED") AckLevel ack,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (idempotencyKey != null) {
+            VoteReceipt receipt = idempotencyStore.register(idempotencyKey, agendaId, vote, () -> votingService.registerVote(vote, agendaId, ack));
+            return voteResponse(receipt.getVote(), receipt.getAck());
+        }
+
+        return voteResponse(vote, votingService.registerVote(vote, agendaId, ack));
+    }
+
+    @Operation(
+            summary = "Register a batch of votes",
+            description = "Use to register many votes at once on the opened session for the agenda, each vote gets its own result. Votes whose CPF couldn't be validated are UNAVAILABLE and can be sent again",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(responseCode = "400", description = "Empty or oversized batch, agenda is closed or there's no opened session"),
+                    @ApiResponse(responseCode = "404", description = "Agenda ID not found")
+            }
+    )
+    @PatchMapping("/vote/{agendaId}/batch")
+    @ResponseBody
+    public List<VoteResultDTO> registerVotes(@RequestBody List<Vote> votes, @PathVariable String agendaId) {
+        return votingService.registerVotes(votes, agendaId);
+    }
+
+    private ResponseEntity<Vote> voteResponse(Vote vote, AckLevel acknowledged) {
+        return ResponseEntity
+                .status(acknowledged.equals(AckLevel.PERSISTED) ? HttpStatus.OK : HttpStatus.ACCEPTED)
+                .header("Vote-Ack", acknowledged.name())
+                .body(vote);
     }
 }
@@ -1,13 +1,56 @@
 package com.github.votingsessionmanager.config;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.votingsessionmanager.feign.AsyncCPFValidator;
 import com.github.votingsessionmanager.feign.CPFValidator;
+import com.github.votingsessionmanager.feign.CachingCPFValidator;
+import com.github.votingsessionmanager.feign.CPFValidatorMetrics;
+import com.github.votingsessionmanager.feign.CircuitBreakerCPFValidator;
+import com.github.votingsessionmanager.feign.MeteredCPFValidator;
+import com.github.votingsessionmanager.feign.ReactiveCPFValidator;
+import com.github.votingsessionmanager.repository.MongoCommandMetrics;
 import feign.Feign;
+import feign.FeignException;
+import feign.Request;
+import feign.Retryer;
+import feign.httpclient.ApacheHttpClient;
 import feign.jackson.JacksonDecoder;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import com.mongodb.MongoClientOptions;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsConnectionPoolListener;
+import io.netty.channel.ChannelOption;
+import org.apache.coyote.ProtocolHandler;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
 import org.springframework.cloud.openfeign.support.SpringMvcContract;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @ComponentScan(basePackages = "com.github.votingsessionmanager")
@@ -15,11 +58,221 @@ public class AppConfig {
     @Value("${cpf_validator.url}")
     private String cpfValidatorUrl;
 
+    @Value("${cpf_validator.connect_timeout}")
+    private Duration connectTimeout;
+
+    @Value("${cpf_validator.read_timeout}")
+    private Duration readTimeout;
+
+    @Value("${cpf_validator.max_attempts}")
+    private int maxAttempts;
+
+    @Value("${cpf_validator.pool.max_connections}")
+    private int maxConnections;
+
+    @Value("${cpf_validator.pool.keep_alive}")
+    private Duration keepAlive;
+
+    @Value("${cpf_validator.executor.pool_size}")
+    private int executorPoolSize;
+
+    @Value("${cpf_validator.executor.queue_capacity}")
+    private int executorQueueCapacity;
+
+    @Value("${cpf_validator.circuit_breaker.failure_rate_threshold}")
+    private float failureRateThreshold;
+
+    @Value("${cpf_validator.circuit_breaker.slow_call_duration_threshold}")
+    private Duration slowCallDurationThreshold;
+
+    @Value("${cpf_validator.circuit_breaker.wait_duration_in_open_state}")
+    private Duration waitDurationInOpenState;
+
+    @Value("${cpf_validator.cache.enabled}")
+    private boolean cpfValidatorCacheEnabled;
+
+    @Value("${cpf_validator.cache.maximum_size}")
+    private long cpfValidatorCacheMaximumSize;
+
+    @Value("${cpf_validator.cache.able_to_vote_ttl}")
+    private Duration ableToVoteTtl;
+
+    @Value("${cpf_validator.cache.unable_to_vote_ttl}")
+    private Duration unableToVoteTtl;
+
+    @Value("${cpf_validator.cache.invalid_cpf_ttl}")
+    private Duration invalidCpfTtl;
+
+    @Value("${virtual_threads.enabled}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${virtual_threads.mongodb_wait_queue_multiple}")
+    private int mongodbWaitQueueMultiple;
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient cpfValidatorHttpClient() {
+        return HttpClients.custom()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setKeepAliveStrategy((response, context) -> keepAlive.toMillis())
+                .evictIdleConnections(keepAlive.toMillis(), TimeUnit.MILLISECONDS)
+                .evictExpiredConnections()
+                .build();
+    }
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry() {
+        return CircuitBreakerRegistry.ofDefaults();
+    }
+
+    @Bean
+    public TaggedCircuitBreakerMetrics circuitBreakerMetrics(CircuitBreakerRegistry circuitBreakerRegistry) {
+        return TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry);
+    }
+
+    /**
+     * Times the methods annotated with {@code @Timed}, the operations of the voting service.
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
     @Bean
-    public CPFValidator cpfValidator() {
-        return Feign.builder()
+    public CPFValidator cpfValidator(CloseableHttpClient cpfValidatorHttpClient, CircuitBreakerRegistry circuitBreakerRegistry, MeterRegistry meterRegistry) {
+        CPFValidator cpfValidator = Feign.builder()
+                .client(new ApacheHttpClient(cpfValidatorHttpClient))
+                .options(new Request.Options((int) connectTimeout.toMillis(), (int) readTimeout.toMillis()))
+                .retryer(new Retryer.Default(100, readTimeout.toMillis(), maxAttempts))
                 .contract(new SpringMvcContract())
-                .decoder(new JacksonDecoder())
+                .decoder(new JacksonDecoder(cpfValidatorMapper()))
                 .target(CPFValidator.class, cpfValidatorUrl);
+
+        CPFValidatorMetrics metrics = new CPFValidatorMetrics(meterRegistry, "feign");
+        cpfValidator = new MeteredCPFValidator(cpfValidator, metrics);
+        cpfValidator = new CircuitBreakerCPFValidator(cpfValidator, circuitBreakerRegistry.circuitBreaker("cpfValidator", circuitBreakerConfig(FeignException.NotFound.class)));
+
+        if (!cpfValidatorCacheEnabled) {
+            return cpfValidator;
+        }
+
+        return new CachingCPFValidator(cpfValidator, metrics, cpfValidatorCacheMaximumSize, ableToVoteTtl, unableToVoteTtl, invalidCpfTtl);
+    }
+
+    /**
+     * Virtual threads unmount while waiting on the validator, so validations are bounded by the connection pool
+     * rather than by a thread pool.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public AsyncCPFValidator asyncCpfValidator(CPFValidator cpfValidator) {
+        if (virtualThreadsEnabled) {
+            return new AsyncCPFValidator(cpfValidator, VirtualThreads.newThreadPerTaskExecutor("cpf-validator-"), maxConnections, readTimeout);
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                executorPoolSize,
+                executorPoolSize,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(executorQueueCapacity),
+                new CustomizableThreadFactory("cpf-validator-"));
+        executor.allowCoreThreadTimeOut(true);
+
+        return new AsyncCPFValidator(cpfValidator, executor);
+    }
+
+    /**
+     * Serves each request on its own virtual thread instead of Tomcat's worker pool.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "virtual_threads.enabled", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newThreadPerTaskExecutor("http-"));
+    }
+
+    /**
+     * Times every mongodb command by command and collection and gauges the connection pools. With virtual threads,
+     * requests are no longer capped by the worker pool, so more of them may wait for a pooled connection than the
+     * driver's default wait queue of 5 per connection allows. Options of the uri take precedence.
+     */
+    @Bean
+    public MongoClientOptions mongoClientOptions(MeterRegistry meterRegistry) {
+        MongoClientOptions.Builder options = MongoClientOptions.builder()
+                .addCommandListener(new MongoCommandMetrics(meterRegistry))
+                .addConnectionPoolListener(new MongoMetricsConnectionPoolListener(meterRegistry));
+
+        if (virtualThreadsEnabled) {
+            options.threadsAllowedToBlockForConnectionMultiplier(mongodbWaitQueueMultiple);
+        }
+
+        return options.build();
+    }
+
+    /**
+     * Same metrics for the reactive mongodb client.
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoMetricsCustomizer(MeterRegistry meterRegistry) {
+        return settings -> settings
+                .addCommandListener(new MongoCommandMetrics(meterRegistry))
+                .applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(new MongoMetricsConnectionPoolListener(meterRegistry)));
+    }
+
+    /**
+     * With the servlet stack on the classpath too, WebFlux would otherwise run on Tomcat.
+     */
+    @Bean
+    @Profile("reactive")
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean(destroyMethod = "dispose")
+    @Profile("reactive")
+    public ConnectionProvider cpfValidatorConnectionProvider() {
+        return ConnectionProvider.fixed("cpf-validator", maxConnections);
+    }
+
+    @Bean
+    @Profile("reactive")
+    public ReactiveCPFValidator reactiveCpfValidator(WebClient.Builder webClientBuilder, ConnectionProvider cpfValidatorConnectionProvider, CircuitBreakerRegistry circuitBreakerRegistry, MeterRegistry meterRegistry) {
+        HttpClient httpClient = HttpClient.create(cpfValidatorConnectionProvider)
+                .tcpConfiguration(tcpClient -> tcpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis()));
+
+        WebClient webClient = webClientBuilder
+                .baseUrl(cpfValidatorUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .exchangeStrategies(ExchangeStrategies.builder()
+                        .codecs(codecs -> codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(cpfValidatorMapper())))
+                        .build())
+                .build();
+
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("reactiveCpfValidator", circuitBreakerConfig(WebClientResponseException.NotFound.class));
+        CPFValidatorMetrics metrics = new CPFValidatorMetrics(meterRegistry, "webclient");
+
+        if (!cpfValidatorCacheEnabled) {
+            return new ReactiveCPFValidator(webClient, readTimeout, maxAttempts, circuitBreaker, metrics);
+        }
+
+        return new ReactiveCPFValidator(webClient, readTimeout, maxAttempts, circuitBreaker, metrics, cpfValidatorCacheMaximumSize, ableToVoteTtl, unableToVoteTtl, invalidCpfTtl);
+    }
+
+    private ObjectMapper cpfValidatorMapper() {
+        return new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .configure(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_AS_NULL, true);
+    }
+
+    /**
+     * Not found answers mean an invalid CPF, they don't count as failures of the user info service.
+     */
+    private CircuitBreakerConfig circuitBreakerConfig(Class<? extends Throwable> notFound) {
+        return CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(slowCallDurationThreshold)
+                .waitDurationInOpenState(waitDurationInOpenState)
+                .ignoreExceptions(notFound)
+                .build();
     }
 }
@@ -0,0 +1,83 @@
+package com.github.votingsessionmanager.config;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaResult;
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteReceipt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Every index the repositories rely on, created at startup before the application takes requests when
+ * {@code spring.data.mongodb.auto-index-creation=true}. Creating an index that already exists is a no-op.
+ */
+@Component
+public class MongoIndexes {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoIndexes.class);
+
+    @Value("${spring.data.mongodb.auto-index-creation}")
+    private boolean enabled;
+
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    public MongoIndexes(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            createIndexes();
+        }
+    }
+
+    public void createIndexes() {
+        ensureIndexes(Agenda.class, Arrays.asList(
+                new Index().named("status_id").on("status", Sort.Direction.ASC).on("_id", Sort.Direction.ASC)));
+
+        ensureIndexes(Session.class, Arrays.asList(
+                new Index().named("agenda_status").on("agendaId", Sort.Direction.ASC).on("status", Sort.Direction.ASC),
+                new Index().named("opened_end_date")
+                        .on("status", Sort.Direction.ASC)
+                        .on("endDate", Sort.Direction.ASC)
+                        .partial(PartialIndexFilter.of(where("status").is(SessionStatus.OPENED.name())))));
+
+        ensureIndexes(Vote.class, Arrays.asList(
+                new Index().named("agenda_member_id").on("agendaId", Sort.Direction.ASC).on("memberId", Sort.Direction.ASC).unique(),
+                new Index().named("agenda_member_cpf").on("agendaId", Sort.Direction.ASC).on("memberCPF", Sort.Direction.ASC).unique(),
+                new Index().named("session_id").on("sessionId", Sort.Direction.ASC).on("_id", Sort.Direction.ASC),
+                new Index().named("agenda_uncounted")
+                        .on("agendaId", Sort.Direction.ASC)
+                        .partial(PartialIndexFilter.of(where("counted").is(false)))));
+
+        ensureIndexes(AgendaResult.class, Arrays.asList(
+                new Index().named("status_id").on("status", Sort.Direction.ASC).on("_id", Sort.Direction.ASC)));
+
+        ensureIndexes(VoteReceipt.class, Arrays.asList(
+                new Index().named("expires_at").on("expiresAt", Sort.Direction.ASC).expire(0)));
+    }
+
+    private void ensureIndexes(Class<?> entityClass, List<Index> indexes) {
+        for (Index index : indexes) {
+            String name = mongoTemplate.indexOps(entityClass).ensureIndex(index);
+            logger.debug("Ensured index {} on {}.", name, mongoTemplate.getCollectionName(entityClass));
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.github.votingsessionmanager.domain;
+
+public enum AckLevel {
+    BUFFERED, JOURNALED, PERSISTED
+}
@@ -12,6 +12,8 @@ public class Agenda {
     private String description;
     private String result;
     private AgendaStatus status;
+    private long yesCount;
+    private long noCount;
 
     public Agenda(){}
 
@@ -51,4 +53,20 @@ public class Agenda {
     public void setStatus(AgendaStatus status) {
         this.status = status;
     }
+
+    public long getYesCount() {
+        return yesCount;
+    }
+
+    public void setYesCount(long yesCount) {
+        this.yesCount = yesCount;
+    }
+
+    public long getNoCount() {
+        return noCount;
+    }
+
+    public void setNoCount(long noCount) {
+        this.noCount = noCount;
+    }
 }
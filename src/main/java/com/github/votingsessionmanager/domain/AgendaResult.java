@@ -0,0 +1,79 @@
+package com.github.votingsessionmanager.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document(collection = "agenda_results")
+public class AgendaResult {
+
+    @Id
+    private String id;
+
+    private String description;
+    private String result;
+    private AgendaStatus status;
+    private long yesCount;
+    private long noCount;
+
+    public AgendaResult() {}
+
+    public AgendaResult(String id, String description, AgendaStatus status, long yesCount, long noCount) {
+        this.id = id;
+        this.description = description;
+        this.status = status;
+        this.yesCount = yesCount;
+        this.noCount = noCount;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public AgendaStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(AgendaStatus status) {
+        this.status = status;
+    }
+
+    public long getYesCount() {
+        return yesCount;
+    }
+
+    public void setYesCount(long yesCount) {
+        this.yesCount = yesCount;
+    }
+
+    public long getNoCount() {
+        return noCount;
+    }
+
+    public void setNoCount(long noCount) {
+        this.noCount = noCount;
+    }
+
+    public long getTurnout() {
+        return yesCount + noCount;
+    }
+}
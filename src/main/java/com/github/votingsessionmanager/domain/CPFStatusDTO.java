@@ -0,0 +1,19 @@
+package com.github.votingsessionmanager.domain;
+
+public class CPFStatusDTO {
+    private VoterStatus status;
+
+    public CPFStatusDTO() {}
+
+    public CPFStatusDTO(VoterStatus status) {
+        this.status = status;
+    }
+
+    public VoterStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(VoterStatus status) {
+        this.status = status;
+    }
+}
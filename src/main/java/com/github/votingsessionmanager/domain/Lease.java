@@ -0,0 +1,58 @@
+package com.github.votingsessionmanager.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Document
+public class Lease {
+
+    @Id
+    private String id;
+
+    private String holder;
+    private long token;
+    private LocalDateTime expiresAt;
+
+    public Lease() {}
+
+    public Lease(String id, String holder, long token, LocalDateTime expiresAt) {
+        this.id = id;
+        this.holder = holder;
+        this.token = token;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getHolder() {
+        return holder;
+    }
+
+    public void setHolder(String holder) {
+        this.holder = holder;
+    }
+
+    public long getToken() {
+        return token;
+    }
+
+    public void setToken(long token) {
+        this.token = token;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
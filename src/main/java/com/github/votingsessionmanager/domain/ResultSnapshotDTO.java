@@ -0,0 +1,61 @@
+package com.github.votingsessionmanager.domain;
+
+import java.util.List;
+
+public class ResultSnapshotDTO {
+    private String agendaId;
+    private AgendaStatus agendaStatus;
+    private long yesCount;
+    private long noCount;
+    private List<Session> sessions;
+
+    public ResultSnapshotDTO() {}
+
+    public ResultSnapshotDTO(String agendaId, AgendaStatus agendaStatus, long yesCount, long noCount, List<Session> sessions) {
+        this.agendaId = agendaId;
+        this.agendaStatus = agendaStatus;
+        this.yesCount = yesCount;
+        this.noCount = noCount;
+        this.sessions = sessions;
+    }
+
+    public String getAgendaId() {
+        return agendaId;
+    }
+
+    public void setAgendaId(String agendaId) {
+        this.agendaId = agendaId;
+    }
+
+    public AgendaStatus getAgendaStatus() {
+        return agendaStatus;
+    }
+
+    public void setAgendaStatus(AgendaStatus agendaStatus) {
+        this.agendaStatus = agendaStatus;
+    }
+
+    public long getYesCount() {
+        return yesCount;
+    }
+
+    public void setYesCount(long yesCount) {
+        this.yesCount = yesCount;
+    }
+
+    public long getNoCount() {
+        return noCount;
+    }
+
+    public void setNoCount(long noCount) {
+        this.noCount = noCount;
+    }
+
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(List<Session> sessions) {
+        this.sessions = sessions;
+    }
+}
@@ -4,7 +4,6 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
-import java.util.List;
 
 @Document
 public class Session {
@@ -16,8 +15,9 @@ public class Session {
     private long duration;
     private LocalDateTime startDate;
     private LocalDateTime endDate;
-    private List<Vote> votes;
     private SessionStatus status;
+    private long yesCount;
+    private long noCount;
 
     public Session() {}
 
@@ -79,14 +79,6 @@ public class Session {
         this.endDate = endDate;
     }
 
-    public List<Vote> getVotes() {
-        return votes;
-    }
-
-    public void setVotes(List<Vote> votes) {
-        this.votes = votes;
-    }
-
     public SessionStatus getStatus() {
         return status;
     }
@@ -94,4 +86,20 @@ public class Session {
     public void setStatus(SessionStatus status) {
         this.status = status;
     }
+
+    public long getYesCount() {
+        return yesCount;
+    }
+
+    public void setYesCount(long yesCount) {
+        this.yesCount = yesCount;
+    }
+
+    public long getNoCount() {
+        return noCount;
+    }
+
+    public void setNoCount(long noCount) {
+        this.noCount = noCount;
+    }
 }
@@ -0,0 +1,39 @@
+package com.github.votingsessionmanager.domain;
+
+public class SessionTallyDTO {
+    private String sessionId;
+    private long yesCount;
+    private long noCount;
+
+    public SessionTallyDTO() {}
+
+    public SessionTallyDTO(String sessionId, long yesCount, long noCount) {
+        this.sessionId = sessionId;
+        this.yesCount = yesCount;
+        this.noCount = noCount;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public long getYesCount() {
+        return yesCount;
+    }
+
+    public void setYesCount(long yesCount) {
+        this.yesCount = yesCount;
+    }
+
+    public long getNoCount() {
+        return noCount;
+    }
+
+    public void setNoCount(long noCount) {
+        this.noCount = noCount;
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.votingsessionmanager.domain;
+
+public class TallyDeltaDTO {
+    private String agendaId;
+    private long yesDelta;
+    private long noDelta;
+    private long yesCount;
+    private long noCount;
+
+    public TallyDeltaDTO() {}
+
+    public TallyDeltaDTO(String agendaId, long yesDelta, long noDelta, long yesCount, long noCount) {
+        this.agendaId = agendaId;
+        this.yesDelta = yesDelta;
+        this.noDelta = noDelta;
+        this.yesCount = yesCount;
+        this.noCount = noCount;
+    }
+
+    public String getAgendaId() {
+        return agendaId;
+    }
+
+    public void setAgendaId(String agendaId) {
+        this.agendaId = agendaId;
+    }
+
+    public long getYesDelta() {
+        return yesDelta;
+    }
+
+    public void setYesDelta(long yesDelta) {
+        this.yesDelta = yesDelta;
+    }
+
+    public long getNoDelta() {
+        return noDelta;
+    }
+
+    public void setNoDelta(long noDelta) {
+        this.noDelta = noDelta;
+    }
+
+    public long getYesCount() {
+        return yesCount;
+    }
+
+    public void setYesCount(long yesCount) {
+        this.yesCount = yesCount;
+    }
+
+    public long getNoCount() {
+        return noCount;
+    }
+
+    public void setNoCount(long noCount) {
+        this.noCount = noCount;
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.votingsessionmanager.domain;
+
+import java.util.List;
+
+public class TallyReconciliationDTO {
+    private String agendaId;
+    private long recordedYesCount;
+    private long recordedNoCount;
+    private long yesCount;
+    private long noCount;
+    private List<String> driftedSessionIds;
+
+    public TallyReconciliationDTO() {}
+
+    public TallyReconciliationDTO(String agendaId, long recordedYesCount, long recordedNoCount, long yesCount, long noCount, List<String> driftedSessionIds) {
+        this.agendaId = agendaId;
+        this.recordedYesCount = recordedYesCount;
+        this.recordedNoCount = recordedNoCount;
+        this.yesCount = yesCount;
+        this.noCount = noCount;
+        this.driftedSessionIds = driftedSessionIds;
+    }
+
+    public String getAgendaId() {
+        return agendaId;
+    }
+
+    public void setAgendaId(String agendaId) {
+        this.agendaId = agendaId;
+    }
+
+    public long getRecordedYesCount() {
+        return recordedYesCount;
+    }
+
+    public void setRecordedYesCount(long recordedYesCount) {
+        this.recordedYesCount = recordedYesCount;
+    }
+
+    public long getRecordedNoCount() {
+        return recordedNoCount;
+    }
+
+    public void setRecordedNoCount(long recordedNoCount) {
+        this.recordedNoCount = recordedNoCount;
+    }
+
+    public long getYesCount() {
+        return yesCount;
+    }
+
+    public void setYesCount(long yesCount) {
+        this.yesCount = yesCount;
+    }
+
+    public long getNoCount() {
+        return noCount;
+    }
+
+    public void setNoCount(long noCount) {
+        this.noCount = noCount;
+    }
+
+    public List<String> getDriftedSessionIds() {
+        return driftedSessionIds;
+    }
+
+    public void setDriftedSessionIds(List<String> driftedSessionIds) {
+        this.driftedSessionIds = driftedSessionIds;
+    }
+
+    public boolean isAgendaDrifted() {
+        return recordedYesCount != yesCount || recordedNoCount != noCount;
+    }
+
+    public boolean isDrifted() {
+        return isAgendaDrifted() || !driftedSessionIds.isEmpty();
+    }
+}
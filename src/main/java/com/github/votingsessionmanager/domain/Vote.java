@@ -1,6 +1,16 @@
 package com.github.votingsessionmanager.domain;
 
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document
 public class Vote {
+
+    @Id
+    private String id;
+
+    private String agendaId;
+    private String sessionId;
     private String memberId;
     private String memberCPF;
     private VoteOption voteOption;
@@ -13,6 +23,30 @@ public class Vote {
         this.voteOption = voteOption;
     }
 
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getAgendaId() {
+        return agendaId;
+    }
+
+    public void setAgendaId(String agendaId) {
+        this.agendaId = agendaId;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
     public String getMemberId() {
         return memberId;
     }
@@ -0,0 +1,5 @@
+package com.github.votingsessionmanager.domain;
+
+public enum VoteOutcome {
+    ACCEPTED, DUPLICATE, CLOSED, INVALID, INELIGIBLE, UNAVAILABLE
+}
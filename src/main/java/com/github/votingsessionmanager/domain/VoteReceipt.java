@@ -0,0 +1,68 @@
+package com.github.votingsessionmanager.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Document
+public class VoteReceipt {
+
+    @Id
+    private String idempotencyKey;
+
+    private String agendaId;
+    private Vote vote;
+    private AckLevel ack;
+    private LocalDateTime expiresAt;
+
+    public VoteReceipt() {}
+
+    public VoteReceipt(String idempotencyKey, String agendaId, Vote vote, AckLevel ack, LocalDateTime expiresAt) {
+        this.idempotencyKey = idempotencyKey;
+        this.agendaId = agendaId;
+        this.vote = vote;
+        this.ack = ack;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getAgendaId() {
+        return agendaId;
+    }
+
+    public void setAgendaId(String agendaId) {
+        this.agendaId = agendaId;
+    }
+
+    public Vote getVote() {
+        return vote;
+    }
+
+    public void setVote(Vote vote) {
+        this.vote = vote;
+    }
+
+    public AckLevel getAck() {
+        return ack;
+    }
+
+    public void setAck(AckLevel ack) {
+        this.ack = ack;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
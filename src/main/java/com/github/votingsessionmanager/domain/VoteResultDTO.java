@@ -0,0 +1,49 @@
+package com.github.votingsessionmanager.domain;
+
+public class VoteResultDTO {
+    private String memberId;
+    private String memberCPF;
+    private VoteOutcome outcome;
+    private String message;
+
+    public VoteResultDTO() {}
+
+    public VoteResultDTO(Vote vote, VoteOutcome outcome, String message) {
+        this.memberId = vote.getMemberId();
+        this.memberCPF = vote.getMemberCPF();
+        this.outcome = outcome;
+        this.message = message;
+    }
+
+    public String getMemberId() {
+        return memberId;
+    }
+
+    public void setMemberId(String memberId) {
+        this.memberId = memberId;
+    }
+
+    public String getMemberCPF() {
+        return memberCPF;
+    }
+
+    public void setMemberCPF(String memberCPF) {
+        this.memberCPF = memberCPF;
+    }
+
+    public VoteOutcome getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(VoteOutcome outcome) {
+        this.outcome = outcome;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,5 @@
+package com.github.votingsessionmanager.domain;
+
+public enum VoterStatus {
+    ABLE_TO_VOTE, UNABLE_TO_VOTE
+}
@@ -0,0 +1,7 @@
+package com.github.votingsessionmanager.exception;
+
+public class AgendaResultsDisabledException extends RuntimeException {
+    public AgendaResultsDisabledException() {
+        super("Agenda results are not enabled.");
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.votingsessionmanager.exception;
+
+public class CPFValidatorUnavailableException extends RuntimeException {
+    public CPFValidatorUnavailableException() {
+        super("CPF validator is unavailable.");
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.votingsessionmanager.exception;
+
+public class IdempotencyKeyException extends RuntimeException {
+    public IdempotencyKeyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.votingsessionmanager.exception;
+
+public class InvalidPageException extends RuntimeException {
+    public InvalidPageException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.votingsessionmanager.exception;
+
+public class PendingVotesException extends RuntimeException {
+    public PendingVotesException() {
+        super("Buffered votes of the agenda are still being written, try again later.");
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.votingsessionmanager.feign;
+
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
+import com.github.votingsessionmanager.exception.CPFValidatorUnavailableException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs CPF validations on a bounded pool so callers can overlap them with other work. When the pool is saturated
+ * the validation fails right away rather than queueing request threads behind a slow validator.
+ * <p>
+ * With an unbounded executor, such as one virtual thread per validation, the number of validations in flight is
+ * bounded instead: a validation waits up to {@code maxWait} for one of the {@code maxInFlight} slots, on its own
+ * thread, before failing.
+ */
+public class AsyncCPFValidator {
+
+    private CPFValidator cpfValidator;
+    private ExecutorService executor;
+    private Semaphore inFlight;
+    private Duration maxWait;
+    private int capacity;
+
+    public AsyncCPFValidator(CPFValidator cpfValidator, ExecutorService executor) {
+        this.cpfValidator = cpfValidator;
+        this.executor = executor;
+        this.capacity = executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getMaximumPoolSize() : Integer.MAX_VALUE;
+    }
+
+    public AsyncCPFValidator(CPFValidator cpfValidator, ExecutorService executor, int maxInFlight, Duration maxWait) {
+        this(cpfValidator, executor);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxWait = maxWait;
+        this.capacity = maxInFlight;
+    }
+
+    public CompletableFuture<CPFStatusDTO> validateCPF(String cpf) {
+        try {
+            return CompletableFuture.supplyAsync(() -> inFlight == null ? cpfValidator.validateCPF(cpf) : validateInSlot(cpf), executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<CPFStatusDTO> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new CPFValidatorUnavailableException());
+            return rejected;
+        }
+    }
+
+    /**
+     * How many validations can run at once, callers validating many CPFs should not submit more than this at a time.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private CPFStatusDTO validateInSlot(String cpf) {
+        try {
+            if (!inFlight.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new CPFValidatorUnavailableException();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CPFValidatorUnavailableException();
+        }
+
+        try {
+            return cpfValidator.validateCPF(cpf);
+        } finally {
+            inFlight.release();
+        }
+    }
+}
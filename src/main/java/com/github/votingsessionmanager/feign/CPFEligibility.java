@@ -0,0 +1,55 @@
+package com.github.votingsessionmanager.feign;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
+import com.github.votingsessionmanager.domain.VoterStatus;
+
+import java.time.Duration;
+
+/**
+ * Cached answer of the user info service for one CPF: either its status or the not found error of an invalid CPF.
+ */
+class CPFEligibility {
+
+    final CPFStatusDTO response;
+    final RuntimeException notFound;
+
+    CPFEligibility(CPFStatusDTO response, RuntimeException notFound) {
+        this.response = response;
+        this.notFound = notFound;
+    }
+
+    static class TimeToLive implements Expiry<String, CPFEligibility> {
+        private final long ableToVoteNanos;
+        private final long unableToVoteNanos;
+        private final long invalidCpfNanos;
+
+        TimeToLive(Duration ableToVoteTtl, Duration unableToVoteTtl, Duration invalidCpfTtl) {
+            this.ableToVoteNanos = ableToVoteTtl.toNanos();
+            this.unableToVoteNanos = unableToVoteTtl.toNanos();
+            this.invalidCpfNanos = invalidCpfTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(String cpf, CPFEligibility eligibility, long currentTime) {
+            if (eligibility.notFound != null) {
+                return invalidCpfNanos;
+            }
+
+            boolean isAbleToVote = eligibility.response != null
+                    && VoterStatus.ABLE_TO_VOTE.equals(eligibility.response.getStatus());
+
+            return isAbleToVote ? ableToVoteNanos : unableToVoteNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String cpf, CPFEligibility eligibility, long currentTime, long currentDuration) {
+            return expireAfterCreate(cpf, eligibility, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String cpf, CPFEligibility eligibility, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
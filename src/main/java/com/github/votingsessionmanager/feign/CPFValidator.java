@@ -1,6 +1,6 @@
 package com.github.votingsessionmanager.feign;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -10,5 +10,5 @@ import org.springframework.web.bind.annotation.ResponseBody;
 public interface CPFValidator {
     @GetMapping("/users/{cpf}")
     @ResponseBody
-    ObjectNode validateCPF(@PathVariable String cpf);
+    CPFStatusDTO validateCPF(@PathVariable String cpf);
 }
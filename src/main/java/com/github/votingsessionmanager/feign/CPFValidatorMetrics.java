@@ -0,0 +1,60 @@
+package com.github.votingsessionmanager.feign;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
+import feign.FeignException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Times the calls to the user info service, retries included, in {@code cpf_validator.requests}. Each call is tagged
+ * with its client and its outcome: the voter status, {@code invalid_cpf}, {@code timeout} or {@code error}. The
+ * eligibility cache of the client is published as the {@code cpf_validator} cache.
+ */
+public class CPFValidatorMetrics {
+
+    private MeterRegistry meterRegistry;
+    private String client;
+
+    public CPFValidatorMetrics(MeterRegistry meterRegistry, String client) {
+        this.meterRegistry = meterRegistry;
+        this.client = client;
+    }
+
+    public void record(long nanos, CPFStatusDTO response, Throwable error) {
+        Timer.builder("cpf_validator.requests")
+                .description("Calls to the user info service")
+                .tag("client", client)
+                .tag("outcome", outcome(response, error))
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void monitor(AsyncCache<?, ?> cache) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "cpf_validator", "client", client);
+    }
+
+    private static String outcome(CPFStatusDTO response, Throwable error) {
+        if (error == null) {
+            return response == null || response.getStatus() == null ? "unknown" : response.getStatus().name().toLowerCase();
+        }
+
+        if (error instanceof FeignException.NotFound || error instanceof WebClientResponseException.NotFound) {
+            return "invalid_cpf";
+        }
+
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || cause instanceof TimeoutException) {
+                return "timeout";
+            }
+        }
+
+        return "error";
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.votingsessionmanager.feign;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
+import feign.FeignException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Remembers the eligibility of each CPF for a while so repeated lookups don't hit the user info service.
+ * ABLE_TO_VOTE, UNABLE_TO_VOTE and not found (invalid CPF) answers are kept for their own time to live,
+ * any other failure is passed through without being cached.
+ * <p>
+ * The lookup runs outside of the cache's locks: concurrent validations of the same CPF wait on the first one's future,
+ * so a slow user info service never holds a lock or pins the carrier of a virtual thread.
+ */
+public class CachingCPFValidator implements CPFValidator {
+
+    private CPFValidator delegate;
+    private AsyncCache<String, CPFEligibility> cache;
+
+    public CachingCPFValidator(CPFValidator delegate, CPFValidatorMetrics metrics, long maximumSize, Duration ableToVoteTtl, Duration unableToVoteTtl, Duration invalidCpfTtl) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new CPFEligibility.TimeToLive(ableToVoteTtl, unableToVoteTtl, invalidCpfTtl))
+                .recordStats()
+                .buildAsync();
+        metrics.monitor(cache);
+    }
+
+    @Override
+    public CPFStatusDTO validateCPF(String cpf) {
+        CompletableFuture<CPFEligibility> loading = new CompletableFuture<>();
+        CompletableFuture<CPFEligibility> cached = cache.get(cpf, (key, executor) -> loading);
+
+        if (cached == loading) {
+            load(cpf, loading);
+        }
+
+        CPFEligibility eligibility;
+
+        try {
+            eligibility = cached.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw (RuntimeException) e.getCause();
+        }
+
+        if (eligibility.notFound != null) {
+            throw eligibility.notFound;
+        }
+
+        return eligibility.response;
+    }
+
+    public CacheStats getStats() {
+        return cache.synchronous().stats();
+    }
+
+    public long getSize() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    private void load(String cpf, CompletableFuture<CPFEligibility> loading) {
+        try {
+            loading.complete(new CPFEligibility(delegate.validateCPF(cpf), null));
+        } catch (FeignException.NotFound e) {
+            loading.complete(new CPFEligibility(null, e));
+        } catch (RuntimeException | Error e) {
+            loading.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.votingsessionmanager.feign;
+
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
+import com.github.votingsessionmanager.exception.CPFValidatorUnavailableException;
+import feign.RetryableException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+/**
+ * Fails fast while the user info service keeps failing or answering slowly, instead of letting every vote wait
+ * for the client timeouts.
+ */
+public class CircuitBreakerCPFValidator implements CPFValidator {
+
+    private CPFValidator delegate;
+    private CircuitBreaker circuitBreaker;
+
+    public CircuitBreakerCPFValidator(CPFValidator delegate, CircuitBreaker circuitBreaker) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public CPFStatusDTO validateCPF(String cpf) {
+        try {
+            return circuitBreaker.executeSupplier(() -> delegate.validateCPF(cpf));
+        } catch (CallNotPermittedException | RetryableException e) {
+            throw new CPFValidatorUnavailableException();
+        }
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.votingsessionmanager.feign;
+
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
+
+/**
+ * Records the latency and outcome of every call that reaches the user info service, see {@link CPFValidatorMetrics}.
+ */
+public class MeteredCPFValidator implements CPFValidator {
+
+    private CPFValidator delegate;
+    private CPFValidatorMetrics metrics;
+
+    public MeteredCPFValidator(CPFValidator delegate, CPFValidatorMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public CPFStatusDTO validateCPF(String cpf) {
+        long start = System.nanoTime();
+
+        try {
+            CPFStatusDTO response = delegate.validateCPF(cpf);
+            metrics.record(System.nanoTime() - start, response, null);
+            return response;
+        } catch (RuntimeException e) {
+            metrics.record(System.nanoTime() - start, null, e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.votingsessionmanager.feign;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
+import com.github.votingsessionmanager.exception.CPFValidatorUnavailableException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking counterpart of the Feign {@link CPFValidator} stack for the reactive profile: same read timeout,
+ * retries and circuit breaker, and optionally the same eligibility cache as {@link CachingCPFValidator}. An invalid
+ * CPF fails with {@link WebClientResponseException.NotFound}. Calls are recorded in {@link CPFValidatorMetrics}.
+ */
+public class ReactiveCPFValidator {
+
+    private WebClient webClient;
+    private Duration readTimeout;
+    private int maxAttempts;
+    private CircuitBreaker circuitBreaker;
+    private CPFValidatorMetrics metrics;
+    private AsyncCache<String, CPFEligibility> cache;
+
+    public ReactiveCPFValidator(WebClient webClient, Duration readTimeout, int maxAttempts, CircuitBreaker circuitBreaker, CPFValidatorMetrics metrics) {
+        this.webClient = webClient;
+        this.readTimeout = readTimeout;
+        this.maxAttempts = maxAttempts;
+        this.circuitBreaker = circuitBreaker;
+        this.metrics = metrics;
+    }
+
+    public ReactiveCPFValidator(WebClient webClient, Duration readTimeout, int maxAttempts, CircuitBreaker circuitBreaker, CPFValidatorMetrics metrics, long maximumSize, Duration ableToVoteTtl, Duration unableToVoteTtl, Duration invalidCpfTtl) {
+        this(webClient, readTimeout, maxAttempts, circuitBreaker, metrics);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new CPFEligibility.TimeToLive(ableToVoteTtl, unableToVoteTtl, invalidCpfTtl))
+                .recordStats()
+                .buildAsync();
+        metrics.monitor(cache);
+    }
+
+    public Mono<CPFStatusDTO> validateCPF(String cpf) {
+        if (cache == null) {
+            return request(cpf);
+        }
+
+        return Mono
+                .defer(() -> Mono.fromFuture(cache.get(cpf, (key, executor) -> load(key).toFuture())))
+                .flatMap(eligibility -> eligibility.notFound != null ? Mono.error(eligibility.notFound) : Mono.just(eligibility.response));
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    private Mono<CPFEligibility> load(String cpf) {
+        return request(cpf)
+                .map(response -> new CPFEligibility(response, null))
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.just(new CPFEligibility(null, e)));
+    }
+
+    private Mono<CPFStatusDTO> request(String cpf) {
+        Mono<CPFStatusDTO> call = webClient.get()
+                .uri("/users/{cpf}", cpf)
+                .retrieve()
+                .bodyToMono(CPFStatusDTO.class)
+                .timeout(readTimeout)
+                .retry(maxAttempts - 1, e -> !(e instanceof WebClientResponseException));
+
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return Mono.error(new CPFValidatorUnavailableException());
+            }
+
+            long start = System.nanoTime();
+
+            return call
+                    .doOnSuccess(response -> {
+                        circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        metrics.record(System.nanoTime() - start, response, null);
+                    })
+                    .doOnError(e -> {
+                        circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                        metrics.record(System.nanoTime() - start, null, e);
+                    })
+                    .doOnCancel(circuitBreaker::releasePermission)
+                    .onErrorMap(e -> !(e instanceof WebClientResponseException), e -> new CPFValidatorUnavailableException());
+        });
+    }
+}
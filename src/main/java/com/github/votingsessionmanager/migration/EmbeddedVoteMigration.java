@@ -0,0 +1,147 @@
+package com.github.votingsessionmanager.migration;
+
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionTallyDTO;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.github.votingsessionmanager.repository.SessionRepository;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Moves votes embedded in legacy session documents into the vote collection.
+ * Enabled with {@code vote_migration.enabled=true}; it is safe to run more than once,
+ * votes already present in the vote collection are skipped by its unique indexes.
+ * <p>
+ * Sessions are read through a cursor. Migrated votes are stored counted, without the {@code counted} flag of the
+ * vote write, and the tallies of their sessions and agendas are then set from the stored votes, so the migrated
+ * votes show up in the counters the votes path increments.
+ */
+@Component
+@ConditionalOnProperty(name = "vote_migration.enabled", havingValue = "true")
+public class EmbeddedVoteMigration implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedVoteMigration.class);
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    private MongoTemplate mongoTemplate;
+    private VoteRepository voteRepository;
+    private SessionRepository sessionRepository;
+    private AgendaRepository agendaRepository;
+
+    @Autowired
+    public EmbeddedVoteMigration(MongoTemplate mongoTemplate, VoteRepository voteRepository, SessionRepository sessionRepository, AgendaRepository agendaRepository) {
+        this.mongoTemplate = mongoTemplate;
+        this.voteRepository = voteRepository;
+        this.sessionRepository = sessionRepository;
+        this.agendaRepository = agendaRepository;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        String sessionCollection = mongoTemplate.getCollectionName(Session.class);
+        Set<String> agendaIds = new LinkedHashSet<>();
+        long migrated = 0;
+        long sessions = 0;
+
+        try (CloseableIterator<Document> cursor = mongoTemplate.stream(query(where("votes").exists(true)), Document.class, sessionCollection)) {
+            while (cursor.hasNext()) {
+                Document session = cursor.next();
+                migrated += migrateSession(session, sessionCollection);
+                sessions++;
+
+                if (session.getString("agendaId") != null) {
+                    agendaIds.add(session.getString("agendaId"));
+                }
+            }
+        }
+
+        agendaIds.forEach(this::backfillTally);
+
+        logger.info("Migrated {} embedded votes from {} sessions, tallies of {} agendas set.", migrated, sessions, agendaIds.size());
+    }
+
+    private long migrateSession(Document session, String sessionCollection) {
+        Object sessionId = session.get("_id");
+        List<Document> votes = session.getList("votes", Document.class);
+        long migrated = 0;
+
+        if (votes != null && !votes.isEmpty()) {
+            List<Document> documents = votes.stream()
+                    .map(vote -> new Document("agendaId", session.getString("agendaId"))
+                            .append("sessionId", sessionId.toString())
+                            .append("memberId", vote.getString("memberId"))
+                            .append("memberCPF", vote.getString("memberCPF"))
+                            .append("voteOption", vote.getString("voteOption")))
+                    .collect(Collectors.toList());
+
+            BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Vote.class);
+            operations.insert(documents);
+
+            try {
+                migrated = operations.execute().getInsertedCount();
+            } catch (DuplicateKeyException e) {
+                List<BulkWriteError> errors = ((MongoBulkWriteException) e.getCause()).getWriteErrors();
+                boolean onlyDuplicates = errors
+                        .stream()
+                        .allMatch(error -> error.getCode() == DUPLICATE_KEY_ERROR);
+
+                if (!onlyDuplicates) {
+                    throw e;
+                }
+
+                migrated = votes.size() - errors.size();
+                logger.info("Skipped {} already migrated votes of session {}.", errors.size(), sessionId);
+            }
+        }
+
+        mongoTemplate.updateFirst(query(where("_id").is(sessionId)), new Update().unset("votes"), sessionCollection);
+
+        return migrated;
+    }
+
+    private void backfillTally(String agendaId) {
+        Map<String, SessionTallyDTO> tallies = new HashMap<>();
+        long agendaYesCount = 0;
+        long agendaNoCount = 0;
+
+        for (SessionTallyDTO tally : voteRepository.tallyBySession(agendaId)) {
+            tallies.put(tally.getSessionId(), tally);
+            agendaYesCount += tally.getYesCount();
+            agendaNoCount += tally.getNoCount();
+        }
+
+        for (Session session : sessionRepository.findByAgendaId(agendaId)) {
+            SessionTallyDTO tally = tallies.getOrDefault(session.getId(), new SessionTallyDTO(session.getId(), 0, 0));
+            sessionRepository.setTally(session.getId(), tally.getYesCount(), tally.getNoCount());
+        }
+
+        agendaRepository.setTally(agendaId, agendaYesCount, agendaNoCount);
+        // Votes left uncounted by a failed write are part of the recount.
+        voteRepository.markCounted(agendaId);
+    }
+}
@@ -5,5 +5,5 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface AgendaRepository extends MongoRepository<Agenda, String> {
+public interface AgendaRepository extends MongoRepository<Agenda, String>, AgendaRepositoryCustom {
 }
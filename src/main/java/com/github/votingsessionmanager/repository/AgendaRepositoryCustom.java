@@ -0,0 +1,20 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import org.springframework.data.util.CloseableIterator;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface AgendaRepositoryCustom {
+    Agenda closeAgenda(String agendaId);
+
+    void setResult(String agendaId, String result);
+
+    void setTally(String agendaId, long yesCount, long noCount);
+
+    List<Agenda> findPage(AgendaStatus status, LocalDateTime createdFrom, LocalDateTime createdTo, String after, int limit);
+
+    CloseableIterator<Agenda> stream(AgendaStatus status, LocalDateTime createdFrom, LocalDateTime createdTo);
+}
@@ -0,0 +1,97 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class AgendaRepositoryCustomImpl implements AgendaRepositoryCustom {
+
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    public AgendaRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Agenda closeAgenda(String agendaId) {
+        return mongoTemplate.findAndModify(
+                query(where("id").is(agendaId).and("status").is(AgendaStatus.OPENED)),
+                Update.update("status", AgendaStatus.CLOSED),
+                FindAndModifyOptions.options().returnNew(true),
+                Agenda.class);
+    }
+
+    @Override
+    public void setResult(String agendaId, String result) {
+        mongoTemplate.updateFirst(query(where("id").is(agendaId)), Update.update("result", result), Agenda.class);
+    }
+
+    @Override
+    public void setTally(String agendaId, long yesCount, long noCount) {
+        mongoTemplate.updateFirst(
+                query(where("id").is(agendaId)),
+                Update.update("yesCount", yesCount).set("noCount", noCount),
+                Agenda.class);
+    }
+
+    @Override
+    public List<Agenda> findPage(AgendaStatus status, LocalDateTime createdFrom, LocalDateTime createdTo, String after, int limit) {
+        Query query = filter(status, createdFrom, createdTo, after).limit(limit);
+        return mongoTemplate.find(query, Agenda.class);
+    }
+
+    @Override
+    public CloseableIterator<Agenda> stream(AgendaStatus status, LocalDateTime createdFrom, LocalDateTime createdTo) {
+        return mongoTemplate.stream(filter(status, createdFrom, createdTo, null), Agenda.class);
+    }
+
+    /**
+     * Agendas have no creation date of their own, the creation date range is matched against the timestamp of their
+     * ObjectId, which also orders them.
+     */
+    private Query filter(AgendaStatus status, LocalDateTime createdFrom, LocalDateTime createdTo, String after) {
+        Query query = new Query().with(Sort.by("id"));
+        Criteria id = where("id");
+
+        if (status != null) {
+            query.addCriteria(where("status").is(status));
+        }
+
+        if (after != null) {
+            id.gt(after);
+        }
+
+        if (createdFrom != null) {
+            id.gte(firstObjectIdAt(createdFrom));
+        }
+
+        if (createdTo != null) {
+            id.lt(firstObjectIdAt(createdTo));
+        }
+
+        if (after != null || createdFrom != null || createdTo != null) {
+            query.addCriteria(id);
+        }
+
+        return query;
+    }
+
+    private static String firstObjectIdAt(LocalDateTime dateTime) {
+        return String.format("%08x", dateTime.atZone(ZoneId.systemDefault()).toEpochSecond()) + "0000000000000000";
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.AgendaResult;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface AgendaResultRepository extends MongoRepository<AgendaResult, String>, AgendaResultRepositoryCustom {
+}
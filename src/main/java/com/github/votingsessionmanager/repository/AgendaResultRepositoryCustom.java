@@ -0,0 +1,10 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.AgendaResult;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+
+import java.util.List;
+
+public interface AgendaResultRepositoryCustom {
+    List<AgendaResult> findPage(AgendaStatus status, String after, int limit);
+}
@@ -0,0 +1,37 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.AgendaResult;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class AgendaResultRepositoryCustomImpl implements AgendaResultRepositoryCustom {
+
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    public AgendaResultRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<AgendaResult> findPage(AgendaStatus status, String after, int limit) {
+        Query query = new Query().with(Sort.by("id")).limit(limit);
+
+        if (status != null) {
+            query.addCriteria(where("status").is(status));
+        }
+
+        if (after != null) {
+            query.addCriteria(where("id").gt(after));
+        }
+
+        return mongoTemplate.find(query, AgendaResult.class);
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Lease;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface LeaseRepository extends MongoRepository<Lease, String>, LeaseRepositoryCustom {
+}
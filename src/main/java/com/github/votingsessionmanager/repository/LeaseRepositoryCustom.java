@@ -0,0 +1,14 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Lease;
+
+import java.time.Duration;
+import java.util.Optional;
+
+public interface LeaseRepositoryCustom {
+    Optional<Lease> acquire(String name, String holder, Duration ttl);
+
+    boolean renew(String name, String holder, long token, Duration ttl);
+
+    void release(String name, String holder, long token);
+}
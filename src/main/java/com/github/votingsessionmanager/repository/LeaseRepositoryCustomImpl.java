@@ -0,0 +1,66 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Lease;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class LeaseRepositoryCustomImpl implements LeaseRepositoryCustom {
+
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    public LeaseRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Takes the lease when it is free, expired or already held by the holder, in a single upsert. Every acquisition
+     * increments the lease token, so a holder that lost the lease can't renew or release it anymore. Returns empty
+     * when another holder has the lease: the upsert then fails on the lease id.
+     */
+    @Override
+    public Optional<Lease> acquire(String name, String holder, Duration ttl) {
+        LocalDateTime now = LocalDateTime.now();
+        Criteria takeable = new Criteria().orOperator(where("expiresAt").lte(now), where("holder").is(holder));
+
+        try {
+            return Optional.ofNullable(mongoTemplate.findAndModify(
+                    query(where("id").is(name).andOperator(takeable)),
+                    Update.update("holder", holder).set("expiresAt", now.plus(ttl)).inc("token", 1),
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    Lease.class));
+        } catch (DuplicateKeyException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public boolean renew(String name, String holder, long token, Duration ttl) {
+        return mongoTemplate.updateFirst(
+                query(where("id").is(name).and("holder").is(holder).and("token").is(token)),
+                Update.update("expiresAt", LocalDateTime.now().plus(ttl)),
+                Lease.class).getMatchedCount() > 0;
+    }
+
+    /**
+     * Expires the lease right away if the holder still has it, so another node takes over on its next heartbeat.
+     */
+    @Override
+    public void release(String name, String holder, long token) {
+        mongoTemplate.updateFirst(
+                query(where("id").is(name).and("holder").is(holder).and("token").is(token)),
+                Update.update("expiresAt", LocalDateTime.now()),
+                Lease.class);
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.votingsessionmanager.repository;
+
+import com.mongodb.event.CommandEvent;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the mongodb commands in {@code mongodb.driver.commands}, like Micrometer's {@code MongoMetricsCommandListener},
+ * with a {@code collection} tag next to the command and the status. The collection is read from the command document
+ * when the command starts, commands that don't target a collection are tagged {@code none}.
+ */
+public class MongoCommandMetrics implements CommandListener {
+
+    private MeterRegistry meterRegistry;
+    private Map<Integer, String> collections = new ConcurrentHashMap<>();
+
+    public MongoCommandMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        collections.put(event.getRequestId(), collection(event.getCommand(), event.getCommandName()));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        record(event, "SUCCESS", event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        record(event, "FAILED", event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    private void record(CommandEvent event, String status, long nanos) {
+        String collection = collections.remove(event.getRequestId());
+
+        Timer.builder("mongodb.driver.commands")
+                .description("Timer of mongodb commands")
+                .tag("command", event.getCommandName())
+                .tag("collection", collection == null ? "none" : collection)
+                .tag("cluster.id", event.getConnectionDescription().getConnectionId().getServerId().getClusterId().getValue())
+                .tag("server.address", event.getConnectionDescription().getServerAddress().toString())
+                .tag("status", status)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String collection(BsonDocument command, String commandName) {
+        // getMore names its cursor, its collection comes in a field of its own.
+        BsonValue value = commandName.equals("getMore") ? command.get("collection") : command.get(commandName);
+        return value != null && value.isString() ? value.asString().getValue() : "none";
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface ReactiveAgendaRepository extends ReactiveMongoRepository<Agenda, String>, ReactiveAgendaRepositoryCustom {
+}
@@ -0,0 +1,10 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveAgendaRepositoryCustom {
+    Mono<Agenda> closeAgenda(String agendaId);
+
+    Mono<Void> setResult(String agendaId, String result);
+}
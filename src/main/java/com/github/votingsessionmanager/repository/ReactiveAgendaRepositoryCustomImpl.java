@@ -0,0 +1,36 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class ReactiveAgendaRepositoryCustomImpl implements ReactiveAgendaRepositoryCustom {
+
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    public ReactiveAgendaRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<Agenda> closeAgenda(String agendaId) {
+        return mongoTemplate.findAndModify(
+                query(where("id").is(agendaId).and("status").is(AgendaStatus.OPENED)),
+                Update.update("status", AgendaStatus.CLOSED),
+                FindAndModifyOptions.options().returnNew(true),
+                Agenda.class);
+    }
+
+    @Override
+    public Mono<Void> setResult(String agendaId, String result) {
+        return mongoTemplate.updateFirst(query(where("id").is(agendaId)), Update.update("result", result), Agenda.class).then();
+    }
+}
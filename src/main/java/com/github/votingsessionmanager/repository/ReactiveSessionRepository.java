@@ -0,0 +1,13 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Session;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+public interface ReactiveSessionRepository extends ReactiveMongoRepository<Session, String>, ReactiveSessionRepositoryCustom {
+    Flux<Session> findByAgendaId(String agendaId);
+
+    @Query(value = "{ 'agendaId' : ?0 }", fields = "{ 'agendaId' : 1, 'status' : 1, 'endDate' : 1 }")
+    Flux<Session> findSummariesByAgendaId(String agendaId);
+}
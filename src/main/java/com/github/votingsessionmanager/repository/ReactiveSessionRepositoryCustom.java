@@ -0,0 +1,7 @@
+package com.github.votingsessionmanager.repository;
+
+import reactor.core.publisher.Mono;
+
+public interface ReactiveSessionRepositoryCustom {
+    Mono<Long> closeOpenedSessions(String agendaId);
+}
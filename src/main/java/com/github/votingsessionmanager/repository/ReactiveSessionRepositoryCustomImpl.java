@@ -0,0 +1,30 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.mongodb.client.result.UpdateResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class ReactiveSessionRepositoryCustomImpl implements ReactiveSessionRepositoryCustom {
+
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    public ReactiveSessionRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<Long> closeOpenedSessions(String agendaId) {
+        return mongoTemplate.updateMulti(
+                query(where("agendaId").is(agendaId).and("status").is(SessionStatus.OPENED)),
+                Update.update("status", SessionStatus.CLOSED),
+                Session.class).map(UpdateResult::getModifiedCount);
+    }
+}
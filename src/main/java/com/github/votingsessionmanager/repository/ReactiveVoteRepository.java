@@ -0,0 +1,7 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Vote;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface ReactiveVoteRepository extends ReactiveMongoRepository<Vote, String>, ReactiveVoteRepositoryCustom {
+}
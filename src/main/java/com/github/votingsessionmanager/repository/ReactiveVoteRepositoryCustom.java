@@ -0,0 +1,9 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveVoteRepositoryCustom {
+    Mono<VoteOutcome> insertIntoOpenedSession(Vote vote);
+}
@@ -0,0 +1,79 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class ReactiveVoteRepositoryCustomImpl implements ReactiveVoteRepositoryCustom {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveVoteRepositoryCustomImpl.class);
+    private static final String COUNTED = "counted";
+
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    public ReactiveVoteRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Same writes as {@link VoteRepositoryCustomImpl#insertIntoOpenedSession(Vote)}, chained without blocking. Votes
+     * are stored with {@code counted: false} until their tally updates are done. They are never retried under the
+     * same id on this stack, so every duplicate is a second vote of the member.
+     */
+    @Override
+    public Mono<VoteOutcome> insertIntoOpenedSession(Vote vote) {
+        if (vote.getId() == null) {
+            vote.setId(ObjectId.get().toHexString());
+        }
+
+        Document document = new Document();
+        mongoTemplate.getConverter().write(vote, document);
+        document.put(COUNTED, false);
+
+        return mongoTemplate.insert(document, mongoTemplate.getCollectionName(Vote.class))
+                .map(inserted -> true)
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.just(false))
+                .flatMap(inserted -> inserted ? count(vote) : Mono.just(VoteOutcome.DUPLICATE));
+    }
+
+    private Mono<VoteOutcome> count(Vote vote) {
+        String counter = vote.getVoteOption().equals(VoteOption.SIM) ? "yesCount" : "noCount";
+        Update tally = new Update().inc(counter, 1);
+        Query stored = query(where("id").is(vote.getId()));
+        Query openedSession = query(where("id").is(vote.getSessionId())
+                .and("status").is(SessionStatus.OPENED)
+                .and("endDate").gt(LocalDateTime.now()));
+
+        Query openedAgenda = query(where("id").is(vote.getAgendaId()).and("status").is(AgendaStatus.OPENED));
+        Mono<VoteOutcome> reject = mongoTemplate.remove(stored, Vote.class).thenReturn(VoteOutcome.CLOSED);
+
+        return mongoTemplate.updateFirst(openedSession, tally, Session.class).flatMap(session -> session.getMatchedCount() == 0
+                ? reject
+                : mongoTemplate.updateFirst(openedAgenda, tally, Agenda.class).flatMap(agenda -> agenda.getMatchedCount() == 0
+                        ? mongoTemplate.updateFirst(query(where("id").is(vote.getSessionId())), new Update().inc(counter, -1), Session.class).then(reject)
+                        : mongoTemplate.updateFirst(stored, new Update().unset(COUNTED), Vote.class)
+                                .doOnError(e -> logger.warn("Failed to mark counted vote {}, a reconciliation settles it.", vote.getId(), e))
+                                .onErrorResume(e -> Mono.empty())
+                                .thenReturn(VoteOutcome.ACCEPTED)));
+    }
+}
@@ -1,10 +1,18 @@
 package com.github.votingsessionmanager.repository;
 
 import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 import java.util.List;
 
-public interface SessionRepository extends MongoRepository<Session, String> {
+public interface SessionRepository extends MongoRepository<Session, String>, SessionRepositoryCustom {
     List<Session> findByAgendaId(String agendaId);
+
+    @Query(value = "{ 'agendaId' : ?0 }", fields = "{ 'agendaId' : 1, 'status' : 1, 'endDate' : 1 }")
+    List<Session> findSummariesByAgendaId(String agendaId);
+
+    @Query(value = "{ 'status' : ?0 }", fields = "{ 'agendaId' : 1, 'status' : 1, 'endDate' : 1 }")
+    List<Session> findSummariesByStatus(SessionStatus status);
 }
@@ -0,0 +1,23 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import org.springframework.data.util.CloseableIterator;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface SessionRepositoryCustom {
+    long closeOpenedSessions(String agendaId);
+
+    long closeExpiredSessions(Collection<String> sessionIds, LocalDateTime now);
+
+    long closeExpiredSessions(LocalDateTime now);
+
+    void setTally(String sessionId, long yesCount, long noCount);
+
+    List<Session> findPage(SessionStatus status, LocalDateTime startFrom, LocalDateTime startTo, String after, int limit);
+
+    CloseableIterator<Session> stream(SessionStatus status, LocalDateTime startFrom, LocalDateTime startTo);
+}
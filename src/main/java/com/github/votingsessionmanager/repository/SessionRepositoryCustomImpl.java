@@ -0,0 +1,105 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class SessionRepositoryCustomImpl implements SessionRepositoryCustom {
+
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    public SessionRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public long closeOpenedSessions(String agendaId) {
+        return mongoTemplate.updateMulti(
+                query(where("agendaId").is(agendaId).and("status").is(SessionStatus.OPENED)),
+                Update.update("status", SessionStatus.CLOSED),
+                Session.class).getModifiedCount();
+    }
+
+    @Override
+    public long closeExpiredSessions(Collection<String> sessionIds, LocalDateTime now) {
+        return mongoTemplate.updateMulti(
+                query(where("id").in(sessionIds).and("status").is(SessionStatus.OPENED).and("endDate").lte(now)),
+                Update.update("status", SessionStatus.CLOSED),
+                Session.class).getModifiedCount();
+    }
+
+    @Override
+    public long closeExpiredSessions(LocalDateTime now) {
+        return mongoTemplate.updateMulti(
+                query(where("status").is(SessionStatus.OPENED).and("endDate").lte(now)),
+                Update.update("status", SessionStatus.CLOSED),
+                Session.class).getModifiedCount();
+    }
+
+    @Override
+    public void setTally(String sessionId, long yesCount, long noCount) {
+        mongoTemplate.updateFirst(
+                query(where("id").is(sessionId)),
+                Update.update("yesCount", yesCount).set("noCount", noCount),
+                Session.class);
+    }
+
+    @Override
+    public List<Session> findPage(SessionStatus status, LocalDateTime startFrom, LocalDateTime startTo, String after, int limit) {
+        Query query = filter(status, startFrom, startTo, after).limit(limit);
+        return mongoTemplate.find(query, Session.class);
+    }
+
+    @Override
+    public CloseableIterator<Session> stream(SessionStatus status, LocalDateTime startFrom, LocalDateTime startTo) {
+        return mongoTemplate.stream(filter(status, startFrom, startTo, null), Session.class);
+    }
+
+    /**
+     * Sessions past their end date count as closed even if the expiry scheduler didn't get to them yet.
+     */
+    private Query filter(SessionStatus status, LocalDateTime startFrom, LocalDateTime startTo, String after) {
+        Query query = new Query().with(Sort.by("id"));
+        LocalDateTime now = LocalDateTime.now();
+
+        if (SessionStatus.OPENED.equals(status)) {
+            query.addCriteria(where("status").is(SessionStatus.OPENED).and("endDate").gt(now));
+        } else if (SessionStatus.CLOSED.equals(status)) {
+            query.addCriteria(new Criteria().orOperator(where("status").is(SessionStatus.CLOSED), where("endDate").lte(now)));
+        }
+
+        if (startFrom != null || startTo != null) {
+            Criteria startDate = where("startDate");
+
+            if (startFrom != null) {
+                startDate.gte(startFrom);
+            }
+
+            if (startTo != null) {
+                startDate.lt(startTo);
+            }
+
+            query.addCriteria(startDate);
+        }
+
+        if (after != null) {
+            query.addCriteria(where("id").gt(after));
+        }
+
+        return query;
+    }
+}
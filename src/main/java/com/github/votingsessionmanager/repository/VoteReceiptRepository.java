@@ -0,0 +1,7 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.VoteReceipt;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface VoteReceiptRepository extends MongoRepository<VoteReceipt, String> {
+}
@@ -0,0 +1,10 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Vote;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Optional;
+
+public interface VoteRepository extends MongoRepository<Vote, String>, VoteRepositoryCustom {
+    Optional<Vote> findByAgendaIdAndMemberId(String agendaId, String memberId);
+}
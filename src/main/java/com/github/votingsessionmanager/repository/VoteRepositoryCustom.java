@@ -0,0 +1,24 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.SessionTallyDTO;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface VoteRepositoryCustom {
+    VoteOutcome insertIntoOpenedSession(Vote vote);
+
+    List<VoteOutcome> insertAllIntoOpenedSession(String agendaId, String sessionId, List<Vote> votes);
+
+    List<VoteOutcome> insertAllIntoSessionOpenedAt(String agendaId, String sessionId, List<Vote> votes, List<LocalDateTime> acceptedAts);
+
+    List<Vote> findPage(String sessionId, String after, int limit);
+
+    List<SessionTallyDTO> tallyBySession(String agendaId);
+
+    boolean hasUncounted(String agendaId);
+
+    long markCounted(String agendaId);
+}
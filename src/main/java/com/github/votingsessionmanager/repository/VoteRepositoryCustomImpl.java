@@ -0,0 +1,313 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.github.votingsessionmanager.domain.SessionTallyDTO;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class VoteRepositoryCustomImpl implements VoteRepositoryCustom {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteRepositoryCustomImpl.class);
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+    private static final String COUNTED = "counted";
+
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    public VoteRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Inserts the vote and counts it on its session in a single conditional update, which only matches while the
+     * session is still opened. Duplicates are rejected by the vote collection unique indexes and a vote whose session
+     * closed in the meantime is removed again, so no concurrent writer can make a vote disappear or count twice.
+     * Accepted votes are then added to the agenda tally, again only while the agenda is opened: a vote that passed
+     * its session just before the agenda closed has its session update undone and is removed, so the tally the
+     * closing of the agenda reads is final.
+     * <p>
+     * Votes are stored with {@code counted: false} until their tally updates are done. A retry of a vote whose
+     * earlier write failed halfway, recognized by its id, counts it instead of reporting it as a duplicate, and
+     * {@link #markCounted(String)} settles the votes a reconciliation counted.
+     */
+    @Override
+    public VoteOutcome insertIntoOpenedSession(Vote vote) {
+        return insertAll(vote.getAgendaId(), Collections.singletonList(vote), openedSession(vote.getSessionId())).get(0);
+    }
+
+    /**
+     * Same as {@link #insertIntoOpenedSession(Vote)} for many votes of one session at once: a single unordered bulk
+     * insert, then one conditional tally update for the whole batch. Outcomes are returned in the order of the votes.
+     */
+    @Override
+    public List<VoteOutcome> insertAllIntoOpenedSession(String agendaId, String sessionId, List<Vote> votes) {
+        return insertAll(agendaId, votes, openedSession(sessionId));
+    }
+
+    /**
+     * Variant of {@link #insertAllIntoOpenedSession(String, String, List)} for votes accepted earlier, e.g. by the
+     * write-behind buffer: the session only has to have been opened when each vote was accepted. The votes accepted
+     * before the end of the session are written together, gated on the latest of them, the others are CLOSED, so a
+     * batch that straddles the end of the session only loses its late votes.
+     */
+    @Override
+    public List<VoteOutcome> insertAllIntoSessionOpenedAt(String agendaId, String sessionId, List<Vote> votes, List<LocalDateTime> acceptedAts) {
+        List<VoteOutcome> outcomes = new ArrayList<>(Collections.nCopies(votes.size(), VoteOutcome.CLOSED));
+        Query sessionQuery = query(where("id").is(sessionId));
+        sessionQuery.fields().include("endDate");
+        Session session = mongoTemplate.findOne(sessionQuery, Session.class);
+
+        if (session == null || session.getEndDate() == null) {
+            return outcomes;
+        }
+
+        List<Integer> inTime = new ArrayList<>(votes.size());
+        List<Vote> inTimeVotes = new ArrayList<>(votes.size());
+        LocalDateTime latest = null;
+
+        for (int i = 0; i < votes.size(); i++) {
+            LocalDateTime acceptedAt = acceptedAts.get(i);
+
+            if (acceptedAt.isBefore(session.getEndDate())) {
+                inTime.add(i);
+                inTimeVotes.add(votes.get(i));
+                latest = latest == null || acceptedAt.isAfter(latest) ? acceptedAt : latest;
+            }
+        }
+
+        if (inTime.isEmpty()) {
+            return outcomes;
+        }
+
+        List<VoteOutcome> inTimeOutcomes = insertAll(agendaId, inTimeVotes, query(where("id").is(sessionId).and("endDate").gt(latest)));
+
+        for (int i = 0; i < inTime.size(); i++) {
+            outcomes.set(inTime.get(i), inTimeOutcomes.get(i));
+        }
+
+        return outcomes;
+    }
+
+    @Override
+    public List<Vote> findPage(String sessionId, String after, int limit) {
+        Query query = query(where("sessionId").is(sessionId)).with(Sort.by("id")).limit(limit);
+
+        if (after != null) {
+            query.addCriteria(where("id").gt(after));
+        }
+
+        return mongoTemplate.find(query, Vote.class);
+    }
+
+    /**
+     * Counts the votes of each session of the agenda in a single aggregation, so only one document per session is
+     * returned instead of the votes themselves.
+     */
+    @Override
+    public List<SessionTallyDTO> tallyBySession(String agendaId) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(where("agendaId").is(agendaId)),
+                Aggregation.group("sessionId")
+                        .sum(countOf(VoteOption.SIM)).as("yesCount")
+                        .sum(countOf(VoteOption.NAO)).as("noCount"),
+                Aggregation.project("yesCount", "noCount").and("sessionId").previousOperation());
+
+        return mongoTemplate.aggregate(aggregation, Vote.class, SessionTallyDTO.class).getMappedResults();
+    }
+
+    /**
+     * Whether a vote of the agenda is stored without its tally updates, left behind by a write that failed halfway.
+     */
+    @Override
+    public boolean hasUncounted(String agendaId) {
+        return mongoTemplate.exists(query(where("agendaId").is(agendaId).and(COUNTED).is(false)), Vote.class);
+    }
+
+    @Override
+    public long markCounted(String agendaId) {
+        return mongoTemplate.updateMulti(
+                query(where("agendaId").is(agendaId).and(COUNTED).is(false)),
+                new Update().unset(COUNTED),
+                Vote.class).getModifiedCount();
+    }
+
+    private List<VoteOutcome> insertAll(String agendaId, List<Vote> votes, Query session) {
+        List<VoteOutcome> outcomes = new ArrayList<>(Collections.nCopies(votes.size(), VoteOutcome.ACCEPTED));
+
+        if (votes.isEmpty()) {
+            return outcomes;
+        }
+
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Vote.class);
+
+        for (Vote vote : votes) {
+            if (vote.getId() == null) {
+                vote.setId(ObjectId.get().toHexString());
+            }
+
+            operations.insert(uncounted(vote));
+        }
+
+        List<Integer> duplicates = new ArrayList<>();
+
+        try {
+            operations.execute();
+        } catch (DuplicateKeyException e) {
+            for (BulkWriteError error : ((MongoBulkWriteException) e.getCause()).getWriteErrors()) {
+                if (error.getCode() != DUPLICATE_KEY_ERROR) {
+                    throw e;
+                }
+
+                duplicates.add(error.getIndex());
+            }
+        }
+
+        boolean[] uncounted = new boolean[votes.size()];
+        Arrays.fill(uncounted, true);
+        resolveDuplicates(votes, duplicates, outcomes, uncounted);
+
+        long yesCount = 0;
+        long noCount = 0;
+        List<String> countedIds = new ArrayList<>();
+
+        for (int i = 0; i < votes.size(); i++) {
+            if (uncounted[i]) {
+                Vote vote = votes.get(i);
+                countedIds.add(vote.getId());
+
+                if (vote.getVoteOption().equals(VoteOption.SIM)) {
+                    yesCount++;
+                } else {
+                    noCount++;
+                }
+            }
+        }
+
+        if (countedIds.isEmpty()) {
+            return outcomes;
+        }
+
+        Update tally = new Update().inc("yesCount", yesCount).inc("noCount", noCount);
+        UpdateResult result = mongoTemplate.updateFirst(session, tally, Session.class);
+
+        if (result.getMatchedCount() == 0) {
+            reject(countedIds, outcomes, uncounted);
+            return outcomes;
+        }
+
+        if (mongoTemplate.updateFirst(openedAgenda(agendaId), tally, Agenda.class).getMatchedCount() == 0) {
+            Update undo = new Update().inc("yesCount", -yesCount).inc("noCount", -noCount);
+            mongoTemplate.updateFirst(query(where("id").is(votes.get(0).getSessionId())), undo, Session.class);
+            reject(countedIds, outcomes, uncounted);
+            return outcomes;
+        }
+
+        try {
+            mongoTemplate.updateMulti(query(where("id").in(countedIds)), new Update().unset(COUNTED), Vote.class);
+        } catch (RuntimeException e) {
+            // The votes are counted, failing them now would only make a retry count them twice.
+            logger.warn("Failed to mark {} counted votes of agenda {}, a reconciliation settles them.", countedIds.size(), agendaId, e);
+        }
+
+        return outcomes;
+    }
+
+    /**
+     * A duplicate with the id of the vote itself is an earlier attempt to store it: still uncounted when that attempt
+     * failed before its tally updates, otherwise already accepted. Any other duplicate is a second vote of the member.
+     */
+    private void resolveDuplicates(List<Vote> votes, List<Integer> duplicates, List<VoteOutcome> outcomes, boolean[] uncounted) {
+        if (duplicates.isEmpty()) {
+            return;
+        }
+
+        List<String> ids = new ArrayList<>(duplicates.size());
+        duplicates.forEach(i -> ids.add(votes.get(i).getId()));
+
+        Query stored = query(where("_id").in(ids));
+        stored.fields().include(COUNTED);
+        Map<String, Boolean> counted = new HashMap<>();
+
+        for (Document vote : mongoTemplate.find(stored, Document.class, mongoTemplate.getCollectionName(Vote.class))) {
+            counted.put(vote.get("_id").toString(), !Boolean.FALSE.equals(vote.get(COUNTED)));
+        }
+
+        for (int i : duplicates) {
+            Boolean alreadyCounted = counted.get(votes.get(i).getId());
+
+            if (alreadyCounted == null) {
+                outcomes.set(i, VoteOutcome.DUPLICATE);
+                uncounted[i] = false;
+            } else if (alreadyCounted) {
+                uncounted[i] = false;
+            }
+        }
+    }
+
+    private void reject(List<String> ids, List<VoteOutcome> outcomes, boolean[] uncounted) {
+        mongoTemplate.remove(query(where("id").in(ids).and(COUNTED).is(false)), Vote.class);
+
+        for (int i = 0; i < outcomes.size(); i++) {
+            if (uncounted[i]) {
+                outcomes.set(i, VoteOutcome.CLOSED);
+            }
+        }
+    }
+
+    private Document uncounted(Vote vote) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(vote, document);
+        document.put(COUNTED, false);
+        return document;
+    }
+
+    private AggregationExpression countOf(VoteOption voteOption) {
+        return ConditionalOperators
+                .when(ComparisonOperators.valueOf("voteOption").equalToValue(voteOption.name()))
+                .then(1)
+                .otherwise(0);
+    }
+
+    private Query openedAgenda(String agendaId) {
+        return query(where("id").is(agendaId).and("status").is(AgendaStatus.OPENED));
+    }
+
+    private Query openedSession(String sessionId) {
+        return query(where("id").is(sessionId)
+                .and("status").is(SessionStatus.OPENED)
+                .and("endDate").gt(LocalDateTime.now()));
+    }
+}
@@ -0,0 +1,194 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Per-node read-through cache of agendas, enabled with {@code agenda_cache.enabled=true}.
+ * <p>
+ * Agendas only change status once, so this node invalidates its entry when it closes an agenda and a change stream
+ * on the agenda collection invalidates the entries changed by other nodes. Tally updates are filtered out of the
+ * stream, cached agendas are only good for status checks. While the change stream is down the cache is bypassed,
+ * and it starts empty again once the stream is reopened. Change streams need mongodb to run as a replica set.
+ * <p>
+ * Agendas are loaded outside of the cache's locks, concurrent misses of the same agenda wait on the first load.
+ */
+@Component
+public class AgendaCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgendaCache.class);
+
+    @Value("${agenda_cache.enabled}")
+    private boolean enabled;
+
+    @Value("${agenda_cache.maximum_size}")
+    private long maximumSize;
+
+    @Value("${agenda_cache.expire_after_write}")
+    private Duration expireAfterWrite;
+
+    @Value("${agenda_cache.retry_interval}")
+    private Duration retryInterval;
+
+    private AgendaRepository agendaRepository;
+    private MongoTemplate mongoTemplate;
+    private MeterRegistry meterRegistry;
+    private AsyncCache<String, Agenda> cache;
+    private Thread listener;
+    private volatile MongoCursor<ChangeStreamDocument<Document>> changes;
+    private volatile boolean coherent;
+    private volatile boolean running;
+
+    @Autowired
+    public AgendaCache(AgendaRepository agendaRepository, MongoTemplate mongoTemplate, MeterRegistry meterRegistry) {
+        this.agendaRepository = agendaRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "agenda");
+
+        running = true;
+        listener = new Thread(this::listenContinuously, "agenda-cache-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+
+        running = false;
+        listener.interrupt();
+
+        MongoCursor<ChangeStreamDocument<Document>> cursor = changes;
+
+        if (cursor != null) {
+            cursor.close();
+        }
+
+        listener.join();
+    }
+
+    public Optional<Agenda> findById(String agendaId) {
+        if (!enabled || !coherent) {
+            return agendaRepository.findById(agendaId);
+        }
+
+        CompletableFuture<Agenda> loading = new CompletableFuture<>();
+        CompletableFuture<Agenda> cached = cache.get(agendaId, (id, executor) -> loading);
+
+        if (cached == loading) {
+            try {
+                loading.complete(agendaRepository.findById(agendaId).orElse(null));
+            } catch (RuntimeException e) {
+                loading.completeExceptionally(e);
+            }
+        }
+
+        try {
+            return Optional.ofNullable(cached.join());
+        } catch (CompletionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    public void invalidate(String agendaId) {
+        if (enabled) {
+            cache.synchronous().invalidate(agendaId);
+        }
+    }
+
+    public boolean isCoherent() {
+        return coherent;
+    }
+
+    private void listenContinuously() {
+        String collection = mongoTemplate.getCollectionName(Agenda.class);
+
+        while (running) {
+            try (MongoCursor<ChangeStreamDocument<Document>> cursor = mongoTemplate
+                    .getCollection(collection)
+                    .watch(Collections.singletonList(Aggregates.match(Filters.or(
+                            Filters.in("operationType", Arrays.asList("replace", "delete", "invalidate", "drop")),
+                            Filters.exists("updateDescription.updatedFields.status")))))
+                    .iterator()) {
+                changes = cursor;
+                cache.synchronous().invalidateAll();
+                coherent = true;
+                logger.info("Agenda cache is listening to agenda changes.");
+
+                while (running && cursor.hasNext()) {
+                    invalidate(cursor.next());
+                }
+            } catch (RuntimeException e) {
+                if (running) {
+                    logger.warn("Agenda change stream failed, bypassing the agenda cache until it is reopened.", e);
+                }
+            } finally {
+                coherent = false;
+                changes = null;
+                cache.synchronous().invalidateAll();
+            }
+
+            if (!running) {
+                return;
+            }
+
+            try {
+                Thread.sleep(retryInterval.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void invalidate(ChangeStreamDocument<Document> change) {
+        if (change.getDocumentKey() == null) {
+            cache.synchronous().invalidateAll();
+            return;
+        }
+
+        BsonValue id = change.getDocumentKey().get("_id");
+        cache.synchronous().invalidate(id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue());
+    }
+}
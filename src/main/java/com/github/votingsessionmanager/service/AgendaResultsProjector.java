@@ -0,0 +1,390 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaResult;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoServerException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the agenda_results collection, the results of every agenda for reporting, up to date from a change stream on
+ * the agenda collection. Enabled with {@code agenda_results.enabled=true}, change streams need mongodb to run as a
+ * replica set.
+ * <p>
+ * Agendas carry the tally of their votes, so every stored vote shows up in the stream as an update of the agenda
+ * counters. Only the leader of the {@code agenda-results} job projects. It reads the changes that arrive within
+ * {@code max_await_time}, up to {@code batch_size}, merges the ones of the same agenda and applies them as one bulk
+ * write, then stores the resume token of the stream in the checkpoint collection. After a restart or a failover the
+ * leader resumes from the stored token. Without one, or when the oplog no longer holds it, agenda_results is rebuilt
+ * from the agendas first. Changes are applied as the values they set, so the same leader replaying some of them twice
+ * is harmless. A rebuild stamps the results it writes with its own {@code rebuild} id and then deletes the unstamped
+ * ones, the results of agendas deleted while the stream could not be followed.
+ * <p>
+ * A former leader that was paused past its lease may still be projecting when the next one starts, so every result
+ * and the checkpoint carry the lease {@code token} they were written under and are only written over by the same or a
+ * newer token. The writes of the former leader then fail as duplicate keys and it stops projecting.
+ */
+@Component
+public class AgendaResultsProjector {
+
+    static final String JOB = "agenda-results";
+    static final String CHECKPOINT_COLLECTION = "checkpoint";
+    static final String REBUILD = "rebuild";
+    static final String TOKEN = "token";
+
+    private static final Logger logger = LoggerFactory.getLogger(AgendaResultsProjector.class);
+    private static final List<String> FIELDS = Arrays.asList("description", "result", "status", "yesCount", "noCount");
+    private static final List<Integer> HISTORY_LOST_ERRORS = Arrays.asList(280, 286);
+
+    @Value("${agenda_results.enabled}")
+    private boolean enabled;
+
+    @Value("${agenda_results.batch_size}")
+    private int batchSize;
+
+    @Value("${agenda_results.max_await_time}")
+    private Duration maxAwaitTime;
+
+    @Value("${agenda_results.retry_interval}")
+    private Duration retryInterval;
+
+    private MongoTemplate mongoTemplate;
+    private LeaderElection leaderElection;
+    private LeaderElection.Leadership leadership;
+    private Thread projector;
+    private volatile MongoCursor<ChangeStreamDocument<Document>> changes;
+    private volatile boolean rebuildRequested;
+    private volatile boolean running;
+
+    @Autowired
+    public AgendaResultsProjector(MongoTemplate mongoTemplate, LeaderElection leaderElection) {
+        this.mongoTemplate = mongoTemplate;
+        this.leaderElection = leaderElection;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        leadership = leaderElection.join(JOB);
+        running = true;
+        projector = new Thread(this::projectContinuously, "agenda-results-projector");
+        projector.setDaemon(true);
+        projector.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+
+        running = false;
+        projector.interrupt();
+
+        MongoCursor<ChangeStreamDocument<Document>> cursor = changes;
+
+        if (cursor != null) {
+            cursor.close();
+        }
+
+        projector.join();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private void projectContinuously() {
+        while (running) {
+            if (leadership.isLeader()) {
+                try {
+                    project();
+                } catch (RuntimeException e) {
+                    if (e instanceof MongoServerException && HISTORY_LOST_ERRORS.contains(((MongoServerException) e).getCode())) {
+                        logger.warn("The stored resume token of the agenda results is no longer in the oplog, rebuilding them.", e);
+                        rebuildRequested = true;
+                    } else if (running) {
+                        logger.warn("Projecting the agenda results failed, retrying in {}.", retryInterval, e);
+                    }
+                }
+            }
+
+            if (!running) {
+                return;
+            }
+
+            try {
+                Thread.sleep(retryInterval.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Projects the changes until this node stops leading the job, the stream fails or is invalidated.
+     */
+    private void project() {
+        long token = leadership.getToken();
+
+        try {
+            project(token);
+        } catch (MongoBulkWriteException e) {
+            if (!e.getWriteErrors().stream().allMatch(error -> ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY)) {
+                throw e;
+            }
+
+            logger.warn("A newer leader of {} wrote the agenda results, stopping projecting with token {}.", JOB, token);
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+
+            logger.warn("A newer leader of {} moved the checkpoint, stopping projecting with token {}.", JOB, token);
+        }
+    }
+
+    private void project(long token) {
+        BsonDocument resumeToken = rebuildRequested ? null : loadResumeToken();
+        ChangeStreamIterable<Document> stream = collection(Agenda.class)
+                .watch(Collections.singletonList(Aggregates.match(Filters.or(
+                        Filters.in("operationType", Arrays.asList("insert", "replace", "delete", "invalidate", "drop")),
+                        Filters.or(FIELDS.stream().map(f -> Filters.exists("updateDescription.updatedFields." + f)).collect(Collectors.toList())),
+                        Filters.in("updateDescription.removedFields", FIELDS)))))
+                .maxAwaitTime(maxAwaitTime.toMillis(), TimeUnit.MILLISECONDS);
+
+        if (resumeToken != null) {
+            stream = stream.resumeAfter(resumeToken);
+        }
+
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+            changes = cursor;
+
+            if (resumeToken == null) {
+                rebuild(token);
+                rebuildRequested = false;
+                resumeToken = saveResumeToken(null, cursor.getResumeToken(), token);
+            }
+
+            logger.info("Projecting agenda results from the agenda change stream.");
+
+            while (running && leadership.isLeader()) {
+                List<ChangeStreamDocument<Document>> batch = new ArrayList<>();
+                ChangeStreamDocument<Document> change;
+
+                while (batch.size() < batchSize && (change = cursor.tryNext()) != null) {
+                    batch.add(change);
+                }
+
+                if (!apply(batch, token)) {
+                    logger.warn("The agenda change stream was invalidated, rebuilding the agenda results.");
+                    rebuildRequested = true;
+                    return;
+                }
+
+                resumeToken = saveResumeToken(resumeToken, cursor.getResumeToken(), token);
+            }
+        } finally {
+            changes = null;
+        }
+    }
+
+    /**
+     * Writes the changes, the last change of each field of an agenda wins. Returns false, writing nothing, when the
+     * stream was invalidated.
+     */
+    private boolean apply(List<ChangeStreamDocument<Document>> batch, long token) {
+        Map<BsonValue, Change> merged = new LinkedHashMap<>();
+
+        for (ChangeStreamDocument<Document> change : batch) {
+            BsonValue id = change.getDocumentKey() == null ? null : change.getDocumentKey().get("_id");
+
+            switch (change.getOperationType()) {
+                case INSERT:
+                case REPLACE:
+                    merged.put(id, Change.of(change.getFullDocument()));
+                    break;
+                case UPDATE:
+                    merged.computeIfAbsent(id, key -> new Change()).merge(change.getUpdateDescription());
+                    break;
+                case DELETE:
+                    merged.put(id, null);
+                    break;
+                default:
+                    return false;
+            }
+        }
+
+        List<WriteModel<Document>> writes = new ArrayList<>();
+
+        merged.forEach((id, change) -> {
+            if (change == null) {
+                writes.add(new DeleteOneModel<>(fenced(Filters.eq("_id", id), token)));
+            } else if (!change.isEmpty()) {
+                writes.add(new UpdateOneModel<>(fenced(Filters.eq("_id", id), token), change.toUpdate(token), new UpdateOptions().upsert(true)));
+            }
+        });
+
+        if (!writes.isEmpty()) {
+            collection(AgendaResult.class).bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        }
+
+        return true;
+    }
+
+    private void rebuild(long token) {
+        logger.info("Rebuilding the agenda results from the agendas.");
+        ObjectId rebuild = ObjectId.get();
+        List<WriteModel<Document>> writes = new ArrayList<>();
+
+        try (MongoCursor<Document> agendas = collection(Agenda.class).find().projection(Projections.include(FIELDS)).batchSize(batchSize).iterator()) {
+            while (agendas.hasNext()) {
+                Document agenda = agendas.next().append(REBUILD, rebuild).append(TOKEN, token);
+                writes.add(new ReplaceOneModel<>(fenced(Filters.eq("_id", agenda.get("_id")), token), agenda, new ReplaceOptions().upsert(true)));
+
+                if (writes.size() == batchSize) {
+                    collection(AgendaResult.class).bulkWrite(writes, new BulkWriteOptions().ordered(false));
+                    writes.clear();
+                }
+            }
+        }
+
+        if (!writes.isEmpty()) {
+            collection(AgendaResult.class).bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        }
+
+        DeleteResult orphans = collection(AgendaResult.class).deleteMany(fenced(Filters.ne(REBUILD, rebuild), token));
+
+        if (orphans.getDeletedCount() > 0) {
+            logger.info("Deleted the results of {} agendas that no longer exist.", orphans.getDeletedCount());
+        }
+    }
+
+    private BsonDocument loadResumeToken() {
+        BsonDocument checkpoint = checkpoints().find(Filters.eq("_id", JOB)).first();
+        return checkpoint == null ? null : checkpoint.getDocument("resumeToken");
+    }
+
+    private BsonDocument saveResumeToken(BsonDocument saved, BsonDocument resumeToken, long token) {
+        if (resumeToken == null || resumeToken.equals(saved)) {
+            return saved;
+        }
+
+        checkpoints().replaceOne(
+                fenced(Filters.eq("_id", JOB), token),
+                new BsonDocument("_id", new BsonString(JOB)).append("resumeToken", resumeToken).append(TOKEN, new BsonInt64(token)),
+                new ReplaceOptions().upsert(true));
+        return resumeToken;
+    }
+
+    /**
+     * Matches the document only while it was last written under the lease token or an older one. An upsert that
+     * misses because a newer leader wrote the document fails on its id.
+     */
+    private static Bson fenced(Bson filter, long token) {
+        return Filters.and(filter, Filters.or(Filters.exists(TOKEN, false), Filters.lte(TOKEN, token)));
+    }
+
+    private MongoCollection<Document> collection(Class<?> entityClass) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(entityClass));
+    }
+
+    private MongoCollection<BsonDocument> checkpoints() {
+        return mongoTemplate.getCollection(CHECKPOINT_COLLECTION).withDocumentClass(BsonDocument.class);
+    }
+
+    /**
+     * The fields an agenda change sets and removes on its result.
+     */
+    private static class Change {
+        private final Document set = new Document();
+        private final Document unset = new Document();
+
+        private static Change of(Document agenda) {
+            Change change = new Change();
+
+            for (String field : FIELDS) {
+                if (agenda.containsKey(field)) {
+                    change.set.put(field, agenda.get(field));
+                } else {
+                    change.unset.put(field, "");
+                }
+            }
+
+            return change;
+        }
+
+        private void merge(UpdateDescription update) {
+            for (String field : FIELDS) {
+                if (update.getUpdatedFields() != null && update.getUpdatedFields().containsKey(field)) {
+                    set.put(field, update.getUpdatedFields().get(field));
+                    unset.remove(field);
+                } else if (update.getRemovedFields() != null && update.getRemovedFields().contains(field)) {
+                    set.remove(field);
+                    unset.put(field, "");
+                }
+            }
+        }
+
+        private boolean isEmpty() {
+            return set.isEmpty() && unset.isEmpty();
+        }
+
+        private Bson toUpdate(long token) {
+            Document update = new Document("$set", new Document(set).append(TOKEN, token));
+
+            if (!unset.isEmpty()) {
+                update.put("$unset", unset);
+            }
+
+            return update;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.votingsessionmanager.domain.AckLevel;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteReceipt;
+import com.github.votingsessionmanager.exception.IdempotencyKeyException;
+import com.github.votingsessionmanager.exception.InvalidVoteException;
+import com.github.votingsessionmanager.repository.VoteReceiptRepository;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the receipt of each vote registered with an {@code Idempotency-Key}, so a client retrying the request
+ * gets the original answer without validating the CPF or loading the session again.
+ * <p>
+ * Receipts are kept in memory for {@code ttl}, at most {@code maximum_size} of them. With {@code persistent=true} they
+ * are also stored in mongodb, where another node or this one after a restart finds them, and a TTL index deletes them
+ * once expired. Only registered votes get a receipt: a failed registration is passed through and its retry runs
+ * again. The receipt is only stored once the vote is, so a retry whose registration fails as the member having
+ * already voted looks for the vote itself, and answers with a new receipt when it's the same vote. Concurrent requests with the same key wait on the first one, outside of the cache's locks. Reusing a key for
+ * another vote fails with {@link IdempotencyKeyException}.
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyStore.class);
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @Value("${idempotency.maximum_size}")
+    private long maximumSize;
+
+    @Value("${idempotency.ttl}")
+    private Duration ttl;
+
+    @Value("${idempotency.persistent}")
+    private boolean persistent;
+
+    private VoteReceiptRepository voteReceiptRepository;
+    private VoteRepository voteRepository;
+    private Counter replays;
+    private AsyncCache<String, VoteReceipt> cache;
+
+    @Autowired
+    public IdempotencyStore(VoteReceiptRepository voteReceiptRepository, VoteRepository voteRepository, MeterRegistry meterRegistry) {
+        this.voteReceiptRepository = voteReceiptRepository;
+        this.voteRepository = voteRepository;
+        this.replays = Counter.builder("idempotency.replays")
+                .description("Votes answered with the receipt of an earlier request with the same idempotency key")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new UntilExpired())
+                .buildAsync();
+    }
+
+    /**
+     * Returns the receipt of the vote registered with the key, running the registration first when there's none.
+     */
+    public VoteReceipt register(String key, String agendaId, Vote vote, Supplier<AckLevel> registration) {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new IdempotencyKeyException("Idempotency key must have from 1 to " + MAX_KEY_LENGTH + " characters.");
+        }
+
+        CompletableFuture<VoteReceipt> loading = new CompletableFuture<>();
+        CompletableFuture<VoteReceipt> cached = cache.get(key, (k, executor) -> loading);
+
+        if (cached == loading) {
+            try {
+                loading.complete(load(key, agendaId, vote, registration));
+            } catch (RuntimeException | Error e) {
+                cache.asMap().remove(key, loading);
+                loading.completeExceptionally(e);
+            }
+        }
+
+        VoteReceipt receipt;
+
+        try {
+            receipt = cached.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw (RuntimeException) e.getCause();
+        }
+
+        if (!isSameVote(receipt, agendaId, vote)) {
+            throw new IdempotencyKeyException("Idempotency key was already used for another vote.");
+        }
+
+        if (cached != loading) {
+            replays.increment();
+        }
+
+        return receipt;
+    }
+
+    private VoteReceipt load(String key, String agendaId, Vote vote, Supplier<AckLevel> registration) {
+        Optional<VoteReceipt> stored = findStored(key);
+
+        if (stored.isPresent()) {
+            replays.increment();
+            return stored.get();
+        }
+
+        AckLevel ack;
+
+        try {
+            ack = registration.get();
+        } catch (RuntimeException e) {
+            // The vote may have been registered by a concurrent retry on another node, e.g. the member already voted.
+            stored = findStored(key);
+
+            if (stored.isPresent()) {
+                replays.increment();
+                return stored.get();
+            }
+
+            // Or by an earlier attempt whose receipt was lost, e.g. it failed to be stored or its node restarted.
+            Optional<Vote> registered = e instanceof InvalidVoteException ? findRegistered(agendaId, vote) : Optional.empty();
+
+            if (!registered.isPresent()) {
+                throw e;
+            }
+
+            replays.increment();
+            ack = AckLevel.PERSISTED;
+        }
+
+        VoteReceipt receipt = new VoteReceipt(key, agendaId, vote, ack, LocalDateTime.now().plus(ttl));
+
+        if (persistent) {
+            try {
+                voteReceiptRepository.save(receipt);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to store the receipt of idempotency key {}, only this node remembers it.", key, e);
+            }
+        }
+
+        return receipt;
+    }
+
+    private Optional<VoteReceipt> findStored(String key) {
+        if (!persistent) {
+            return Optional.empty();
+        }
+
+        return voteReceiptRepository.findById(key).filter(receipt -> receipt.getExpiresAt().isAfter(LocalDateTime.now()));
+    }
+
+    private Optional<Vote> findRegistered(String agendaId, Vote vote) {
+        if (vote.getMemberId() == null) {
+            return Optional.empty();
+        }
+
+        return voteRepository.findByAgendaIdAndMemberId(agendaId, vote.getMemberId()).filter(registered -> isSameVote(registered, vote));
+    }
+
+    private static boolean isSameVote(VoteReceipt receipt, String agendaId, Vote vote) {
+        return receipt.getAgendaId().equals(agendaId) && isSameVote(receipt.getVote(), vote);
+    }
+
+    private static boolean isSameVote(Vote registered, Vote vote) {
+        return Objects.equals(registered.getMemberId(), vote.getMemberId())
+                && Objects.equals(registered.getMemberCPF(), vote.getMemberCPF())
+                && Objects.equals(registered.getVoteOption(), vote.getVoteOption());
+    }
+
+    /**
+     * Keeps a receipt in memory until it expires, also when it was loaded from mongodb late in its life.
+     */
+    private static class UntilExpired implements Expiry<String, VoteReceipt> {
+        @Override
+        public long expireAfterCreate(String key, VoteReceipt receipt, long currentTime) {
+            return Math.max(0, Duration.between(LocalDateTime.now(), receipt.getExpiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VoteReceipt receipt, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, receipt, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VoteReceipt receipt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
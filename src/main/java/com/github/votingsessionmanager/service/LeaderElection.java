@@ -0,0 +1,164 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Lease;
+import com.github.votingsessionmanager.repository.LeaseRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elects one node of the cluster to run each background job, through a lease per job in the lease collection.
+ * <p>
+ * Every {@code heartbeat_interval} each node renews the leases it holds for another {@code lease_ttl} and tries to
+ * take the expired ones. A node that stops, releases its leases, one that crashes or loses mongodb lets them expire,
+ * either way another node takes over within {@code lease_ttl} plus a heartbeat. Each acquisition gets a new fencing
+ * token, renewing and releasing only succeed with the current one, so a node that lost its lease learns it on its next
+ * heartbeat.
+ * <p>
+ * Lease expiry is compared with the wall clock of the nodes, so a holder considers itself leader until a heartbeat
+ * before its lease expires, measured from when the renewal was sent. Clocks must not drift apart by more than
+ * {@code heartbeat_interval}. The {@code leader_election.leader} gauge is 1 on the node leading the job.
+ */
+@Component
+public class LeaderElection {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaderElection.class);
+
+    @Value("${leader_election.node_id}")
+    private String nodeId;
+
+    @Value("${leader_election.lease_ttl}")
+    private Duration leaseTtl;
+
+    @Value("${leader_election.heartbeat_interval}")
+    private Duration heartbeatInterval;
+
+    private LeaseRepository leaseRepository;
+    private MeterRegistry meterRegistry;
+    private Map<String, Leadership> leaderships = new ConcurrentHashMap<>();
+    private ScheduledExecutorService heartbeats;
+
+    /**
+     * Whether this node currently leads a job. Jobs check it before each round of work, with the token identifying the
+     * term of the leadership.
+     */
+    public static class Leadership {
+        private final String job;
+        private volatile long token;
+        private volatile long validUntil;
+
+        private Leadership(String job) {
+            this.job = job;
+        }
+
+        public boolean isLeader() {
+            return token != 0 && System.nanoTime() - validUntil < 0;
+        }
+
+        public long getToken() {
+            return token;
+        }
+    }
+
+    @Autowired
+    public LeaderElection(LeaseRepository leaseRepository, MeterRegistry meterRegistry) {
+        this.leaseRepository = leaseRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (nodeId == null || nodeId.isEmpty()) {
+            nodeId = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("leader-election-");
+        threadFactory.setDaemon(true);
+        heartbeats = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatInterval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        heartbeats.shutdownNow();
+        heartbeats.awaitTermination(5, TimeUnit.SECONDS);
+
+        for (Leadership leadership : leaderships.values()) {
+            long token = leadership.token;
+
+            if (token != 0) {
+                leadership.token = 0;
+
+                try {
+                    leaseRepository.release(leadership.job, nodeId, token);
+                    logger.info("Released leadership of {}.", leadership.job);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to release leadership of {}, it expires in {}.", leadership.job, leaseTtl, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Enters this node in the election of the job, it may become leader from the next heartbeat on.
+     */
+    public Leadership join(String job) {
+        return leaderships.computeIfAbsent(job, name -> {
+            Leadership leadership = new Leadership(name);
+            Gauge.builder("leader_election.leader", leadership, l -> l.isLeader() ? 1 : 0)
+                    .description("Whether this node leads the job")
+                    .tag("job", name)
+                    .register(meterRegistry);
+            return leadership;
+        });
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    void heartbeat() {
+        for (Leadership leadership : leaderships.values()) {
+            long sentAt = System.nanoTime();
+
+            try {
+                if (leadership.token != 0 && leaseRepository.renew(leadership.job, nodeId, leadership.token, leaseTtl)) {
+                    leadership.validUntil = sentAt + leaseTtl.minus(heartbeatInterval).toNanos();
+                    continue;
+                }
+
+                if (leadership.token != 0) {
+                    logger.warn("Lost leadership of {}, token {}.", leadership.job, leadership.token);
+                    leadership.token = 0;
+                }
+
+                Optional<Lease> lease = leaseRepository.acquire(leadership.job, nodeId, leaseTtl);
+
+                if (lease.isPresent()) {
+                    leadership.validUntil = sentAt + leaseTtl.minus(heartbeatInterval).toNanos();
+                    leadership.token = lease.get().getToken();
+                    logger.info("Took leadership of {} as {}, token {}.", leadership.job, nodeId, leadership.token);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Heartbeat of {} failed, the next one will retry.", leadership.job, e);
+            }
+        }
+    }
+}
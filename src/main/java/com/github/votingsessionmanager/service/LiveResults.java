@@ -0,0 +1,464 @@
+package com.github.votingsessionmanager.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import com.github.votingsessionmanager.domain.ResultSnapshotDTO;
+import com.github.votingsessionmanager.domain.TallyDeltaDTO;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.exception.IdNotFoundException;
+import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.github.votingsessionmanager.repository.SessionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fans out the live results of agendas to their subscribers, the Server-Sent Events streams of the agenda API.
+ * <p>
+ * Each watched agenda has one channel, loaded from the database when its first subscriber arrives. Votes accepted by
+ * this node are summed into the channel and pushed at most {@code max_rate} times a second as a single {@code tally}
+ * event, serialized once for all subscribers. A session opened or closed, or the agenda closed, reloads the channel
+ * and pushes a {@code status} event; closing the agenda also ends the streams. Every {@code resync_interval} the
+ * channel is reloaded and pushed as a {@code snapshot}, which also brings in the votes taken by other nodes. Votes on
+ * agendas nobody watches cost a map lookup.
+ * <p>
+ * Reloads run on a worker thread, outside of the channel's lock, so a slow database never holds up the other
+ * channels. Subscribers whose sends block, like a servlet {@code SseEmitter}, subscribe with
+ * {@link #subscribeAsync(String, Listener)}: their events are sent from a worker thread and one that falls
+ * {@code MAX_PENDING_EVENTS} behind is dropped, its stream ends once the pending events are sent. Workers are a pool of
+ * {@code executor.pool_size} threads with a queue of {@code executor.queue_capacity} tasks; each channel and each
+ * subscriber has at most one task queued at a time, a reload that doesn't fit is retried on the next update and a
+ * subscriber whose sends don't fit is dropped.
+ * <p>
+ * The deltas summed while a channel is reloaded are kept: the ones counted in the tally the reload read are taken off
+ * when the reloaded snapshot is applied, the later ones are pushed with the next update.
+ */
+@Component
+public class LiveResults {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveResults.class);
+    private static final int MAX_PENDING_EVENTS = 64;
+
+    @Value("${live_results.max_rate}")
+    private int maxRate;
+
+    @Value("${live_results.resync_interval}")
+    private Duration resyncInterval;
+
+    @Value("${live_results.timeout}")
+    private Duration timeout;
+
+    @Value("${live_results.executor.pool_size}")
+    private int executorPoolSize;
+
+    @Value("${live_results.executor.queue_capacity}")
+    private int executorQueueCapacity;
+
+    private AgendaRepository agendaRepository;
+    private SessionRepository sessionRepository;
+    private ObjectMapper objectMapper;
+    private Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private ScheduledExecutorService publisher;
+    private ExecutorService workers;
+
+    /**
+     * Receives the events of an agenda, named {@code snapshot}, {@code tally} or {@code status}, with their JSON data.
+     * A listener that throws is unsubscribed.
+     */
+    public interface Listener {
+        void onEvent(String name, String data) throws Exception;
+
+        void onComplete();
+    }
+
+    @Autowired
+    public LiveResults(AgendaRepository agendaRepository, SessionRepository sessionRepository, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.agendaRepository = agendaRepository;
+        this.sessionRepository = sessionRepository;
+        this.objectMapper = objectMapper;
+
+        Gauge.builder("live_results.channels", channels, Map::size)
+                .description("Agendas being watched")
+                .register(meterRegistry);
+        Gauge.builder("live_results.subscribers", channels, c -> c.values().stream().mapToInt(channel -> channel.listeners.size()).sum())
+                .description("Subscribers of the live results")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("live-results-");
+        threadFactory.setDaemon(true);
+        publisher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+        CustomizableThreadFactory workerThreadFactory = new CustomizableThreadFactory("live-results-worker-");
+        workerThreadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                executorPoolSize,
+                executorPoolSize,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(executorQueueCapacity),
+                workerThreadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        workers = executor;
+
+        long period = TimeUnit.SECONDS.toNanos(1) / maxRate;
+        publisher.scheduleAtFixedRate(this::publish, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        publisher.shutdownNow();
+        publisher.awaitTermination(5, TimeUnit.SECONDS);
+        channels.values().forEach(Channel::complete);
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sends the current results of the agenda to the listener, then its updates until the agenda is closed or the
+     * returned action is run. Fails with {@link IdNotFoundException} when the agenda doesn't exist.
+     */
+    public Runnable subscribe(String agendaId, Listener listener) {
+        while (true) {
+            Channel channel = channels.computeIfAbsent(agendaId, Channel::new);
+            LoadedResults loaded = null;
+
+            if (channel.snapshot == null) {
+                try {
+                    loaded = channel.load();
+                } catch (RuntimeException e) {
+                    synchronized (channel) {
+                        if (channel.snapshot == null) {
+                            channel.remove();
+                        }
+                    }
+
+                    throw e;
+                }
+            }
+
+            synchronized (channel) {
+                if (channel.removed) {
+                    continue;
+                }
+
+                if (channel.snapshot == null) {
+                    channel.loaded(loaded);
+                }
+
+                if (!channel.send(listener, "snapshot", channel.serialize(channel.snapshot))) {
+                    return () -> {};
+                }
+
+                if (channel.snapshot.getAgendaStatus().equals(AgendaStatus.CLOSED)) {
+                    listener.onComplete();
+                    return () -> {};
+                }
+
+                channel.listeners.add(listener);
+                return () -> channel.listeners.remove(listener);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #subscribe(String, Listener)} for listeners whose sends may block: the events are queued and
+     * sent from a worker thread, a listener that falls too far behind or fails to send is unsubscribed.
+     */
+    public Runnable subscribeAsync(String agendaId, Listener listener) {
+        return subscribe(agendaId, new AsyncListener(listener));
+    }
+
+    public void voteAccepted(String agendaId, VoteOption voteOption) {
+        Channel channel = channels.get(agendaId);
+
+        if (channel != null) {
+            (voteOption.equals(VoteOption.SIM) ? channel.yesDelta : channel.noDelta).increment();
+        }
+    }
+
+    /**
+     * A session of the agenda was opened or closed, or the agenda was closed.
+     */
+    public void statusChanged(String agendaId) {
+        Channel channel = channels.get(agendaId);
+
+        if (channel != null) {
+            channel.statusChanged = true;
+        }
+    }
+
+    /**
+     * How long a subscriber may stay connected before its stream is closed and the client reconnects.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    void publish() {
+        long now = System.nanoTime();
+
+        for (Channel channel : channels.values()) {
+            try {
+                String reload = channel.publish(now);
+
+                if (reload != null) {
+                    try {
+                        workers.execute(() -> channel.reload(reload));
+                    } catch (RejectedExecutionException e) {
+                        logger.warn("Live results workers are busy, reloading agenda {} on the next update.", channel.agendaId);
+                        channel.reloadFailed(reload);
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Publishing the live results of agenda {} failed, the next update will retry.", channel.agendaId, e);
+            }
+        }
+    }
+
+    private class Channel {
+        private final String agendaId;
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+        private final LongAdder yesDelta = new LongAdder();
+        private final LongAdder noDelta = new LongAdder();
+        private volatile boolean statusChanged;
+        private volatile ResultSnapshotDTO snapshot;
+        private long loadedAt;
+        private boolean reloading;
+        private boolean removed;
+
+        private Channel(String agendaId) {
+            this.agendaId = agendaId;
+        }
+
+        /**
+         * Pushes the votes summed since the previous update, or returns the name of the event to push once the
+         * channel is reloaded.
+         */
+        private synchronized String publish(long now) {
+            if (listeners.isEmpty()) {
+                remove();
+                return null;
+            }
+
+            if (reloading) {
+                return null;
+            }
+
+            if (statusChanged || now - loadedAt >= resyncInterval.toNanos()) {
+                String name = statusChanged ? "status" : "snapshot";
+                statusChanged = false;
+                reloading = true;
+                return name;
+            }
+
+            long yes = yesDelta.sumThenReset();
+            long no = noDelta.sumThenReset();
+
+            if (yes != 0 || no != 0) {
+                snapshot.setYesCount(snapshot.getYesCount() + yes);
+                snapshot.setNoCount(snapshot.getNoCount() + no);
+                broadcast("tally", new TallyDeltaDTO(agendaId, yes, no, snapshot.getYesCount(), snapshot.getNoCount()));
+            }
+
+            return null;
+        }
+
+        private void reload(String name) {
+            LoadedResults loaded;
+
+            try {
+                loaded = load();
+            } catch (RuntimeException e) {
+                logger.warn("Reloading the live results of agenda {} failed, the next update will retry.", agendaId, e);
+                reloadFailed(name);
+                return;
+            }
+
+            synchronized (this) {
+                reloading = false;
+                loaded(loaded);
+                broadcast(name, snapshot);
+
+                if (snapshot.getAgendaStatus().equals(AgendaStatus.CLOSED)) {
+                    complete();
+                }
+            }
+        }
+
+        private synchronized void reloadFailed(String name) {
+            statusChanged = statusChanged || name.equals("status");
+            reloading = false;
+        }
+
+        private LoadedResults load() {
+            Agenda agenda = agendaRepository.findById(agendaId).orElseThrow(IdNotFoundException::new);
+            // Votes are published once stored, so the ones published until the agenda was read are in its tally.
+            long yesCounted = yesDelta.sum();
+            long noCounted = noDelta.sum();
+            ResultSnapshotDTO snapshot = new ResultSnapshotDTO(agendaId, agenda.getStatus(), agenda.getYesCount(), agenda.getNoCount(), sessionRepository.findByAgendaId(agendaId));
+            return new LoadedResults(snapshot, yesCounted, noCounted);
+        }
+
+        /**
+         * Applies a snapshot, with the deltas published until it was read taken off. Deltas are only reset by
+         * {@link #publish(long)}, which doesn't run between a load and its snapshot being applied.
+         */
+        private void loaded(LoadedResults loaded) {
+            snapshot = loaded.snapshot;
+            loadedAt = System.nanoTime();
+            yesDelta.add(-loaded.yesCounted);
+            noDelta.add(-loaded.noCounted);
+        }
+
+        private void broadcast(String name, Object event) {
+            String data = serialize(event);
+
+            for (Listener listener : listeners) {
+                if (!send(listener, name, data)) {
+                    listeners.remove(listener);
+                }
+            }
+        }
+
+        private boolean send(Listener listener, String name, String data) {
+            try {
+                listener.onEvent(name, data);
+                return true;
+            } catch (Exception e) {
+                logger.debug("Dropping a live results subscriber of agenda {}.", agendaId, e);
+                return false;
+            }
+        }
+
+        private synchronized void complete() {
+            listeners.forEach(Listener::onComplete);
+            listeners.clear();
+            remove();
+        }
+
+        private void remove() {
+            removed = true;
+            channels.remove(agendaId, this);
+        }
+
+        private String serialize(Object event) {
+            try {
+                return objectMapper.writeValueAsString(event);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static class LoadedResults {
+        private final ResultSnapshotDTO snapshot;
+        private final long yesCounted;
+        private final long noCounted;
+
+        private LoadedResults(ResultSnapshotDTO snapshot, long yesCounted, long noCounted) {
+            this.snapshot = snapshot;
+            this.yesCounted = yesCounted;
+            this.noCounted = noCounted;
+        }
+    }
+
+    private class AsyncListener implements Listener {
+        private final Listener delegate;
+        private final Queue<String[]> pending = new ArrayBlockingQueue<>(MAX_PENDING_EVENTS);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean completed;
+        private volatile boolean closed;
+
+        private AsyncListener(Listener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onEvent(String name, String data) {
+            if (closed || completed) {
+                throw new IllegalStateException("Live results subscriber is closed.");
+            }
+
+            if (!pending.offer(new String[]{name, data})) {
+                // Ends the stream once the pending events are sent, the client reconnects to a fresh snapshot.
+                onComplete();
+                throw new IllegalStateException("Live results subscriber is too slow.");
+            }
+
+            drain();
+
+            if (closed) {
+                throw new IllegalStateException("Live results subscriber is closed.");
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            drain();
+        }
+
+        private void drain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this::send);
+                } catch (RejectedExecutionException e) {
+                    logger.debug("Dropping a live results subscriber, the workers are busy.", e);
+                    closed = true;
+                    delegate.onComplete();
+                }
+            }
+        }
+
+        private void send() {
+            do {
+                String[] event;
+
+                while (!closed && (event = pending.poll()) != null) {
+                    try {
+                        delegate.onEvent(event[0], event[1]);
+                    } catch (Exception e) {
+                        logger.debug("Dropping a live results subscriber.", e);
+                        closed = true;
+                    }
+                }
+
+                if (completed && !closed && pending.isEmpty()) {
+                    closed = true;
+                    delegate.onComplete();
+                }
+
+                draining.set(false);
+            } while (!closed && (!pending.isEmpty() || completed) && draining.compareAndSet(false, true));
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.*;
+import com.github.votingsessionmanager.exception.*;
+import com.github.votingsessionmanager.feign.ReactiveCPFValidator;
+import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.github.votingsessionmanager.repository.ReactiveAgendaRepository;
+import com.github.votingsessionmanager.repository.ReactiveSessionRepository;
+import com.github.votingsessionmanager.repository.ReactiveVoteRepository;
+import com.github.votingsessionmanager.repository.SessionRepository;
+import com.github.votingsessionmanager.service.VotingMetrics.Rejection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * {@link VotingService} for the reactive profile. Agendas, sessions and single votes go through the reactive
+ * repositories and the {@link ReactiveCPFValidator} without ever blocking a thread. Listings, exports, reconciliation
+ * and vote batches run on the blocking repositories and {@link VotingService} on the bounded elastic scheduler.
+ * Votes are always written directly, the write-behind buffer is only used by the blocking stack.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveVotingService {
+
+    private ReactiveAgendaRepository agendaRepository;
+    private ReactiveSessionRepository sessionRepository;
+    private ReactiveVoteRepository voteRepository;
+    private ReactiveCPFValidator cpfValidator;
+    private SessionExpiryScheduler sessionExpiryScheduler;
+    private VotingService votingService;
+    private AgendaRepository blockingAgendaRepository;
+    private SessionRepository blockingSessionRepository;
+    private VotingMetrics votingMetrics;
+    private LiveResults liveResults;
+    private IdempotencyStore idempotencyStore;
+
+    @Autowired
+    public ReactiveVotingService(ReactiveAgendaRepository agendaRepository, ReactiveSessionRepository sessionRepository, ReactiveVoteRepository voteRepository, ReactiveCPFValidator cpfValidator, SessionExpiryScheduler sessionExpiryScheduler, VotingService votingService, AgendaRepository blockingAgendaRepository, SessionRepository blockingSessionRepository, VotingMetrics votingMetrics, LiveResults liveResults, IdempotencyStore idempotencyStore) {
+        this.agendaRepository = agendaRepository;
+        this.sessionRepository = sessionRepository;
+        this.voteRepository = voteRepository;
+        this.cpfValidator = cpfValidator;
+        this.sessionExpiryScheduler = sessionExpiryScheduler;
+        this.votingService = votingService;
+        this.blockingAgendaRepository = blockingAgendaRepository;
+        this.blockingSessionRepository = blockingSessionRepository;
+        this.votingMetrics = votingMetrics;
+        this.liveResults = liveResults;
+        this.idempotencyStore = idempotencyStore;
+    }
+
+    public Mono<List<Agenda>> findAgendas(AgendaStatus status, LocalDateTime createdFrom, LocalDateTime createdTo, String after, int limit) {
+        return blocking(() -> votingService.findAgendas(status, createdFrom, createdTo, after, limit));
+    }
+
+    public Mono<List<AgendaResult>> findAgendaResults(AgendaStatus status, String after, int limit) {
+        return blocking(() -> votingService.findAgendaResults(status, after, limit));
+    }
+
+    public Flux<Agenda> streamAgendas(AgendaStatus status, LocalDateTime createdFrom, LocalDateTime createdTo) {
+        return blockingStream(() -> blockingAgendaRepository.stream(status, createdFrom, createdTo));
+    }
+
+    public Mono<Agenda> findAgendaById(String agendaId) {
+        if (agendaId == null || agendaId.isEmpty()) {
+            return Mono.error(new RequiredFieldException("Agenda Id is required."));
+        }
+
+        return agendaRepository
+                .findById(agendaId)
+                .switchIfEmpty(Mono.error(IdNotFoundException::new));
+    }
+
+    public Mono<Agenda> createAgenda(Agenda agenda) {
+        if(agenda.getDescription() == null || agenda.getDescription().isEmpty()) {
+            return Mono.error(new RequiredFieldException("Agenda description is required."));
+        }
+
+        agenda.setStatus(AgendaStatus.OPENED);
+        agenda.setYesCount(0);
+        agenda.setNoCount(0);
+        return agendaRepository.save(agenda);
+    }
+
+    public Mono<Agenda> closeAgenda(AgendaStatusDTO update, String agendaId) {
+        if(update.getAgendaStatus() == null || !update.getAgendaStatus().equals(AgendaStatus.CLOSED)) {
+            return Mono.error(new AgendaStatusException("Invalid agenda status."));
+        }
+
+        return findAgendaById(agendaId)
+                .flatMap(this::validateAgenda)
+                .then(sessionRepository.closeOpenedSessions(agendaId))
+                .then(agendaRepository.closeAgenda(agendaId))
+                .switchIfEmpty(Mono.error(() -> new AgendaStatusException("Agenda is closed.")))
+                .flatMap(agenda -> {
+                    agenda.setResult(votingService.calculateResult(agenda));
+                    return agendaRepository.setResult(agendaId, agenda.getResult()).thenReturn(agenda);
+                })
+                .doOnNext(agenda -> liveResults.statusChanged(agendaId));
+    }
+
+    public Mono<TallyReconciliationDTO> reconcileTally(String agendaId) {
+        return blocking(() -> votingService.reconcileTally(agendaId));
+    }
+
+    public Mono<List<Session>> findSessions(SessionStatus status, LocalDateTime startFrom, LocalDateTime startTo, String after, int limit) {
+        return blocking(() -> votingService.findSessions(status, startFrom, startTo, after, limit));
+    }
+
+    public Flux<Session> streamSessions(SessionStatus status, LocalDateTime startFrom, LocalDateTime startTo) {
+        return blockingStream(() -> blockingSessionRepository.stream(status, startFrom, startTo)).map(votingService::showExpiredAsClosed);
+    }
+
+    public Mono<Session> findAndUpdateSessionById(String sessionId) {
+        return sessionRepository
+                .findById(sessionId)
+                .switchIfEmpty(Mono.error(IdNotFoundException::new))
+                .flatMap(session -> refreshSessions(Collections.singletonList(session), null).thenReturn(session));
+    }
+
+    public Mono<List<Session>> findAndUpdateSessionsByAgendaId(String agendaId) {
+        return sessionRepository
+                .findByAgendaId(agendaId)
+                .collectList()
+                .flatMap(sessions -> refreshSessions(sessions, null));
+    }
+
+    public Mono<List<Vote>> findSessionVotes(String sessionId, String after, int limit) {
+        return blocking(() -> votingService.findSessionVotes(sessionId, after, limit));
+    }
+
+    public Mono<Session> createSession(Session session) {
+        return findAgendaById(session.getAgendaId())
+                .flatMap(this::validateAgenda)
+                .flatMap(agenda -> sessionRepository.findSummariesByAgendaId(agenda.getId())
+                        .collectList()
+                        .flatMap(sessions -> refreshSessions(sessions, agenda)))
+                .flatMap(sessions -> {
+                    if (sessions.stream().anyMatch(s -> s.getStatus().equals(SessionStatus.OPENED))) {
+                        return Mono.error(new SessionStatusException("There's already an opened session for the given agenda."));
+                    }
+
+                    if (session.getDuration() == 0) {
+                        session.setDuration(1);
+                    }
+
+                    session.setStartDate(LocalDateTime.now());
+                    session.setEndDate(session.getStartDate().plusMinutes(session.getDuration()));
+                    session.setStatus(SessionStatus.OPENED);
+                    session.setYesCount(0);
+                    session.setNoCount(0);
+
+                    return sessionRepository.save(session);
+                })
+                .doOnNext(created -> {
+                    sessionExpiryScheduler.schedule(created);
+                    liveResults.statusChanged(created.getAgendaId());
+                });
+    }
+
+    /**
+     * The CPF validation runs while the agenda and its opened session are looked up, as on the blocking stack.
+     */
+    public Mono<Vote> registerVote(Vote vote, String agendaId) {
+        return Mono.defer(() -> {
+            validateVote(vote);
+
+            Mono<CPFStatusDTO> eligibility = Mono.fromFuture(cpfValidator.validateCPF(vote.getMemberCPF()).toFuture());
+
+            return findAgendaById(agendaId)
+                    .flatMap(this::validateAgenda)
+                    .flatMap(this::findOpenedSession)
+                    .doOnError(e -> e instanceof AgendaStatusException || e instanceof SessionStatusException, e -> votingMetrics.countRejection(Rejection.CLOSED_SESSION))
+                    .flatMap(session -> eligibility
+                            .onErrorMap(WebClientResponseException.NotFound.class, e -> {
+                                votingMetrics.countRejection(Rejection.INVALID_CPF);
+                                return new InvalidVoteException("Invalid CPF.");
+                            })
+                            .flatMap(status -> {
+                                if (VoterStatus.UNABLE_TO_VOTE.equals(status.getStatus())) {
+                                    votingMetrics.countRejection(Rejection.INELIGIBLE);
+                                    return Mono.error(new InvalidVoteException("Member is unable to vote."));
+                                }
+
+                                vote.setId(null);
+                                vote.setAgendaId(agendaId);
+                                vote.setSessionId(session.getId());
+
+                                return voteRepository.insertIntoOpenedSession(vote);
+                            }))
+                    .flatMap(outcome -> {
+                        if (outcome.equals(VoteOutcome.DUPLICATE)) {
+                            votingMetrics.countRejection(Rejection.DUPLICATE);
+                            return Mono.error(new InvalidVoteException("Member already voted."));
+                        }
+
+                        if (outcome.equals(VoteOutcome.CLOSED)) {
+                            votingMetrics.countRejection(Rejection.CLOSED_SESSION);
+                            return Mono.error(new SessionStatusException("There's no opened session for the given agenda."));
+                        }
+
+                        liveResults.voteAccepted(agendaId, vote.getVoteOption());
+                        return Mono.just(vote);
+                    });
+        });
+    }
+
+    /**
+     * {@link #registerVote(Vote, String)} with its receipt kept by the {@link IdempotencyStore}. Runs on the bounded
+     * elastic scheduler, as a retry may wait for the first request with the same key.
+     */
+    public Mono<Vote> registerVote(Vote vote, String agendaId, String idempotencyKey) {
+        return blocking(() -> idempotencyStore.register(idempotencyKey, agendaId, vote, () -> {
+            registerVote(vote, agendaId).block();
+            return AckLevel.PERSISTED;
+        }).getVote());
+    }
+
+    public Mono<List<VoteResultDTO>> registerVotes(List<Vote> votes, String agendaId) {
+        return blocking(() -> votingService.registerVotes(votes, agendaId));
+    }
+
+    private Mono<Session> findOpenedSession(Agenda agenda) {
+        return sessionRepository
+                .findSummariesByAgendaId(agenda.getId())
+                .collectList()
+                .flatMap(sessions -> refreshSessions(sessions, agenda))
+                .flatMap(sessions -> Mono.justOrEmpty(sessions.stream()
+                        .filter(Objects::nonNull)
+                        .filter(s -> s.getStatus().equals(SessionStatus.OPENED))
+                        .findAny()))
+                .switchIfEmpty(Mono.error(() -> new SessionStatusException("There's no opened session for the given agenda.")));
+    }
+
+    private Mono<Agenda> validateAgenda(Agenda agenda) {
+        if (agenda.getStatus().equals(AgendaStatus.CLOSED)) {
+            return Mono.error(new AgendaStatusException("Agenda is closed."));
+        }
+
+        return Mono.just(agenda);
+    }
+
+    /**
+     * Reactive version of the session refresh of {@link VotingService}: expired sessions are reported as closed and
+     * the opened sessions of a closed agenda are closed.
+     */
+    private Mono<List<Session>> refreshSessions(List<Session> sessions, Agenda agenda) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Session> opened = new ArrayList<>();
+
+        for (Session session : sessions) {
+            if (session == null || !session.getStatus().equals(SessionStatus.OPENED)) {
+                continue;
+            }
+
+            if (session.getEndDate().isBefore(now)) {
+                session.setStatus(SessionStatus.CLOSED);
+            } else {
+                opened.add(session);
+            }
+        }
+
+        if (opened.isEmpty()) {
+            return Mono.just(sessions);
+        }
+
+        Mono<Agenda> owner = agenda == null ? findAgendaById(opened.get(0).getAgendaId()) : Mono.just(agenda);
+
+        return owner.flatMap(found -> {
+            if (!found.getStatus().equals(AgendaStatus.CLOSED)) {
+                return Mono.just(sessions);
+            }
+
+            opened.forEach(session -> session.setStatus(SessionStatus.CLOSED));
+            return sessionRepository.closeOpenedSessions(found.getId()).thenReturn(sessions);
+        });
+    }
+
+    private void validateVote(Vote vote) {
+        if(vote.getVoteOption() == null) {
+            throw new RequiredFieldException("Vote option is required.");
+        }
+
+        if(!vote.getVoteOption().equals(VoteOption.SIM) && !vote.getVoteOption().equals(VoteOption.NAO)) {
+            throw new InvalidVoteException("Vote option must be SIM or NAO.");
+        }
+
+        if(vote.getMemberId() == null || vote.getMemberId().isEmpty()) {
+            throw new RequiredFieldException("Member ID is required.");
+        }
+
+        if(vote.getMemberCPF() == null || vote.getMemberCPF().isEmpty()) {
+            throw new RequiredFieldException("Member CPF is required.");
+        }
+    }
+
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static <T> Flux<T> blockingStream(Supplier<CloseableIterator<T>> stream) {
+        return Flux
+                .using(stream::get, iterator -> Flux.fromIterable(() -> iterator), CloseableIterator::close)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
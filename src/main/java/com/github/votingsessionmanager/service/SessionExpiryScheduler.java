@@ -0,0 +1,207 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.github.votingsessionmanager.repository.SessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Closes sessions when they expire, so reading a session never has to write it.
+ * <p>
+ * Each node closes the sessions it created, scheduled as they are created. Sessions expiring together are closed with
+ * a single update. The node elected by {@link LeaderElection} for the {@code session-expiry} job also loads the
+ * sessions opened before it took over, and every {@code sweep_interval} sweeps whatever is left expired, such as
+ * sessions created by nodes that crashed before closing them. Those are dropped again when it loses the leadership.
+ * A batch that fails to close is scheduled again, after {@code RETRY_INTERVAL} doubled on each failure up to
+ * {@code sweep_interval}.
+ */
+@Component
+public class SessionExpiryScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionExpiryScheduler.class);
+    private static final String JOB = "session-expiry";
+    private static final long LEADERSHIP_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final Duration RETRY_INTERVAL = Duration.ofSeconds(1);
+
+    @Value("${session_expiry.batch_size}")
+    private int batchSize;
+
+    @Value("${session_expiry.sweep_interval}")
+    private Duration sweepInterval;
+
+    private SessionRepository sessionRepository;
+    private LiveResults liveResults;
+    private LeaderElection leaderElection;
+    private LeaderElection.Leadership leadership;
+    private DelayQueue<ExpiringSession> queue = new DelayQueue<>();
+    private Thread worker;
+    private volatile boolean running;
+    private boolean leading;
+    private boolean loaded;
+
+    @Autowired
+    public SessionExpiryScheduler(SessionRepository sessionRepository, LiveResults liveResults, LeaderElection leaderElection) {
+        this.sessionRepository = sessionRepository;
+        this.liveResults = liveResults;
+        this.leaderElection = leaderElection;
+    }
+
+    @PostConstruct
+    public void start() {
+        leadership = leaderElection.join(JOB);
+        running = true;
+        worker = new Thread(this::expireContinuously, "session-expiry");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join();
+    }
+
+    public void schedule(Session session) {
+        schedule(session, true);
+    }
+
+    public int getScheduledCount() {
+        return queue.size();
+    }
+
+    private void expireContinuously() {
+        long nextSweep = System.nanoTime();
+
+        while (running) {
+            try {
+                if (leadership.isLeader() != leading) {
+                    leading = !leading;
+                    nextSweep = System.nanoTime();
+
+                    if (leading) {
+                        loaded = false;
+                    } else {
+                        queue.removeIf(session -> !session.created);
+                        logger.info("No longer leading {}, only closing the sessions created here.", JOB);
+                    }
+                }
+
+                if (leading && System.nanoTime() - nextSweep >= 0) {
+                    sweep();
+                    nextSweep = System.nanoTime() + sweepInterval.toNanos();
+                }
+
+                long wait = leading ? Math.min(nextSweep - System.nanoTime(), LEADERSHIP_CHECK_NANOS) : LEADERSHIP_CHECK_NANOS;
+                ExpiringSession first = queue.poll(wait, TimeUnit.NANOSECONDS);
+
+                if (first != null) {
+                    List<ExpiringSession> expired = new ArrayList<>();
+                    expired.add(first);
+                    queue.drainTo(expired, batchSize - 1);
+                    close(expired);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                if (running) {
+                    logger.warn("Session expiry failed, the next sweep will retry.", e);
+                }
+            }
+        }
+    }
+
+    private void sweep() {
+        long closed = sessionRepository.closeExpiredSessions(LocalDateTime.now());
+
+        if (closed > 0) {
+            logger.info("Sweep closed {} expired sessions.", closed);
+        }
+
+        if (!loaded) {
+            Set<String> scheduled = queue.stream().map(session -> session.sessionId).collect(Collectors.toSet());
+            List<Session> sessions = sessionRepository.findSummariesByStatus(SessionStatus.OPENED);
+            sessions.stream().filter(session -> !scheduled.contains(session.getId())).forEach(session -> schedule(session, false));
+            loaded = true;
+            logger.info("Scheduled expiry of {} opened sessions.", sessions.size());
+        }
+    }
+
+    private void schedule(Session session, boolean created) {
+        if (session.getStatus().equals(SessionStatus.OPENED)) {
+            queue.add(new ExpiringSession(session.getId(), session.getAgendaId(), session.getEndDate(), created));
+        }
+    }
+
+    private void close(List<ExpiringSession> expired) {
+        List<String> sessionIds = expired.stream().map(session -> session.sessionId).collect(Collectors.toList());
+
+        try {
+            sessionRepository.closeExpiredSessions(sessionIds, LocalDateTime.now());
+        } catch (RuntimeException e) {
+            List<ExpiringSession> retries = expired.stream().map(session -> session.retry(sweepInterval)).collect(Collectors.toList());
+            queue.addAll(retries);
+
+            if (running) {
+                logger.warn("Closing {} expired sessions failed, retrying in {}.", expired.size(), Duration.between(LocalDateTime.now(), retries.get(0).dueAt), e);
+            }
+
+            return;
+        }
+
+        expired.forEach(session -> liveResults.statusChanged(session.agendaId));
+    }
+
+    private static class ExpiringSession implements Delayed {
+        private final String sessionId;
+        private final String agendaId;
+        private final boolean created;
+        private final LocalDateTime dueAt;
+        private final int failures;
+
+        private ExpiringSession(String sessionId, String agendaId, LocalDateTime endDate, boolean created) {
+            this(sessionId, agendaId, created, endDate, 0);
+        }
+
+        private ExpiringSession(String sessionId, String agendaId, boolean created, LocalDateTime dueAt, int failures) {
+            this.sessionId = sessionId;
+            this.agendaId = agendaId;
+            this.created = created;
+            this.dueAt = dueAt;
+            this.failures = failures;
+        }
+
+        private ExpiringSession retry(Duration maxInterval) {
+            Duration interval = RETRY_INTERVAL.multipliedBy(1L << Math.min(failures, 16));
+            interval = interval.compareTo(maxInterval) > 0 ? maxInterval : interval;
+            return new ExpiringSession(sessionId, agendaId, created, LocalDateTime.now().plus(interval), failures + 1);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(LocalDateTime.now(), dueAt).toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return dueAt.compareTo(((ExpiringSession) other).dueAt);
+        }
+    }
+}
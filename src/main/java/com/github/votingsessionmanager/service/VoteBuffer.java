@@ -0,0 +1,412 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+import com.github.votingsessionmanager.exception.PendingVotesException;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for accepted votes, enabled with {@code vote_buffer.enabled=true}.
+ * <p>
+ * Votes wait in a bounded queue and a single flusher thread writes them in bulk, once {@code batch_size} votes are
+ * pending or {@code flush_interval} has passed. Duplicates are caught right away among the pending votes of an
+ * agenda, but a duplicate of a vote that is already stored is only found when flushing, so a BUFFERED
+ * acknowledgement means the vote was taken, not that it will count. Callers that need that wait on the returned
+ * future. The queue is drained before the application shuts down.
+ * <p>
+ * With the {@link VoteJournal} enabled, a vote is only queued after it is synced to the journal, so votes that were
+ * acknowledged but not flushed survive a crash.
+ * <p>
+ * Closing an agenda fences it: its pending votes are waited for, up to {@code drain_timeout}, and later votes are
+ * written directly until the agenda is closed. Votes still queued after {@code drain_timeout} are flushed by the
+ * closing request, which fails when votes of the agenda are still being flushed. Votes flushed after the agenda
+ * closed anyway are rejected by the agenda gate of the {@link VoteRepository}. {@code voting.vote_buffer.queue_depth} shows the pending votes,
+ * {@code voting.vote_buffer.flushes} times the flushes and {@code voting.vote_buffer.batch_size} counts the votes
+ * written per flush.
+ */
+@Component
+public class VoteBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteBuffer.class);
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    @Value("${vote_buffer.enabled}")
+    private boolean enabled;
+
+    @Value("${vote_buffer.capacity}")
+    private int capacity;
+
+    @Value("${vote_buffer.batch_size}")
+    private int batchSize;
+
+    @Value("${vote_buffer.flush_interval}")
+    private Duration flushInterval;
+
+    @Value("${vote_buffer.drain_timeout}")
+    private Duration drainTimeout;
+
+    private VoteRepository voteRepository;
+    private VoteJournal journal;
+    private BlockingQueue<PendingVote> queue;
+    // Only changed inside compute calls, an agenda has an entry while it has pending votes.
+    private Map<String, Set<String>> pendingKeys = new ConcurrentHashMap<>();
+    private Set<String> fencedAgendaIds = ConcurrentHashMap.newKeySet();
+    private Timer flushes;
+    private DistributionSummary batchSizes;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private final Lock flushLock = new ReentrantLock();
+    private final Condition flushed = flushLock.newCondition();
+
+    @Autowired
+    public VoteBuffer(VoteRepository voteRepository, VoteJournal journal, MeterRegistry meterRegistry) {
+        this.voteRepository = voteRepository;
+        this.journal = journal;
+        this.flushes = Timer.builder("voting.vote_buffer.flushes")
+                .description("Time spent writing a batch of buffered votes")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("voting.vote_buffer.batch_size")
+                .description("Buffered votes written per flush")
+                .register(meterRegistry);
+        Gauge.builder("voting.vote_buffer.queue_depth", this, buffer -> buffer.queue == null ? 0 : buffer.queue.size())
+                .description("Buffered votes waiting to be flushed")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(capacity);
+        running = true;
+        flusher = new Thread(this::flushContinuously, "vote-buffer-flusher");
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+
+        running = false;
+        flusher.join(drainTimeout.toMillis());
+
+        if (flusher.isAlive()) {
+            logger.error("Vote buffer not drained after {}, {} votes were not flushed.", drainTimeout, queue.size());
+            return;
+        }
+
+        logger.info("Vote buffer drained, {} votes flushed in {} batches.", (long) batchSizes.totalAmount(), flushes.count());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isJournaled() {
+        return enabled && journal.isEnabled();
+    }
+
+    /**
+     * Queues a vote whose agenda and session were already validated. Returns a future completed with the stored
+     * outcome once the vote is flushed, an already completed DUPLICATE future when the member has a pending vote on
+     * the agenda, or null when the buffer is full and the vote should be written directly.
+     */
+    public CompletableFuture<VoteOutcome> offer(Vote vote) {
+        if (!acquire(vote)) {
+            return CompletableFuture.completedFuture(VoteOutcome.DUPLICATE);
+        }
+
+        // Checked once the keys are taken: fence() comes before waiting for the keys, so a vote of a fenced agenda is
+        // either waited for or not buffered.
+        if (!running || fencedAgendaIds.contains(vote.getAgendaId()) || queue.remainingCapacity() == 0) {
+            release(vote);
+            return null;
+        }
+
+        PendingVote pending = new PendingVote(vote, LocalDateTime.now());
+
+        if (journal.isEnabled()) {
+            try {
+                pending.segment = journal.append(vote, pending.acceptedAt).join();
+            } catch (CompletionException e) {
+                logger.warn("Failed to journal vote of member {}, writing it directly.", vote.getMemberId(), e.getCause());
+                release(vote);
+                return null;
+            }
+        }
+
+        if (!queue.offer(pending)) {
+            if (pending.segment != null) {
+                journal.shipped(pending.segment);
+            }
+
+            release(vote);
+            return null;
+        }
+
+        return pending.outcome;
+    }
+
+    /**
+     * Stops buffering votes of the agenda, {@link #offer(Vote)} returns null for them from now on.
+     */
+    public void fence(String agendaId) {
+        fencedAgendaIds.add(agendaId);
+    }
+
+    /**
+     * Drops the fence of an agenda once it is closed: its votes no longer pass the validation, and those that still
+     * get buffered through a stale cache are rejected by the agenda gate when flushed.
+     */
+    public void unfence(String agendaId) {
+        fencedAgendaIds.remove(agendaId);
+    }
+
+    /**
+     * Waits up to {@code drain_timeout} for the pending votes of the agenda to be flushed, so they are counted before
+     * the agenda is closed. The votes of the agenda still queued after that are flushed by the caller, and a
+     * {@link PendingVotesException} is thrown when some are still being flushed by the flusher thread.
+     */
+    public void awaitAgendaFlushed(String agendaId) {
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+
+        flushLock.lock();
+
+        try {
+            while (pendingKeys.containsKey(agendaId)) {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0) {
+                    break;
+                }
+
+                flushed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PendingVotesException();
+        } finally {
+            flushLock.unlock();
+        }
+
+        if (!pendingKeys.containsKey(agendaId)) {
+            return;
+        }
+
+        logger.warn("Timed out waiting for the pending votes of agenda {} to be flushed, flushing them now.", agendaId);
+        List<PendingVote> queued = new ArrayList<>();
+
+        for (PendingVote pending : new ArrayList<>(queue)) {
+            // Only the votes taken out of the queue here, the flusher may have polled the others meanwhile.
+            if (pending.vote.getAgendaId().equals(agendaId) && queue.remove(pending)) {
+                queued.add(pending);
+            }
+        }
+
+        if (!queued.isEmpty()) {
+            try {
+                flush(queued);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PendingVotesException();
+            }
+        }
+
+        if (pendingKeys.containsKey(agendaId)) {
+            throw new PendingVotesException();
+        }
+    }
+
+    private void flushContinuously() {
+        while (running || !queue.isEmpty()) {
+            try {
+                List<PendingVote> batch = nextBatch();
+
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private List<PendingVote> nextBatch() throws InterruptedException {
+        List<PendingVote> batch = new ArrayList<>(batchSize);
+        PendingVote first = queue.poll(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+
+        if (first == null) {
+            return batch;
+        }
+
+        batch.add(first);
+        long deadline = System.nanoTime() + flushInterval.toNanos();
+
+        while (batch.size() < batchSize && running) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+
+            if (batch.size() >= batchSize || remaining <= 0) {
+                break;
+            }
+
+            PendingVote next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+            if (next == null) {
+                break;
+            }
+
+            batch.add(next);
+        }
+
+        queue.drainTo(batch, batchSize - batch.size());
+
+        return batch;
+    }
+
+    private void flush(List<PendingVote> batch) throws InterruptedException {
+        long start = System.nanoTime();
+        Map<String, List<PendingVote>> bySession = new LinkedHashMap<>();
+
+        for (PendingVote pending : batch) {
+            bySession.computeIfAbsent(pending.vote.getSessionId(), sessionId -> new ArrayList<>()).add(pending);
+        }
+
+        for (List<PendingVote> sessionVotes : bySession.values()) {
+            flushSession(sessionVotes);
+        }
+
+        flushes.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSizes.record(batch.size());
+
+        flushLock.lock();
+
+        try {
+            flushed.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushSession(List<PendingVote> sessionVotes) throws InterruptedException {
+        Vote first = sessionVotes.get(0).vote;
+        List<Vote> votes = new ArrayList<>(sessionVotes.size());
+        List<LocalDateTime> acceptedAts = new ArrayList<>(sessionVotes.size());
+
+        for (PendingVote pending : sessionVotes) {
+            votes.add(pending.vote);
+            acceptedAts.add(pending.acceptedAt);
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                List<VoteOutcome> outcomes = voteRepository.insertAllIntoSessionOpenedAt(first.getAgendaId(), first.getSessionId(), votes, acceptedAts);
+
+                for (int i = 0; i < sessionVotes.size(); i++) {
+                    PendingVote pending = sessionVotes.get(i);
+                    release(pending.vote);
+
+                    if (pending.segment != null) {
+                        journal.shipped(pending.segment);
+                    }
+
+                    pending.outcome.complete(outcomes.get(i));
+                }
+
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_FLUSH_ATTEMPTS) {
+                    logger.error("Giving up on {} buffered votes of session {} after {} failed flushes, journaled votes are replayed on the next startup.", votes.size(), first.getSessionId(), attempt, e);
+
+                    for (PendingVote pending : sessionVotes) {
+                        release(pending.vote);
+                        pending.outcome.completeExceptionally(e);
+                    }
+
+                    return;
+                }
+
+                logger.warn("Flush of session {} failed, retrying.", first.getSessionId(), e);
+                Thread.sleep(flushInterval.toMillis() * attempt);
+            }
+        }
+    }
+
+    /**
+     * Takes the member and CPF keys of the vote on its agenda, false when a pending vote already holds one of them.
+     */
+    private boolean acquire(Vote vote) {
+        String memberKey = "id:" + vote.getMemberId();
+        String cpfKey = "cpf:" + vote.getMemberCPF();
+        boolean[] acquired = new boolean[1];
+
+        pendingKeys.compute(vote.getAgendaId(), (agendaId, keys) -> {
+            Set<String> pending = keys == null ? new HashSet<>() : keys;
+            acquired[0] = !pending.contains(memberKey) && !pending.contains(cpfKey);
+
+            if (acquired[0]) {
+                pending.add(memberKey);
+                pending.add(cpfKey);
+            }
+
+            return pending.isEmpty() ? null : pending;
+        });
+
+        return acquired[0];
+    }
+
+    private void release(Vote vote) {
+        pendingKeys.computeIfPresent(vote.getAgendaId(), (agendaId, keys) -> {
+            keys.remove("id:" + vote.getMemberId());
+            keys.remove("cpf:" + vote.getMemberCPF());
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static class PendingVote {
+        private final Vote vote;
+        private final LocalDateTime acceptedAt;
+        private final CompletableFuture<VoteOutcome> outcome = new CompletableFuture<>();
+        private VoteJournal.Segment segment;
+
+        private PendingVote(Vote vote, LocalDateTime acceptedAt) {
+            this.vote = vote;
+            this.acceptedAt = acceptedAt;
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of buffered votes on local disk, enabled with {@code vote_buffer.journal.enabled=true}.
+ * <p>
+ * Each vote is appended to the current segment file and fsynced before it is acknowledged; appends that arrive
+ * while a sync is running are written and synced together. A failed write rolls over to a new segment, so a partly
+ * written record can only be the last one of its segment. A segment is deleted once it is rolled over and all of
+ * its votes were shipped to mongodb by the {@link VoteBuffer}. Segments left behind by a crash are replayed on
+ * startup under their original ids, each vote gated on its own accept time: votes that were already shipped come
+ * back as duplicates and are not counted twice, votes whose shipping failed halfway are counted.
+ * <p>
+ * Record layout: payload length (int), CRC32 of the payload (int), then the payload: accepted at in epoch millis
+ * (long), agenda id, session id, member id, member CPF, vote option and vote id as modified UTF-8 strings. Records
+ * written before the vote id was journaled end after the vote option. Replay stops at the first unreadable record,
+ * the segment is then kept as {@code .corrupt} next to the journal instead of being deleted.
+ */
+@Component
+public class VoteJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteJournal.class);
+    private static final String SEGMENT_PREFIX = "votes-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CORRUPT_SUFFIX = ".corrupt";
+    private static final int MAX_GROUP_SIZE = 1000;
+    private static final int REPLAY_BATCH_SIZE = 1000;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    @Value("${vote_buffer.journal.enabled}")
+    private boolean enabled;
+
+    @Value("${vote_buffer.journal.directory}")
+    private String directory;
+
+    @Value("${vote_buffer.journal.segment_size}")
+    private long segmentSize;
+
+    private VoteRepository voteRepository;
+    private BlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+    private Segment segment;
+    private long nextSegmentNumber;
+    private Thread writer;
+    private volatile boolean running;
+
+    @Autowired
+    public VoteJournal(VoteRepository voteRepository) {
+        this.voteRepository = voteRepository;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Path path = Paths.get(directory);
+        Files.createDirectories(path);
+
+        for (Path existing : segments(path)) {
+            nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber(existing) + 1);
+            replay(existing);
+        }
+
+        segment = openSegment();
+        running = true;
+        writer = new Thread(this::writeContinuously, "vote-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (!enabled) {
+            return;
+        }
+
+        running = false;
+        writer.join();
+
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends the vote and completes with its segment once the vote is synced to disk.
+     */
+    public CompletableFuture<Segment> append(Vote vote, LocalDateTime acceptedAt) {
+        Append append = new Append(encode(vote, acceptedAt));
+
+        if (!running) {
+            append.segment.completeExceptionally(new IllegalStateException("Vote journal is stopped."));
+            return append.segment;
+        }
+
+        appends.add(append);
+
+        return append.segment;
+    }
+
+    /**
+     * Marks one vote of the segment as shipped to mongodb, or otherwise no longer in need of replay.
+     */
+    public void shipped(Segment segment) {
+        segment.shipped();
+    }
+
+    private void writeContinuously() {
+        while (running || !appends.isEmpty()) {
+            List<Append> group = new ArrayList<>();
+
+            try {
+                Append first = appends.poll(100, TimeUnit.MILLISECONDS);
+
+                if (first == null) {
+                    continue;
+                }
+
+                group.add(first);
+                appends.drainTo(group, MAX_GROUP_SIZE - 1);
+                write(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                logger.error("Failed to append {} votes to the journal.", group.size(), e);
+                group.forEach(append -> append.segment.completeExceptionally(new UncheckedIOException(e)));
+                rollOverFailedSegment();
+            }
+        }
+    }
+
+    /**
+     * Closes the segment after a failed write, which may have left a partial record at its end, so later appends go
+     * to a new segment instead of following the partial record.
+     */
+    private void rollOverFailedSegment() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close journal segment {}.", segment.path, e);
+            }
+        }
+
+        try {
+            segment = openSegment();
+        } catch (IOException e) {
+            segment = null;
+            logger.error("Failed to open a new journal segment, retrying on the next append.", e);
+        }
+    }
+
+    private void write(List<Append> group) throws IOException {
+        if (segment == null) {
+            segment = openSegment();
+        }
+
+        int size = group.stream().mapToInt(append -> append.record.length).sum();
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        group.forEach(append -> buffer.put(append.record));
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            segment.channel.write(buffer);
+        }
+
+        segment.channel.force(false);
+        segment.appended(group.size());
+
+        Segment written = segment;
+
+        if (segment.channel.size() >= segmentSize) {
+            segment.close();
+            segment = openSegment();
+        }
+
+        group.forEach(append -> append.segment.complete(written));
+    }
+
+    private Segment openSegment() throws IOException {
+        Path path = Paths.get(directory, String.format("%s%020d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new Segment(path, channel);
+    }
+
+    private void replay(Path path) throws IOException {
+        List<Vote> votes = new ArrayList<>();
+        List<LocalDateTime> acceptedAts = new ArrayList<>();
+        boolean readable = true;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int length;
+                byte[] payload;
+                long checksum;
+
+                // The first byte tells a segment that ends after a whole record from one that ends within a record.
+                int first = input.read();
+
+                if (first < 0) {
+                    break;
+                }
+
+                try {
+                    length = first << 24 | input.readUnsignedByte() << 16 | input.readUnsignedShort();
+                    checksum = input.readInt() & 0xFFFFFFFFL;
+
+                    if (length < 0 || length > MAX_RECORD_SIZE) {
+                        readable = false;
+                        break;
+                    }
+
+                    payload = new byte[length];
+                    input.readFully(payload);
+                } catch (EOFException e) {
+                    readable = false;
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+
+                if (crc.getValue() != checksum) {
+                    readable = false;
+                    break;
+                }
+
+                decode(payload, votes, acceptedAts);
+            }
+        }
+
+        Map<VoteOutcome, Integer> outcomes;
+
+        try {
+            outcomes = ship(votes, acceptedAts);
+        } catch (RuntimeException e) {
+            logger.error("Failed to replay journal segment {}, it will be replayed on the next startup.", path, e);
+            return;
+        }
+
+        int settled = outcomes.getOrDefault(VoteOutcome.ACCEPTED, 0) + outcomes.getOrDefault(VoteOutcome.DUPLICATE, 0) + outcomes.getOrDefault(VoteOutcome.CLOSED, 0);
+
+        if (settled < votes.size()) {
+            logger.error("Replay of journal segment {} left votes without a final outcome ({}), it will be replayed on the next startup.", path, outcomes);
+            return;
+        }
+
+        if (outcomes.containsKey(VoteOutcome.CLOSED)) {
+            logger.warn("{} votes of journal segment {} were accepted after their session ended and are not counted.", outcomes.get(VoteOutcome.CLOSED), path);
+        }
+
+        if (!readable) {
+            Path corrupt = path.resolveSibling(path.getFileName() + CORRUPT_SUFFIX);
+            Files.move(path, corrupt);
+            logger.error("Journal segment {} has an unreadable record after {} votes, replayed them and moved the segment to {}.", path, votes.size(), corrupt);
+            return;
+        }
+
+        Files.delete(path);
+        logger.info("Replayed {} votes from journal segment {}: {}.", votes.size(), path, outcomes);
+    }
+
+    private Map<VoteOutcome, Integer> ship(List<Vote> votes, List<LocalDateTime> acceptedAts) {
+        Map<VoteOutcome, Integer> outcomes = new EnumMap<>(VoteOutcome.class);
+        Map<String, List<Integer>> bySession = new LinkedHashMap<>();
+
+        for (int i = 0; i < votes.size(); i++) {
+            bySession.computeIfAbsent(votes.get(i).getSessionId(), sessionId -> new ArrayList<>()).add(i);
+        }
+
+        for (List<Integer> indexes : bySession.values()) {
+            for (int from = 0; from < indexes.size(); from += REPLAY_BATCH_SIZE) {
+                List<Integer> batch = indexes.subList(from, Math.min(from + REPLAY_BATCH_SIZE, indexes.size()));
+                List<Vote> batchVotes = new ArrayList<>(batch.size());
+                List<LocalDateTime> batchAcceptedAts = new ArrayList<>(batch.size());
+
+                for (int i : batch) {
+                    batchVotes.add(votes.get(i));
+                    batchAcceptedAts.add(acceptedAts.get(i));
+                }
+
+                Vote first = batchVotes.get(0);
+                voteRepository.insertAllIntoSessionOpenedAt(first.getAgendaId(), first.getSessionId(), batchVotes, batchAcceptedAts)
+                        .forEach(outcome -> outcomes.merge(outcome, 1, Integer::sum));
+            }
+        }
+
+        return outcomes;
+    }
+
+    private byte[] encode(Vote vote, LocalDateTime acceptedAt) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+            DataOutputStream output = new DataOutputStream(payload);
+            output.writeLong(acceptedAt.toInstant(ZoneOffset.UTC).toEpochMilli());
+            output.writeUTF(vote.getAgendaId());
+            output.writeUTF(vote.getSessionId());
+            output.writeUTF(vote.getMemberId());
+            output.writeUTF(vote.getMemberCPF());
+            output.writeUTF(vote.getVoteOption().name());
+            output.writeUTF(vote.getId());
+
+            CRC32 crc = new CRC32();
+            crc.update(payload.toByteArray());
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream(payload.size() + 8);
+            DataOutputStream recordOutput = new DataOutputStream(record);
+            recordOutput.writeInt(payload.size());
+            recordOutput.writeInt((int) crc.getValue());
+            payload.writeTo(recordOutput);
+
+            return record.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void decode(byte[] payload, List<Vote> votes, List<LocalDateTime> acceptedAts) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        long acceptedAtMillis = input.readLong();
+
+        Vote vote = new Vote();
+        vote.setAgendaId(input.readUTF());
+        vote.setSessionId(input.readUTF());
+        vote.setMemberId(input.readUTF());
+        vote.setMemberCPF(input.readUTF());
+        vote.setVoteOption(VoteOption.valueOf(input.readUTF()));
+
+        if (input.available() > 0) {
+            vote.setId(input.readUTF());
+        }
+
+        votes.add(vote);
+        acceptedAts.add(LocalDateTime.ofEpochSecond(Math.floorDiv(acceptedAtMillis, 1000), (int) Math.floorMod(acceptedAtMillis, 1000) * 1_000_000, ZoneOffset.UTC));
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+
+        segments.sort(null);
+
+        return segments;
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static class Append {
+        private final byte[] record;
+        private final CompletableFuture<Segment> segment = new CompletableFuture<>();
+
+        private Append(byte[] record) {
+            this.record = record;
+        }
+    }
+
+    public static class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final Lock lock = new ReentrantLock();
+        private long appended;
+        private long shipped;
+        private boolean closed;
+
+        private Segment(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        private void appended(int count) {
+            lock.lock();
+
+            try {
+                appended += count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void shipped() {
+            lock.lock();
+
+            try {
+                shipped++;
+                deleteIfShipped();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void close() throws IOException {
+            lock.lock();
+
+            try {
+                channel.close();
+                closed = true;
+                deleteIfShipped();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void deleteIfShipped() {
+            if (!closed || shipped < appended) {
+                return;
+            }
+
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("Failed to delete shipped journal segment {}.", path, e);
+            }
+        }
+    }
+}
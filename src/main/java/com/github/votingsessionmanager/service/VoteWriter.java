@@ -0,0 +1,184 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes the votes taken directly, one writer at a time per agenda.
+ * <p>
+ * Agendas are spread over {@code vote_writer.stripes} locks, so votes on different agendas are written in parallel
+ * while the votes of an agenda are never stored concurrently on this node. Instead of each waiting its turn, votes
+ * queue on their stripe and whoever holds the lock stores every queued vote, up to {@code max_batch_size}, with one
+ * bulk insert and one tally update per session. The busier an agenda, the larger the batches. Correctness across
+ * nodes still rests on the unique vote indexes and the conditional session update of the {@link VoteRepository}.
+ * <p>
+ * {@code voting.vote_writer.lock_waits} times the writes that found their stripe busy and
+ * {@code voting.vote_writer.batch_size} counts the votes stored per write.
+ */
+@Component
+public class VoteWriter {
+
+    @Value("${vote_writer.stripes}")
+    private int stripes;
+
+    @Value("${vote_writer.max_batch_size}")
+    private int maxBatchSize;
+
+    private VoteRepository voteRepository;
+    private Timer lockWaits;
+    private DistributionSummary batchSizes;
+    private Stripe[] stripeLocks;
+
+    @Autowired
+    public VoteWriter(VoteRepository voteRepository, MeterRegistry meterRegistry) {
+        this.voteRepository = voteRepository;
+        this.lockWaits = Timer.builder("voting.vote_writer.lock_waits")
+                .description("Time spent waiting for the agenda's writer by votes that found it busy")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("voting.vote_writer.batch_size")
+                .description("Votes stored per write")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        stripeLocks = new Stripe[stripes];
+
+        for (int i = 0; i < stripes; i++) {
+            stripeLocks[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Stores a vote whose agenda and session were already validated, see
+     * {@link VoteRepository#insertIntoOpenedSession(Vote)}.
+     */
+    public VoteOutcome insert(Vote vote) {
+        Stripe stripe = stripeOf(vote.getAgendaId());
+        PendingVote pending = new PendingVote(vote);
+        stripe.queue.add(pending);
+
+        lock(stripe);
+
+        try {
+            // A previous holder may have stored the vote already, otherwise it is in the next batch taken.
+            while (!pending.done) {
+                writeQueued(stripe);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (pending.failure != null) {
+            throw pending.failure;
+        }
+
+        return pending.outcome;
+    }
+
+    /**
+     * Stores a batch of votes of one session, see {@link VoteRepository#insertAllIntoOpenedSession(String, String, List)}.
+     */
+    public List<VoteOutcome> insertAll(String agendaId, String sessionId, List<Vote> votes) {
+        Stripe stripe = stripeOf(agendaId);
+
+        lock(stripe);
+
+        try {
+            batchSizes.record(votes.size());
+            return voteRepository.insertAllIntoOpenedSession(agendaId, sessionId, votes);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private void writeQueued(Stripe stripe) {
+        Map<String, List<PendingVote>> sessions = new LinkedHashMap<>();
+
+        for (int i = 0; i < maxBatchSize; i++) {
+            PendingVote pending = stripe.queue.poll();
+
+            if (pending == null) {
+                break;
+            }
+
+            sessions.computeIfAbsent(pending.vote.getSessionId(), sessionId -> new ArrayList<>()).add(pending);
+        }
+
+        for (List<PendingVote> batch : sessions.values()) {
+            batchSizes.record(batch.size());
+
+            try {
+                if (batch.size() == 1) {
+                    batch.get(0).outcome = voteRepository.insertIntoOpenedSession(batch.get(0).vote);
+                } else {
+                    List<Vote> votes = new ArrayList<>(batch.size());
+                    batch.forEach(pending -> votes.add(pending.vote));
+
+                    Vote first = votes.get(0);
+                    List<VoteOutcome> outcomes = voteRepository.insertAllIntoOpenedSession(first.getAgendaId(), first.getSessionId(), votes);
+
+                    for (int i = 0; i < batch.size(); i++) {
+                        batch.get(i).outcome = outcomes.get(i);
+                    }
+                }
+            } catch (RuntimeException e) {
+                batch.forEach(pending -> pending.failure = e);
+            }
+
+            batch.forEach(pending -> pending.done = true);
+        }
+    }
+
+    private void lock(Stripe stripe) {
+        if (stripe.lock.tryLock()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        stripe.lock.lock();
+        lockWaits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Stripe stripeOf(String agendaId) {
+        int hash = agendaId.hashCode();
+        return stripeLocks[Math.floorMod(hash ^ (hash >>> 16), stripes)];
+    }
+
+    private static class Stripe {
+        private final Lock lock = new ReentrantLock();
+        private final Queue<PendingVote> queue = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Outcome fields are written and read under the stripe lock.
+     */
+    private static class PendingVote {
+        private final Vote vote;
+        private boolean done;
+        private VoteOutcome outcome;
+        private RuntimeException failure;
+
+        private PendingVote(Vote vote) {
+            this.vote = vote;
+        }
+    }
+}
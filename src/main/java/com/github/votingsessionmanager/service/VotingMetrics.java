@@ -0,0 +1,41 @@
+package com.github.votingsessionmanager.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Counts the votes rejected by the voting checks in {@code voting.votes.rejected}, tagged with the reason. Votes with
+ * missing or malformed fields never reach the checks and aren't counted.
+ */
+@Component
+public class VotingMetrics {
+
+    public enum Rejection {
+        DUPLICATE, CLOSED_SESSION, INELIGIBLE, INVALID_CPF
+    }
+
+    private final Map<Rejection, Counter> rejections = new EnumMap<>(Rejection.class);
+
+    @Autowired
+    public VotingMetrics(MeterRegistry meterRegistry) {
+        for (Rejection rejection : Rejection.values()) {
+            rejections.put(rejection, Counter.builder("voting.votes.rejected")
+                    .description("Votes rejected by the voting checks")
+                    .tag("reason", rejection.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    public void countRejection(Rejection rejection) {
+        countRejections(rejection, 1);
+    }
+
+    public void countRejections(Rejection rejection, int votes) {
+        rejections.get(rejection).increment(votes);
+    }
+}
@@ -1,40 +1,99 @@
 package com.github.votingsessionmanager.service;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.votingsessionmanager.domain.*;
 import com.github.votingsessionmanager.exception.*;
-import com.github.votingsessionmanager.feign.CPFValidator;
+import com.github.votingsessionmanager.feign.AsyncCPFValidator;
 import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.github.votingsessionmanager.repository.AgendaResultRepository;
 import com.github.votingsessionmanager.repository.SessionRepository;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import com.github.votingsessionmanager.service.VotingMetrics.Rejection;
 import feign.FeignException;
+import io.micrometer.core.annotation.Timed;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 @Service
 public class VotingService {
 
+    private static final Logger logger = LoggerFactory.getLogger(VotingService.class);
+    private static final int MAX_VOTE_BATCH_SIZE = 10000;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private AgendaRepository agendaRepository;
     private SessionRepository sessionRepository;
-    private CPFValidator cpfValidator;
+    private VoteRepository voteRepository;
+    private AgendaResultRepository agendaResultRepository;
+    private VoteWriter voteWriter;
+    private AsyncCPFValidator cpfValidator;
+    private VoteBuffer voteBuffer;
+    private SessionExpiryScheduler sessionExpiryScheduler;
+    private AgendaCache agendaCache;
+    private VotingMetrics votingMetrics;
+    private LiveResults liveResults;
+    private AgendaResultsProjector agendaResultsProjector;
 
     @Autowired
-    public VotingService(AgendaRepository agendaRepository, SessionRepository sessionRepository, CPFValidator cpfValidator) {
+    public VotingService(AgendaRepository agendaRepository, SessionRepository sessionRepository, VoteRepository voteRepository, AgendaResultRepository agendaResultRepository, VoteWriter voteWriter, AsyncCPFValidator cpfValidator, VoteBuffer voteBuffer, SessionExpiryScheduler sessionExpiryScheduler, AgendaCache agendaCache, VotingMetrics votingMetrics, LiveResults liveResults, AgendaResultsProjector agendaResultsProjector) {
         this.agendaRepository = agendaRepository;
         this.sessionRepository = sessionRepository;
+        this.voteRepository = voteRepository;
+        this.agendaResultRepository = agendaResultRepository;
+        this.voteWriter = voteWriter;
         this.cpfValidator = cpfValidator;
+        this.voteBuffer = voteBuffer;
+        this.sessionExpiryScheduler = sessionExpiryScheduler;
+        this.agendaCache = agendaCache;
+        this.votingMetrics = votingMetrics;
+        this.liveResults = liveResults;
+        this.agendaResultsProjector = agendaResultsProjector;
+    }
+
+    @Timed("voting.service")
+    public List<Agenda> findAgendas(AgendaStatus status, LocalDateTime createdFrom, LocalDateTime createdTo, String after, int limit) {
+        validatePageSize(limit);
+        return agendaRepository.findPage(status, createdFrom, createdTo, after, limit);
+    }
+
+    /**
+     * Reads the results projected by {@link AgendaResultsProjector}, which lag the agendas by up to a batch of changes.
+     * Fails with {@link AgendaResultsDisabledException} when the projector is disabled, the results would not be kept.
+     */
+    @Timed("voting.service")
+    public List<AgendaResult> findAgendaResults(AgendaStatus status, String after, int limit) {
+        if (!agendaResultsProjector.isEnabled()) {
+            throw new AgendaResultsDisabledException();
+        }
+
+        validatePageSize(limit);
+        return agendaResultRepository.findPage(status, after, limit);
     }
 
-    public List<Agenda> findAllAgendas() {
-        return agendaRepository.findAll();
+    @Timed("voting.service")
+    public void streamAgendas(AgendaStatus status, LocalDateTime createdFrom, LocalDateTime createdTo, Consumer<Agenda> consumer) {
+        try (CloseableIterator<Agenda> agendas = agendaRepository.stream(status, createdFrom, createdTo)) {
+            agendas.forEachRemaining(consumer);
+        }
     }
 
+    @Timed("voting.service")
     public Agenda findAgendaById(String agendaId) {
         if (agendaId == null || agendaId.isEmpty()) {
             throw new RequiredFieldException("Agenda Id is required.");
@@ -45,54 +104,174 @@ public class VotingService {
                 .orElseThrow(IdNotFoundException::new);
     }
 
+    @Timed("voting.service")
     public Agenda createAgenda(Agenda agenda) {
         if(agenda.getDescription() == null || agenda.getDescription().isEmpty()) {
             throw new RequiredFieldException("Agenda description is required.");
         }
 
         agenda.setStatus(AgendaStatus.OPENED);
+        agenda.setYesCount(0);
+        agenda.setNoCount(0);
         return agendaRepository.save(agenda);
     }
 
+    @Timed("voting.service")
     public Agenda closeAgenda(AgendaStatusDTO update, String agendaId) {
         if(update.getAgendaStatus() == null || !update.getAgendaStatus().equals(AgendaStatus.CLOSED)) {
             throw new AgendaStatusException("Invalid agenda status.");
         }
 
-        Agenda agenda = findAgendaById(agendaId);
-        validateAgenda(agenda);
+        validateAgenda(findCachedAgendaById(agendaId));
 
-        agenda.setStatus(update.getAgendaStatus());
-        agenda.setResult(calculateResult(agenda));
+        if (voteBuffer.isEnabled()) {
+            voteBuffer.fence(agendaId);
+            voteBuffer.awaitAgendaFlushed(agendaId);
+        }
+
+        // Sessions are closed first: nodes with a stale cached agenda still see it opened, but the vote gate on the
+        // session stops their votes. A vote that passed its session earlier is only counted on the agenda while it is
+        // opened, otherwise it is undone, so the tally returned by closing the agenda is final.
+        sessionRepository.closeOpenedSessions(agendaId);
+
+        Agenda closed = agendaRepository.closeAgenda(agendaId);
+
+        if (voteBuffer.isEnabled()) {
+            voteBuffer.unfence(agendaId);
+        }
+
+        Agenda agenda = Optional.ofNullable(closed)
+                .orElseThrow(() -> new AgendaStatusException("Agenda is closed."));
 
-        agendaRepository.save(agenda);
+        agendaCache.invalidate(agendaId);
 
-        findAndUpdateSessionsByAgendaId(agendaId);
+        // A write that failed between storing a vote and counting it leaves the vote uncounted, the tally is
+        // recounted from the stored votes before the result is set.
+        if (voteRepository.hasUncounted(agendaId)) {
+            TallyReconciliationDTO reconciliation = reconcileTally(agendaId);
+            agenda.setYesCount(reconciliation.getYesCount());
+            agenda.setNoCount(reconciliation.getNoCount());
+        }
+
+        agenda.setResult(calculateResult(agenda));
+        agendaRepository.setResult(agendaId, agenda.getResult());
+        liveResults.statusChanged(agendaId);
 
         return agenda;
     }
 
-    public List<Session> findAllSessions() {
-        return sessionRepository.findAll();
+    /**
+     * Recomputes the tallies of a closed agenda and its sessions from the stored votes. Opened agendas are refused:
+     * a vote counted between the recount and the write of the tallies would be lost.
+     */
+    @Timed("voting.service")
+    public TallyReconciliationDTO reconcileTally(String agendaId) {
+        Agenda agenda = findAgendaById(agendaId);
+
+        if (!agenda.getStatus().equals(AgendaStatus.CLOSED)) {
+            throw new AgendaStatusException("Only closed agendas can be reconciled.");
+        }
+        List<String> driftedSessionIds = new ArrayList<>();
+        Map<String, SessionTallyDTO> tallies = new HashMap<>();
+        long agendaYesCount = 0;
+        long agendaNoCount = 0;
+
+        for (SessionTallyDTO tally : voteRepository.tallyBySession(agendaId)) {
+            tallies.put(tally.getSessionId(), tally);
+            agendaYesCount += tally.getYesCount();
+            agendaNoCount += tally.getNoCount();
+        }
+
+        for (Session session : sessionRepository.findByAgendaId(agendaId)) {
+            SessionTallyDTO tally = tallies.getOrDefault(session.getId(), new SessionTallyDTO(session.getId(), 0, 0));
+
+            if (tally.getYesCount() != session.getYesCount() || tally.getNoCount() != session.getNoCount()) {
+                sessionRepository.setTally(session.getId(), tally.getYesCount(), tally.getNoCount());
+                driftedSessionIds.add(session.getId());
+            }
+        }
+
+        TallyReconciliationDTO reconciliation = new TallyReconciliationDTO(
+                agendaId,
+                agenda.getYesCount(),
+                agenda.getNoCount(),
+                agendaYesCount,
+                agendaNoCount,
+                driftedSessionIds);
+
+        if (reconciliation.isAgendaDrifted()) {
+            agenda.setYesCount(reconciliation.getYesCount());
+            agenda.setNoCount(reconciliation.getNoCount());
+            agendaRepository.setTally(agendaId, agenda.getYesCount(), agenda.getNoCount());
+            agendaRepository.setResult(agendaId, calculateResult(agenda));
+        }
+
+        // Votes left uncounted by a failed write are part of the recount, so their tally updates are settled too.
+        voteRepository.markCounted(agendaId);
+
+        if (reconciliation.isDrifted()) {
+            logger.warn("Tally drift on agenda {}: recorded {}/{}, recomputed {}/{}, drifted sessions {}.",
+                    agendaId,
+                    reconciliation.getRecordedYesCount(),
+                    reconciliation.getRecordedNoCount(),
+                    reconciliation.getYesCount(),
+                    reconciliation.getNoCount(),
+                    driftedSessionIds);
+        }
+
+        return reconciliation;
+    }
+
+    @Timed("voting.service")
+    public List<Session> findSessions(SessionStatus status, LocalDateTime startFrom, LocalDateTime startTo, String after, int limit) {
+        validatePageSize(limit);
+
+        List<Session> sessions = sessionRepository.findPage(status, startFrom, startTo, after, limit);
+        sessions.forEach(this::showExpiredAsClosed);
+
+        return sessions;
+    }
+
+    @Timed("voting.service")
+    public void streamSessions(SessionStatus status, LocalDateTime startFrom, LocalDateTime startTo, Consumer<Session> consumer) {
+        try (CloseableIterator<Session> sessions = sessionRepository.stream(status, startFrom, startTo)) {
+            sessions.forEachRemaining(session -> consumer.accept(showExpiredAsClosed(session)));
+        }
     }
 
+    @Timed("voting.service")
     public Session findAndUpdateSessionById(String sessionId) {
-        return sessionRepository
+        Session session = sessionRepository
                 .findById(sessionId)
-                .map(this::updateSession)
                 .orElseThrow(IdNotFoundException::new);
+
+        refreshSessions(Collections.singletonList(session), null);
+
+        return session;
     }
 
+    @Timed("voting.service")
     public List<Session> findAndUpdateSessionsByAgendaId(String agendaId) {
-        return sessionRepository.findByAgendaId(agendaId)
-                .stream()
-                .map(this::updateSession)
-                .collect(Collectors.toList());
+        return refreshSessions(sessionRepository.findByAgendaId(agendaId), null);
+    }
+
+    @Timed("voting.service")
+    public List<Vote> findSessionVotes(String sessionId, String after, int limit) {
+        validatePageSize(limit);
+
+        if (!sessionRepository.existsById(sessionId)) {
+            throw new IdNotFoundException();
+        }
+
+        return voteRepository.findPage(sessionId, after, limit);
     }
 
+    @Timed("voting.service")
     public Session createSession(Session session) {
-        validateAgenda(findAgendaById(session.getAgendaId()));
-        findAndUpdateSessionsByAgendaId(session.getAgendaId())
+        // Read past the agenda cache, a stale entry would let a session open on an agenda closed on another node.
+        Agenda agenda = findAgendaById(session.getAgendaId());
+        validateAgenda(agenda);
+        refreshSessions(sessionRepository.findSummariesByAgendaId(agenda.getId()), agenda)
                 .stream()
                 .filter(s -> s.getStatus().equals(SessionStatus.OPENED))
                 .findAny()
@@ -107,73 +286,176 @@ public class VotingService {
         LocalDateTime endDate = session.getStartDate().plusMinutes(session.getDuration());
         session.setEndDate(endDate);
         session.setStatus(SessionStatus.OPENED);
+        session.setYesCount(0);
+        session.setNoCount(0);
 
-        return sessionRepository.save(session);
+        Session created = sessionRepository.save(session);
+        sessionExpiryScheduler.schedule(created);
+        liveResults.statusChanged(created.getAgendaId());
+
+        return created;
     }
 
+    @Timed("voting.service")
     public Vote registerVote(Vote vote, String agendaId) {
+        registerVote(vote, agendaId, AckLevel.PERSISTED);
+        return vote;
+    }
+
+    /**
+     * Registers the vote and returns how far it got. When asked for BUFFERED or JOURNALED and the write-behind buffer
+     * took the vote, it returns JOURNALED if the vote journal is enabled and BUFFERED if not; a JOURNALED request
+     * without the journal waits like PERSISTED.
+     */
+    @Timed("voting.service")
+    public AckLevel registerVote(Vote vote, String agendaId, AckLevel ack) {
         validateVote(vote);
-        validateAgenda(findAgendaById(agendaId));
 
-        Session session = findAndUpdateSessionsByAgendaId(agendaId)
-                .stream()
-                .filter(Objects::nonNull)
-                .filter(s -> s.getStatus().equals(SessionStatus.OPENED))
-                .findAny()
-                .orElseThrow(() -> new SessionStatusException("There's no opened session for the given agenda."));
+        CompletableFuture<CPFStatusDTO> eligibility = cpfValidator.validateCPF(vote.getMemberCPF());
 
-        List<Vote> votes = Optional.ofNullable(session.getVotes()).orElse(new ArrayList<>());
+        Agenda agenda = findCachedAgendaById(agendaId);
+        Session session;
 
-        boolean isVoteAlreadyRegistered = votes
-                .stream()
-                .anyMatch(v -> v.getMemberId().equals(vote.getMemberId()) || v.getMemberCPF().equals(vote.getMemberCPF()));
+        try {
+            validateAgenda(agenda);
+            session = findOpenedSession(agenda);
+        } catch (AgendaStatusException | SessionStatusException e) {
+            votingMetrics.countRejection(Rejection.CLOSED_SESSION);
+            throw e;
+        }
 
-        if (isVoteAlreadyRegistered) {
-            throw new InvalidVoteException("Member already voted.");
+        if (VoterStatus.UNABLE_TO_VOTE.equals(awaitEligibility(eligibility).getStatus())) {
+            votingMetrics.countRejection(Rejection.INELIGIBLE);
+            throw new InvalidVoteException("Member is unable to vote.");
         }
 
-        try {
-            ObjectNode json = cpfValidator.validateCPF(vote.getMemberCPF());
+        // The id is set up front so that the buffer, its journal and any retry store the vote under the same id.
+        vote.setId(ObjectId.get().toHexString());
+        vote.setAgendaId(agendaId);
+        vote.setSessionId(session.getId());
+
+        CompletableFuture<VoteOutcome> buffered = voteBuffer.isEnabled() ? voteBuffer.offer(vote) : null;
+        VoteOutcome outcome;
 
-            String status = json.get("status").asText();
+        if (buffered == null) {
+            outcome = voteWriter.insert(vote);
+            publishOutcome(vote, outcome);
+        } else {
+            buffered.thenAccept(stored -> publishOutcome(vote, stored));
 
-            if (status.equals("UNABLE_TO_VOTE")) {
-                throw new InvalidVoteException("Member is unable to vote.");
+            if (!buffered.isDone() && (ack.equals(AckLevel.BUFFERED) || ack.equals(AckLevel.JOURNALED) && voteBuffer.isJournaled())) {
+                return voteBuffer.isJournaled() ? AckLevel.JOURNALED : AckLevel.BUFFERED;
             }
 
-            votes.add(vote);
-            session.setVotes(votes);
-            sessionRepository.save(session);
+            outcome = awaitOutcome(buffered);
+        }
+
+        countRejectedOutcome(outcome);
 
-            return vote;
-        } catch (FeignException.NotFound e) {
-            throw new InvalidVoteException("Invalid CPF.");
+        if (outcome.equals(VoteOutcome.DUPLICATE)) {
+            throw new InvalidVoteException(outcomeMessage(outcome));
         }
+
+        if (outcome.equals(VoteOutcome.CLOSED)) {
+            throw new SessionStatusException(outcomeMessage(outcome));
+        }
+
+        return AckLevel.PERSISTED;
     }
 
-    public String calculateResult(Agenda agenda) {
-        List<Session> sessions = findAndUpdateSessionsByAgendaId(agenda.getId());
-        System.out.println(sessions);
+    @Timed("voting.service")
+    public List<VoteResultDTO> registerVotes(List<Vote> votes, String agendaId) {
+        if (votes == null || votes.isEmpty() || votes.size() > MAX_VOTE_BATCH_SIZE) {
+            throw new InvalidVoteException("A vote batch must have between 1 and " + MAX_VOTE_BATCH_SIZE + " votes.");
+        }
 
-        long totalYes = sessions.stream()
-                .map(session -> {
-                    List<Vote> votes = Optional.ofNullable(session.getVotes()).orElse(new ArrayList<>());
+        Agenda agenda = findCachedAgendaById(agendaId);
+        Session session;
 
-                    return votes.stream()
-                            .filter(vote -> vote.getVoteOption().equals(VoteOption.SIM))
-                            .count();
-                })
-                .reduce(0L, Long::sum);
+        try {
+            validateAgenda(agenda);
+            session = findOpenedSession(agenda);
+        } catch (AgendaStatusException | SessionStatusException e) {
+            votingMetrics.countRejections(Rejection.CLOSED_SESSION, votes.size());
+            throw e;
+        }
 
-        long totalNo = sessions.stream()
-                .map(session -> {
-                    List<Vote> votes = Optional.ofNullable(session.getVotes()).orElse(new ArrayList<>());
+        VoteResultDTO[] results = new VoteResultDTO[votes.size()];
+        Map<String, CompletableFuture<CPFStatusDTO>> eligibilities = new HashMap<>();
+        List<CompletableFuture<CPFStatusDTO>> window = new ArrayList<>();
 
-                    return votes.stream()
-                            .filter(vote -> vote.getVoteOption().equals(VoteOption.NAO))
-                            .count();
-                })
-                .reduce(0L, Long::sum);
+        for (int i = 0; i < votes.size(); i++) {
+            Vote vote = votes.get(i);
+
+            try {
+                validateVote(vote);
+            } catch (RequiredFieldException | InvalidVoteException e) {
+                results[i] = new VoteResultDTO(vote, VoteOutcome.INVALID, e.getMessage());
+                continue;
+            }
+
+            if (eligibilities.containsKey(vote.getMemberCPF())) {
+                continue;
+            }
+
+            // The validator rejects what it can't run at once, so a big batch is validated a window at a time
+            if (window.size() >= cpfValidator.getCapacity()) {
+                CompletableFuture.allOf(window.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+                window.clear();
+            }
+
+            CompletableFuture<CPFStatusDTO> eligibility = cpfValidator.validateCPF(vote.getMemberCPF());
+            eligibilities.put(vote.getMemberCPF(), eligibility);
+            window.add(eligibility);
+        }
+
+        List<Integer> eligibleIndexes = new ArrayList<>();
+        List<Vote> eligibleVotes = new ArrayList<>();
+
+        for (int i = 0; i < votes.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+
+            Vote vote = votes.get(i);
+
+            try {
+                if (VoterStatus.UNABLE_TO_VOTE.equals(awaitEligibility(eligibilities.get(vote.getMemberCPF())).getStatus())) {
+                    votingMetrics.countRejection(Rejection.INELIGIBLE);
+                    results[i] = new VoteResultDTO(vote, VoteOutcome.INELIGIBLE, "Member is unable to vote.");
+                    continue;
+                }
+            } catch (InvalidVoteException e) {
+                results[i] = new VoteResultDTO(vote, VoteOutcome.INVALID, e.getMessage());
+                continue;
+            } catch (RuntimeException e) {
+                results[i] = new VoteResultDTO(vote, VoteOutcome.UNAVAILABLE, "CPF validator is unavailable, try again later.");
+                continue;
+            }
+
+            vote.setId(ObjectId.get().toHexString());
+            vote.setAgendaId(agendaId);
+            vote.setSessionId(session.getId());
+
+            eligibleIndexes.add(i);
+            eligibleVotes.add(vote);
+        }
+
+        List<VoteOutcome> outcomes = voteWriter.insertAll(agendaId, session.getId(), eligibleVotes);
+
+        for (int i = 0; i < eligibleVotes.size(); i++) {
+            VoteOutcome outcome = outcomes.get(i);
+            countRejectedOutcome(outcome);
+            publishOutcome(eligibleVotes.get(i), outcome);
+            results[eligibleIndexes.get(i)] = new VoteResultDTO(eligibleVotes.get(i), outcome, outcomeMessage(outcome));
+        }
+
+        return Arrays.asList(results);
+    }
+
+    public String calculateResult(Agenda agenda) {
+        long totalYes = agenda.getYesCount();
+        long totalNo = agenda.getNoCount();
 
         if (totalYes == totalNo) {
             return "EMPATE";
@@ -182,22 +464,141 @@ public class VotingService {
         return totalYes > totalNo ? VoteOption.SIM.toString() : VoteOption.NAO.toString();
     }
 
+    /**
+     * Same as {@link #findAgendaById(String)} but may answer from the agenda cache, whose tally can be stale. Only
+     * for checks on the agenda status, the vote gate on the session keeps votes out of a closed agenda regardless.
+     */
+    private Agenda findCachedAgendaById(String agendaId) {
+        if (agendaId == null || agendaId.isEmpty()) {
+            throw new RequiredFieldException("Agenda Id is required.");
+        }
+
+        return agendaCache
+                .findById(agendaId)
+                .orElseThrow(IdNotFoundException::new);
+    }
+
+    private Session findOpenedSession(Agenda agenda) {
+        return refreshSessions(sessionRepository.findSummariesByAgendaId(agenda.getId()), agenda)
+                .stream()
+                .filter(Objects::nonNull)
+                .filter(s -> s.getStatus().equals(SessionStatus.OPENED))
+                .findAny()
+                .orElseThrow(() -> new SessionStatusException("There's no opened session for the given agenda."));
+    }
+
+    private String outcomeMessage(VoteOutcome outcome) {
+        if (outcome.equals(VoteOutcome.DUPLICATE)) {
+            return "Member already voted.";
+        }
+
+        if (outcome.equals(VoteOutcome.CLOSED)) {
+            return "There's no opened session for the given agenda.";
+        }
+
+        return null;
+    }
+
+    private void publishOutcome(Vote vote, VoteOutcome outcome) {
+        if (outcome.equals(VoteOutcome.ACCEPTED)) {
+            liveResults.voteAccepted(vote.getAgendaId(), vote.getVoteOption());
+        }
+    }
+
+    private void countRejectedOutcome(VoteOutcome outcome) {
+        if (outcome.equals(VoteOutcome.DUPLICATE)) {
+            votingMetrics.countRejection(Rejection.DUPLICATE);
+        } else if (outcome.equals(VoteOutcome.CLOSED)) {
+            votingMetrics.countRejection(Rejection.CLOSED_SESSION);
+        }
+    }
+
+    private void validatePageSize(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new InvalidPageException("Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+    }
+
+    Session showExpiredAsClosed(Session session) {
+        boolean isSessionExpired = session.getEndDate() != null && session.getEndDate().isBefore(LocalDateTime.now());
+
+        if (SessionStatus.OPENED.equals(session.getStatus()) && isSessionExpired) {
+            session.setStatus(SessionStatus.CLOSED);
+        }
+
+        return session;
+    }
+
     private void validateAgenda(Agenda agenda) {
         if (agenda.getStatus().equals(AgendaStatus.CLOSED)) {
             throw new AgendaStatusException("Agenda is closed.");
         }
     }
 
-    private Session updateSession(Session session) {
-        boolean isSessionExpired = session.getEndDate().isBefore(LocalDateTime.now());
-        boolean isClosedAgenda = findAgendaById(session.getAgendaId()).getStatus().equals(AgendaStatus.CLOSED);
+    /**
+     * Reports expired sessions as closed, they are written by the expiry scheduler, and closes the opened sessions of
+     * a closed agenda. The sessions must belong to the same agenda, which is looked up once and only when one of them
+     * is still opened, unless the caller already has it.
+     */
+    private List<Session> refreshSessions(List<Session> sessions, Agenda agenda) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Session> opened = new ArrayList<>();
+
+        for (Session session : sessions) {
+            if (session == null || !session.getStatus().equals(SessionStatus.OPENED)) {
+                continue;
+            }
+
+            if (session.getEndDate().isBefore(now)) {
+                session.setStatus(SessionStatus.CLOSED);
+            } else {
+                opened.add(session);
+            }
+        }
 
-        if ((isSessionExpired || isClosedAgenda) && session.getStatus().equals(SessionStatus.OPENED)) {
-            session.setStatus(SessionStatus.CLOSED);
-            return sessionRepository.save(session);
+        if (opened.isEmpty()) {
+            return sessions;
         }
 
-        return session;
+        if (agenda == null) {
+            agenda = findCachedAgendaById(opened.get(0).getAgendaId());
+        }
+
+        if (agenda.getStatus().equals(AgendaStatus.CLOSED)) {
+            sessionRepository.closeOpenedSessions(agenda.getId());
+            opened.forEach(session -> session.setStatus(SessionStatus.CLOSED));
+        }
+
+        return sessions;
+    }
+
+    private CPFStatusDTO awaitEligibility(CompletableFuture<CPFStatusDTO> eligibility) {
+        try {
+            return eligibility.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof FeignException.NotFound) {
+                votingMetrics.countRejection(Rejection.INVALID_CPF);
+                throw new InvalidVoteException("Invalid CPF.");
+            }
+
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    private VoteOutcome awaitOutcome(CompletableFuture<VoteOutcome> outcome) {
+        try {
+            return outcome.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
     }
 
     private void validateVote(Vote vote) {
@@ -0,0 +1,380 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.config.MongoIndexes;
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaResult;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.ServerAddress;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import org.springframework.data.util.CloseableIterator;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs the repository queries against an embedded mongodb with the indexes of {@link MongoIndexes} and fails when
+ * the winning plan of any command they send scans a whole collection. Run with {@code ./gradlew queryPlanTest}.
+ */
+public class RepositoryQueryPlanTest {
+
+    private static final String DATABASE = "query-plan";
+    private static final Set<String> QUERY_COMMANDS = new HashSet<>(Arrays.asList(
+            "find", "count", "distinct", "aggregate", "update", "delete", "findAndModify"));
+    private static final List<String> DRIVER_FIELDS = Arrays.asList("$db", "lsid", "$clusterTime", "txnNumber", "$readPreference");
+
+    private static MongodExecutable mongod;
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+    private static AgendaRepository agendaRepository;
+    private static SessionRepository sessionRepository;
+    private static VoteRepository voteRepository;
+    private static LeaseRepository leaseRepository;
+    private static AgendaResultRepository agendaResultRepository;
+    private static final List<BsonDocument> commands = Collections.synchronizedList(new ArrayList<>());
+
+    private String agendaId;
+    private String openedSessionId;
+    private String expiredSessionId;
+
+    @BeforeAll
+    public static void startMongo() throws IOException {
+        int port = Network.getFreeServerPort();
+        mongod = MongodStarter.getDefaultInstance().prepare(new MongodConfigBuilder()
+                .version(Version.Main.V4_0)
+                .net(new Net("localhost", port, Network.localhostIsIPv6()))
+                .build());
+        mongod.start();
+
+        client = new MongoClient(new ServerAddress("localhost", port), MongoClientOptions.builder()
+                .addCommandListener(new QueryCommandListener())
+                .build());
+        mongoTemplate = new MongoTemplate(client, DATABASE);
+        new MongoIndexes(mongoTemplate).createIndexes();
+
+        MongoRepositoryFactory factory = new MongoRepositoryFactory(mongoTemplate);
+        agendaRepository = factory.getRepository(AgendaRepository.class, RepositoryFragments.just(new AgendaRepositoryCustomImpl(mongoTemplate)));
+        sessionRepository = factory.getRepository(SessionRepository.class, RepositoryFragments.just(new SessionRepositoryCustomImpl(mongoTemplate)));
+        voteRepository = factory.getRepository(VoteRepository.class, RepositoryFragments.just(new VoteRepositoryCustomImpl(mongoTemplate)));
+        leaseRepository = factory.getRepository(LeaseRepository.class, RepositoryFragments.just(new LeaseRepositoryCustomImpl(mongoTemplate)));
+        agendaResultRepository = factory.getRepository(AgendaResultRepository.class, RepositoryFragments.just(new AgendaResultRepositoryCustomImpl(mongoTemplate)));
+    }
+
+    @AfterAll
+    public static void stopMongo() {
+        client.close();
+        mongod.stop();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        Agenda agenda = new Agenda(null, "Agenda");
+        agenda.setStatus(AgendaStatus.OPENED);
+        agendaId = agendaRepository.save(agenda).getId();
+
+        openedSessionId = sessionRepository.save(session(LocalDateTime.now().plusHours(1))).getId();
+        expiredSessionId = sessionRepository.save(session(LocalDateTime.now().minusHours(1))).getId();
+
+        voteRepository.insertAllIntoOpenedSession(agendaId, openedSessionId, Arrays.asList(vote("1", VoteOption.SIM), vote("2", VoteOption.NAO)));
+
+        commands.clear();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        mongoTemplate.getDb().drop();
+        new MongoIndexes(mongoTemplate).createIndexes();
+    }
+
+    @Test
+    public void closeAgendaShouldUseAnIndex() {
+        agendaRepository.closeAgenda(agendaId);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void setAgendaResultShouldUseAnIndex() {
+        agendaRepository.setResult(agendaId, "SIM");
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void setAgendaTallyShouldUseAnIndex() {
+        agendaRepository.setTally(agendaId, 1, 1);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void findAgendaShouldUseAnIndex() {
+        agendaRepository.findById(agendaId);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void findAgendaPageShouldUseAnIndex() {
+        LocalDateTime now = LocalDateTime.now();
+
+        agendaRepository.findPage(null, null, null, null, 100);
+        agendaRepository.findPage(AgendaStatus.OPENED, null, null, null, 100);
+        agendaRepository.findPage(AgendaStatus.CLOSED, now.minusDays(1), now.plusDays(1), agendaId, 100);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void findAgendaResultPageShouldUseAnIndex() {
+        agendaResultRepository.save(new AgendaResult(agendaId, "Agenda", AgendaStatus.OPENED, 1, 1));
+        commands.clear();
+
+        agendaResultRepository.findPage(null, null, 100);
+        agendaResultRepository.findPage(AgendaStatus.OPENED, null, 100);
+        agendaResultRepository.findPage(AgendaStatus.CLOSED, agendaId, 100);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void streamAgendasShouldUseAnIndex() {
+        try (CloseableIterator<Agenda> agendas = agendaRepository.stream(AgendaStatus.OPENED, null, null)) {
+            agendas.forEachRemaining(agenda -> {});
+        }
+
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void findSessionsByAgendaShouldUseAnIndex() {
+        sessionRepository.findByAgendaId(agendaId);
+        sessionRepository.findSummariesByAgendaId(agendaId);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void findOpenedSessionSummariesShouldUseAnIndex() {
+        sessionRepository.findSummariesByStatus(SessionStatus.OPENED);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void sessionExistsShouldUseAnIndex() {
+        sessionRepository.existsById(openedSessionId);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void closeOpenedSessionsShouldUseAnIndex() {
+        sessionRepository.closeOpenedSessions(agendaId);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void closeExpiredSessionsShouldUseAnIndex() {
+        sessionRepository.closeExpiredSessions(Collections.singletonList(expiredSessionId), LocalDateTime.now());
+        sessionRepository.closeExpiredSessions(LocalDateTime.now());
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void setSessionTallyShouldUseAnIndex() {
+        sessionRepository.setTally(openedSessionId, 1, 1);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void findSessionPageShouldUseAnIndex() {
+        LocalDateTime now = LocalDateTime.now();
+
+        sessionRepository.findPage(null, null, null, null, 100);
+        sessionRepository.findPage(SessionStatus.OPENED, null, null, null, 100);
+        sessionRepository.findPage(SessionStatus.CLOSED, now.minusDays(1), now.plusDays(1), openedSessionId, 100);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void streamSessionsShouldUseAnIndex() {
+        try (CloseableIterator<Session> sessions = sessionRepository.stream(SessionStatus.OPENED, null, null)) {
+            sessions.forEachRemaining(session -> {});
+        }
+
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void insertVoteShouldUseAnIndex() {
+        voteRepository.insertIntoOpenedSession(vote("3", VoteOption.SIM));
+
+        Vote closed = vote("4", VoteOption.SIM);
+        closed.setSessionId(expiredSessionId);
+        voteRepository.insertIntoOpenedSession(closed);
+
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void insertVotesShouldUseAnIndex() {
+        voteRepository.insertAllIntoOpenedSession(agendaId, openedSessionId, Collections.singletonList(vote("3", VoteOption.SIM)));
+        voteRepository.insertAllIntoOpenedSession(agendaId, expiredSessionId, Collections.singletonList(vote("4", VoteOption.NAO)));
+        voteRepository.insertAllIntoSessionOpenedAt(agendaId, expiredSessionId, Collections.singletonList(vote("5", VoteOption.NAO)), Collections.singletonList(LocalDateTime.now().minusHours(2)));
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void findUncountedVotesShouldUseAnIndex() {
+        voteRepository.hasUncounted(agendaId);
+        voteRepository.markCounted(agendaId);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void tallyVotesShouldUseAnIndex() {
+        voteRepository.tallyBySession(agendaId);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void findVotePageShouldUseAnIndex() {
+        voteRepository.findPage(openedSessionId, null, 100);
+        voteRepository.findPage(openedSessionId, new ObjectId().toHexString(), 100);
+        assertNoCollectionScan();
+    }
+
+    @Test
+    public void leaseQueriesShouldUseAnIndex() {
+        Duration ttl = Duration.ofSeconds(10);
+        long token = leaseRepository.acquire("job", "node-1", ttl).get().getToken();
+
+        leaseRepository.acquire("job", "node-2", ttl);
+        leaseRepository.renew("job", "node-1", token, ttl);
+        leaseRepository.release("job", "node-1", token);
+        assertNoCollectionScan();
+    }
+
+    private void assertNoCollectionScan() {
+        List<BsonDocument> sent;
+
+        synchronized (commands) {
+            sent = new ArrayList<>(commands);
+        }
+
+        assertFalse(sent.isEmpty(), "No query was sent.");
+
+        for (BsonDocument command : sent) {
+            for (BsonDocument statement : statements(command)) {
+                BsonDocument explain = mongoTemplate.getDb().runCommand(new BsonDocument("explain", statement)
+                        .append("verbosity", new BsonString("queryPlanner")), BsonDocument.class);
+                List<BsonDocument> plans = new ArrayList<>();
+                collectWinningPlans(explain, plans);
+
+                assertFalse(plans.isEmpty(), "No query plan for " + statement.toJson());
+
+                for (BsonDocument plan : plans) {
+                    if (plan.toJson().contains("COLLSCAN")) {
+                        fail("Collection scan for " + statement.toJson() + ": " + plan.toJson());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Explain takes a single update or delete statement, so commands carrying many are split into one per statement.
+     */
+    private static List<BsonDocument> statements(BsonDocument command) {
+        BsonDocument base = command.clone();
+        DRIVER_FIELDS.forEach(base::remove);
+
+        String statementsField = base.containsKey("updates") ? "updates" : base.containsKey("deletes") ? "deletes" : null;
+
+        if (statementsField == null) {
+            return Collections.singletonList(base);
+        }
+
+        List<BsonDocument> statements = new ArrayList<>();
+
+        for (BsonValue statement : base.getArray(statementsField)) {
+            statements.add(base.clone().append(statementsField, new BsonArray(Collections.singletonList(statement))));
+        }
+
+        return statements;
+    }
+
+    private static void collectWinningPlans(BsonValue value, List<BsonDocument> plans) {
+        if (value.isArray()) {
+            value.asArray().forEach(element -> collectWinningPlans(element, plans));
+        } else if (value.isDocument()) {
+            for (String key : value.asDocument().keySet()) {
+                if (key.equals("winningPlan")) {
+                    plans.add(value.asDocument().getDocument(key));
+                } else if (!key.equals("rejectedPlans")) {
+                    collectWinningPlans(value.asDocument().get(key), plans);
+                }
+            }
+        }
+    }
+
+    private Session session(LocalDateTime endDate) {
+        Session session = new Session(null, agendaId, 60, SessionStatus.OPENED);
+        session.setStartDate(endDate.minusHours(1));
+        session.setEndDate(endDate);
+        return session;
+    }
+
+    private Vote vote(String memberId, VoteOption voteOption) {
+        Vote vote = new Vote(memberId, "cpf" + memberId, voteOption);
+        vote.setAgendaId(agendaId);
+        vote.setSessionId(openedSessionId);
+        return vote;
+    }
+
+    private static class QueryCommandListener implements CommandListener {
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            if (event.getDatabaseName().equals(DATABASE) && QUERY_COMMANDS.contains(event.getCommandName())) {
+                commands.add(event.getCommand().clone());
+            }
+        }
+
+        @Override
+        public void commandSucceeded(CommandSucceededEvent event) {
+        }
+
+        @Override
+        public void commandFailed(CommandFailedEvent event) {
+        }
+    }
+}
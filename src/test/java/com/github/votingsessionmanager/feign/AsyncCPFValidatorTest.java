@@ -0,0 +1,91 @@
+package com.github.votingsessionmanager.feign;
+
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
+import com.github.votingsessionmanager.domain.VoterStatus;
+import com.github.votingsessionmanager.exception.CPFValidatorUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class AsyncCPFValidatorTest {
+
+    @Mock
+    private CPFValidator delegate;
+
+    private ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldFailWhenNoSlotFreesUpInTime() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncCPFValidator validator = new AsyncCPFValidator(delegate, executor, 1, Duration.ofMillis(50));
+
+        given(delegate.validateCPF("1")).willAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE);
+        });
+
+        CompletableFuture<CPFStatusDTO> first = validator.validateCPF("1");
+        started.await();
+        CompletableFuture<CPFStatusDTO> second = validator.validateCPF("2");
+
+        ExecutionException e = assertThrows(ExecutionException.class, second::get);
+        assertTrue(e.getCause() instanceof CPFValidatorUnavailableException);
+
+        release.countDown();
+        assertEquals(VoterStatus.ABLE_TO_VOTE, first.get().getStatus());
+    }
+
+    @Test
+    public void shouldWaitForAFreeSlot() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AsyncCPFValidator validator = new AsyncCPFValidator(delegate, executor, 1, Duration.ofSeconds(5));
+
+        given(delegate.validateCPF("1")).willAnswer(invocation -> {
+            started.countDown();
+            Thread.sleep(50);
+            return new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE);
+        });
+        given(delegate.validateCPF("2")).willReturn(new CPFStatusDTO(VoterStatus.UNABLE_TO_VOTE));
+
+        CompletableFuture<CPFStatusDTO> first = validator.validateCPF("1");
+        started.await();
+        CompletableFuture<CPFStatusDTO> second = validator.validateCPF("2");
+
+        assertEquals(VoterStatus.ABLE_TO_VOTE, first.get().getStatus());
+        assertEquals(VoterStatus.UNABLE_TO_VOTE, second.get().getStatus());
+    }
+
+    @Test
+    public void shouldReportHowManyValidationsRunAtOnce() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(4, 4, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(10));
+
+        try {
+            assertEquals(4, new AsyncCPFValidator(delegate, pool).getCapacity());
+            assertEquals(2, new AsyncCPFValidator(delegate, executor, 2, Duration.ofSeconds(1)).getCapacity());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.votingsessionmanager.feign;
+
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
+import com.github.votingsessionmanager.domain.VoterStatus;
+import feign.FeignException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class CachingCPFValidatorTest {
+
+    @Mock
+    private CPFValidator delegate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CachingCPFValidator validator;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        validator = new CachingCPFValidator(delegate, new CPFValidatorMetrics(meterRegistry, "feign"), 100, Duration.ofMinutes(10), Duration.ZERO, Duration.ofHours(1));
+    }
+
+    @Test
+    public void shouldCacheAbleToVoteResponse() {
+        String cpf = "123";
+        CPFStatusDTO response = new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE);
+
+        given(delegate.validateCPF(cpf)).willReturn(response);
+
+        assertEquals(response, validator.validateCPF(cpf));
+        assertEquals(response, validator.validateCPF(cpf));
+
+        then(delegate).should(times(1)).validateCPF(cpf);
+        assertEquals(1, validator.getStats().hitCount());
+        assertEquals(1, validator.getStats().missCount());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "cpf_validator").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    public void shouldCacheInvalidCpf() {
+        String cpf = "123";
+
+        given(delegate.validateCPF(cpf)).willThrow(FeignException.NotFound.class);
+
+        assertThrows(FeignException.NotFound.class, () -> validator.validateCPF(cpf));
+        assertThrows(FeignException.NotFound.class, () -> validator.validateCPF(cpf));
+
+        then(delegate).should(times(1)).validateCPF(cpf);
+    }
+
+    @Test
+    public void shouldExpireUnableToVoteResponseWithItsOwnTtl() {
+        String cpf = "123";
+        CPFStatusDTO response = new CPFStatusDTO(VoterStatus.UNABLE_TO_VOTE);
+
+        given(delegate.validateCPF(cpf)).willReturn(response);
+
+        validator.validateCPF(cpf);
+        validator.validateCPF(cpf);
+
+        then(delegate).should(times(2)).validateCPF(cpf);
+    }
+
+    @Test
+    public void shouldNotCacheOtherFailures() {
+        String cpf = "123";
+
+        given(delegate.validateCPF(cpf)).willThrow(FeignException.InternalServerError.class);
+
+        assertThrows(FeignException.InternalServerError.class, () -> validator.validateCPF(cpf));
+        assertThrows(FeignException.InternalServerError.class, () -> validator.validateCPF(cpf));
+
+        then(delegate).should(times(2)).validateCPF(cpf);
+        assertEquals(0, validator.getSize());
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.votingsessionmanager.feign;
+
+import com.github.votingsessionmanager.exception.CPFValidatorUnavailableException;
+import feign.FeignException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class CircuitBreakerCPFValidatorTest {
+
+    @Mock
+    private CPFValidator delegate;
+
+    private CircuitBreakerCPFValidator validator;
+
+    @BeforeEach
+    public void setUp() {
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .slidingWindowSize(2)
+                .minimumNumberOfCalls(2)
+                .ignoreExceptions(FeignException.NotFound.class)
+                .build();
+
+        validator = new CircuitBreakerCPFValidator(delegate, CircuitBreaker.of("test", config));
+    }
+
+    @Test
+    public void shouldFailFastWhenCircuitIsOpen() {
+        String cpf = "123";
+
+        given(delegate.validateCPF(cpf)).willThrow(FeignException.InternalServerError.class);
+
+        assertThrows(FeignException.InternalServerError.class, () -> validator.validateCPF(cpf));
+        assertThrows(FeignException.InternalServerError.class, () -> validator.validateCPF(cpf));
+        assertThrows(CPFValidatorUnavailableException.class, () -> validator.validateCPF(cpf));
+
+        then(delegate).should(times(2)).validateCPF(cpf);
+        assertEquals(CircuitBreaker.State.OPEN, validator.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void shouldNotOpenCircuitOnInvalidCpf() {
+        String cpf = "123";
+
+        given(delegate.validateCPF(cpf)).willThrow(FeignException.NotFound.class);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(FeignException.NotFound.class, () -> validator.validateCPF(cpf));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, validator.getCircuitBreaker().getState());
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.votingsessionmanager.feign;
+
+import com.github.votingsessionmanager.domain.CPFStatusDTO;
+import com.github.votingsessionmanager.domain.VoterStatus;
+import feign.FeignException;
+import feign.Request;
+import feign.RetryableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class MeteredCPFValidatorTest {
+
+    @Mock
+    private CPFValidator delegate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private MeteredCPFValidator validator;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        validator = new MeteredCPFValidator(delegate, new CPFValidatorMetrics(meterRegistry, "feign"));
+    }
+
+    @Test
+    public void shouldTimeCallsByVoterStatus() {
+        given(delegate.validateCPF("123")).willReturn(new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE));
+        given(delegate.validateCPF("456")).willReturn(new CPFStatusDTO(VoterStatus.UNABLE_TO_VOTE));
+
+        validator.validateCPF("123");
+        validator.validateCPF("123");
+        validator.validateCPF("456");
+
+        assertEquals(2, count("able_to_vote"));
+        assertEquals(1, count("unable_to_vote"));
+    }
+
+    @Test
+    public void shouldTellInvalidCpfsTimeoutsAndErrorsApart() {
+        Request request = Request.create(Request.HttpMethod.GET, "/users/456", Collections.emptyMap(), null, StandardCharsets.UTF_8);
+        RetryableException timeout = new RetryableException(-1, "Read timed out", Request.HttpMethod.GET, new SocketTimeoutException("Read timed out"), null, request);
+
+        given(delegate.validateCPF("123")).willThrow(FeignException.NotFound.class);
+        given(delegate.validateCPF("456")).willThrow(timeout);
+        given(delegate.validateCPF("789")).willThrow(FeignException.ServiceUnavailable.class);
+
+        assertThrows(FeignException.NotFound.class, () -> validator.validateCPF("123"));
+        assertThrows(RetryableException.class, () -> validator.validateCPF("456"));
+        assertThrows(FeignException.ServiceUnavailable.class, () -> validator.validateCPF("789"));
+
+        assertEquals(1, count("invalid_cpf"));
+        assertEquals(1, count("timeout"));
+        assertEquals(1, count("error"));
+    }
+
+    private long count(String outcome) {
+        return meterRegistry.get("cpf_validator.requests").tag("client", "feign").tag("outcome", outcome).timer().count();
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.votingsessionmanager.migration;
+
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionTallyDTO;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.github.votingsessionmanager.repository.SessionRepository;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.WriteRequest;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class EmbeddedVoteMigrationTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations operations;
+
+    @Mock
+    private VoteRepository voteRepository;
+
+    @Mock
+    private SessionRepository sessionRepository;
+
+    @Mock
+    private AgendaRepository agendaRepository;
+
+    @Test
+    public void shouldBackfillTalliesOfMigratedVotes() {
+        Document legacy = new Document("_id", "1")
+                .append("agendaId", "1")
+                .append("votes", Arrays.asList(
+                        new Document("memberId", "1").append("memberCPF", "123").append("voteOption", "SIM"),
+                        new Document("memberId", "2").append("memberCPF", "456").append("voteOption", "NAO")));
+        Session session = new Session();
+        session.setId("1");
+
+        given(mongoTemplate.getCollectionName(Session.class)).willReturn("session");
+        given(mongoTemplate.stream(BDDMockito.any(Query.class), BDDMockito.eq(Document.class), BDDMockito.eq("session")))
+                .willReturn(cursor(Collections.singletonList(legacy)));
+        given(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Vote.class)).willReturn(operations);
+        given(operations.execute()).willReturn(BulkWriteResult.acknowledged(WriteRequest.Type.INSERT, 2, Collections.emptyList()));
+        given(voteRepository.tallyBySession("1")).willReturn(Collections.singletonList(new SessionTallyDTO("1", 1, 1)));
+        given(sessionRepository.findByAgendaId("1")).willReturn(Collections.singletonList(session));
+
+        new EmbeddedVoteMigration(mongoTemplate, voteRepository, sessionRepository, agendaRepository).run(null);
+
+        ArgumentCaptor<List<Document>> votes = ArgumentCaptor.forClass(List.class);
+        BDDMockito.then(operations).should().insert(votes.capture());
+        assertEquals(2, votes.getValue().size());
+        assertFalse(votes.getValue().get(0).containsKey("counted"));
+        BDDMockito.then(sessionRepository).should().setTally("1", 1, 1);
+        BDDMockito.then(agendaRepository).should().setTally("1", 1, 1);
+        BDDMockito.then(voteRepository).should().markCounted("1");
+    }
+
+    private static CloseableIterator<Document> cursor(List<Document> documents) {
+        Iterator<Document> iterator = documents.iterator();
+
+        return new CloseableIterator<Document>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Document next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
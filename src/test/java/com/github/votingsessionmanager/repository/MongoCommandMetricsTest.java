@@ -0,0 +1,54 @@
+package com.github.votingsessionmanager.repository;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class MongoCommandMetricsTest {
+
+    private ConnectionDescription connection = new ConnectionDescription(new ServerId(new ClusterId("1"), new ServerAddress()));
+    private SimpleMeterRegistry meterRegistry;
+    private MongoCommandMetrics metrics;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new MongoCommandMetrics(meterRegistry);
+    }
+
+    @Test
+    public void shouldTagCommandsWithTheirCollection() {
+        metrics.commandStarted(new CommandStartedEvent(1, connection, "voting", "insert", new BsonDocument("insert", new BsonString("vote"))));
+        metrics.commandStarted(new CommandStartedEvent(2, connection, "voting", "getMore", new BsonDocument("getMore", new BsonInt64(42)).append("collection", new BsonString("session"))));
+        metrics.commandSucceeded(new CommandSucceededEvent(1, connection, "insert", new BsonDocument(), TimeUnit.MILLISECONDS.toNanos(3)));
+        metrics.commandFailed(new CommandFailedEvent(2, connection, "getMore", TimeUnit.MILLISECONDS.toNanos(5), new RuntimeException()));
+
+        assertEquals(1, meterRegistry.get("mongodb.driver.commands").tag("command", "insert").tag("collection", "vote").tag("status", "SUCCESS").timer().count());
+        assertEquals(1, meterRegistry.get("mongodb.driver.commands").tag("command", "getMore").tag("collection", "session").tag("status", "FAILED").timer().count());
+    }
+
+    @Test
+    public void shouldTagDatabaseCommandsWithNoCollection() {
+        metrics.commandStarted(new CommandStartedEvent(1, connection, "admin", "isMaster", new BsonDocument("isMaster", new BsonInt32(1))));
+        metrics.commandSucceeded(new CommandSucceededEvent(1, connection, "isMaster", new BsonDocument(), 1000));
+
+        assertEquals(1, meterRegistry.get("mongodb.driver.commands").tag("command", "isMaster").tag("collection", "none").timer().count());
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.votingsessionmanager.repository;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class VoteRepositoryCustomImplTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations operations;
+
+    private VoteRepositoryCustomImpl repository;
+
+    @BeforeEach
+    public void setUp() {
+        given(mongoTemplate.getConverter()).willReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+        given(mongoTemplate.getCollectionName(Vote.class)).willReturn("vote");
+        given(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Vote.class)).willReturn(operations);
+        given(operations.insert(BDDMockito.any(Object.class))).willReturn(operations);
+        given(mongoTemplate.updateFirst(BDDMockito.any(Query.class), BDDMockito.any(Update.class), BDDMockito.eq(Agenda.class))).willReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        repository = new VoteRepositoryCustomImpl(mongoTemplate);
+    }
+
+    @Test
+    public void shouldCountVoteOnRetryWhenItsWriteFailedAfterTheInsert() {
+        Vote vote = vote();
+        given(operations.execute()).willReturn(null).willThrow(duplicateKey());
+        given(mongoTemplate.updateFirst(BDDMockito.any(Query.class), BDDMockito.any(Update.class), BDDMockito.eq(Session.class)))
+                .willThrow(new DataAccessResourceFailureException("Connection reset"))
+                .willReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        assertThrows(DataAccessResourceFailureException.class, () -> repository.insertIntoOpenedSession(vote));
+
+        given(mongoTemplate.find(BDDMockito.any(Query.class), BDDMockito.eq(Document.class), BDDMockito.eq("vote")))
+                .willReturn(Collections.singletonList(new Document("_id", new ObjectId(vote.getId())).append("counted", false)));
+
+        assertEquals(VoteOutcome.ACCEPTED, repository.insertIntoOpenedSession(vote));
+        BDDMockito.then(mongoTemplate).should().updateFirst(BDDMockito.any(Query.class), BDDMockito.any(Update.class), BDDMockito.eq(Agenda.class));
+        BDDMockito.then(mongoTemplate).should().updateMulti(BDDMockito.any(Query.class), BDDMockito.eq(new Update().unset("counted")), BDDMockito.eq(Vote.class));
+    }
+
+    @Test
+    public void shouldNotCountAgainVoteStoredByAnEarlierAttempt() {
+        Vote vote = vote();
+        given(operations.execute()).willThrow(duplicateKey());
+        given(mongoTemplate.find(BDDMockito.any(Query.class), BDDMockito.eq(Document.class), BDDMockito.eq("vote")))
+                .willReturn(Collections.singletonList(new Document("_id", new ObjectId(vote.getId()))));
+
+        assertEquals(VoteOutcome.ACCEPTED, repository.insertIntoOpenedSession(vote));
+        BDDMockito.then(mongoTemplate).should(never()).updateFirst(BDDMockito.any(Query.class), BDDMockito.any(Update.class), BDDMockito.eq(Session.class));
+    }
+
+    @Test
+    public void shouldRejectSecondVoteOfTheMember() {
+        given(operations.execute()).willThrow(duplicateKey());
+        given(mongoTemplate.find(BDDMockito.any(Query.class), BDDMockito.eq(Document.class), BDDMockito.eq("vote"))).willReturn(Collections.emptyList());
+
+        assertEquals(VoteOutcome.DUPLICATE, repository.insertIntoOpenedSession(vote()));
+        BDDMockito.then(mongoTemplate).should(never()).updateFirst(BDDMockito.any(Query.class), BDDMockito.any(Update.class), BDDMockito.eq(Session.class));
+    }
+
+    @Test
+    public void shouldRemoveVoteWhenItsSessionClosed() {
+        given(mongoTemplate.updateFirst(BDDMockito.any(Query.class), BDDMockito.any(Update.class), BDDMockito.eq(Session.class))).willReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        assertEquals(VoteOutcome.CLOSED, repository.insertIntoOpenedSession(vote()));
+        BDDMockito.then(mongoTemplate).should().remove(BDDMockito.any(Query.class), BDDMockito.eq(Vote.class));
+        BDDMockito.then(mongoTemplate).should(never()).updateFirst(BDDMockito.any(Query.class), BDDMockito.any(Update.class), BDDMockito.eq(Agenda.class));
+    }
+
+    @Test
+    public void shouldUndoSessionTallyWhenTheAgendaClosedMeanwhile() {
+        given(mongoTemplate.updateFirst(BDDMockito.any(Query.class), BDDMockito.any(Update.class), BDDMockito.eq(Session.class))).willReturn(UpdateResult.acknowledged(1, 1L, null));
+        given(mongoTemplate.updateFirst(BDDMockito.any(Query.class), BDDMockito.any(Update.class), BDDMockito.eq(Agenda.class))).willReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        assertEquals(VoteOutcome.CLOSED, repository.insertIntoOpenedSession(vote()));
+        BDDMockito.then(mongoTemplate).should().updateFirst(BDDMockito.any(Query.class), BDDMockito.eq(new Update().inc("yesCount", -1L).inc("noCount", 0L)), BDDMockito.eq(Session.class));
+        BDDMockito.then(mongoTemplate).should().remove(BDDMockito.any(Query.class), BDDMockito.eq(Vote.class));
+    }
+
+    @Test
+    public void shouldOnlyCloseTheLateVotesOfABatchThatStraddlesTheEndOfTheSession() {
+        LocalDateTime endDate = LocalDateTime.of(2020, 1, 1, 10, 0);
+        Session session = new Session();
+        session.setEndDate(endDate);
+        given(mongoTemplate.findOne(BDDMockito.any(Query.class), BDDMockito.eq(Session.class))).willReturn(session);
+        given(mongoTemplate.updateFirst(BDDMockito.any(Query.class), BDDMockito.any(Update.class), BDDMockito.eq(Session.class))).willReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        List<VoteOutcome> outcomes = repository.insertAllIntoSessionOpenedAt("1", "1", Arrays.asList(vote(), vote()), Arrays.asList(endDate.minusSeconds(1), endDate.plusSeconds(1)));
+
+        assertEquals(Arrays.asList(VoteOutcome.ACCEPTED, VoteOutcome.CLOSED), outcomes);
+        BDDMockito.then(operations).should().insert(BDDMockito.any(Object.class));
+        BDDMockito.then(mongoTemplate).should().updateFirst(
+                query(where("id").is("1").and("endDate").gt(endDate.minusSeconds(1))),
+                new Update().inc("yesCount", 1L).inc("noCount", 0L),
+                Session.class);
+    }
+
+    private static DuplicateKeyException duplicateKey() {
+        return new DuplicateKeyException("E11000 duplicate key error", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(),
+                Collections.singletonList(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 0)),
+                null,
+                new ServerAddress()));
+    }
+
+    private static Vote vote() {
+        Vote vote = new Vote("1", "123", VoteOption.SIM);
+        vote.setId(ObjectId.get().toHexString());
+        vote.setAgendaId("1");
+        vote.setSessionId("1");
+        return vote;
+    }
+}
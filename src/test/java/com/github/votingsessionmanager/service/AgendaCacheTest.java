@@ -0,0 +1,152 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class AgendaCacheTest {
+
+    @Mock
+    private AgendaRepository agendaRepository;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoCollection<Document> collection;
+
+    @Mock
+    private ChangeStreamIterable<Document> changeStream;
+
+    @Mock
+    private MongoCursor<ChangeStreamDocument<Document>> cursor;
+
+    private BlockingQueue<ChangeStreamDocument<Document>> changes = new LinkedBlockingQueue<>();
+    private AgendaCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        AtomicReference<ChangeStreamDocument<Document>> next = new AtomicReference<>();
+
+        given(mongoTemplate.getCollectionName(Agenda.class)).willReturn("agenda");
+        given(mongoTemplate.getCollection("agenda")).willReturn(collection);
+        given(collection.watch(BDDMockito.anyList())).willReturn(changeStream);
+        given(changeStream.iterator()).willReturn(cursor);
+        given(cursor.hasNext()).willAnswer(invocation -> {
+            try {
+                next.set(changes.take());
+                return true;
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        given(cursor.next()).willAnswer(invocation -> next.get());
+
+        cache = new AgendaCache(agendaRepository, mongoTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maximumSize", 100L);
+        ReflectionTestUtils.setField(cache, "expireAfterWrite", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(cache, "retryInterval", Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        cache.stop();
+    }
+
+    @Test
+    public void shouldReadThroughOnceWhileChangeStreamIsOpen() throws InterruptedException {
+        String agendaId = new ObjectId().toHexString();
+        given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda(agendaId, AgendaStatus.OPENED)));
+
+        cache.start();
+        awaitCoherent();
+
+        cache.findById(agendaId);
+        cache.findById(agendaId);
+
+        BDDMockito.then(agendaRepository).should(times(1)).findById(agendaId);
+    }
+
+    @Test
+    public void shouldInvalidateAgendaChangedByAnotherNode() throws InterruptedException {
+        String agendaId = new ObjectId().toHexString();
+        given(agendaRepository.findById(agendaId))
+                .willReturn(Optional.of(agenda(agendaId, AgendaStatus.OPENED)))
+                .willReturn(Optional.of(agenda(agendaId, AgendaStatus.CLOSED)));
+
+        cache.start();
+        awaitCoherent();
+
+        assertEquals(AgendaStatus.OPENED, cache.findById(agendaId).get().getStatus());
+
+        changes.add(new ChangeStreamDocument<>(OperationType.UPDATE, null, null, null, null,
+                new BsonDocument("_id", new BsonObjectId(new ObjectId(agendaId))), null, null));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+
+        while (cache.findById(agendaId).get().getStatus().equals(AgendaStatus.OPENED) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(AgendaStatus.CLOSED, cache.findById(agendaId).get().getStatus());
+    }
+
+    @Test
+    public void shouldBypassCacheWhenDisabled() {
+        String agendaId = "1";
+        given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda(agendaId, AgendaStatus.OPENED)));
+        ReflectionTestUtils.setField(cache, "enabled", false);
+
+        cache.findById(agendaId);
+        cache.findById(agendaId);
+
+        BDDMockito.then(agendaRepository).should(times(2)).findById(agendaId);
+    }
+
+    private void awaitCoherent() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+
+        while (!cache.isCoherent() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(cache.isCoherent());
+    }
+
+    private Agenda agenda(String agendaId, AgendaStatus status) {
+        Agenda agenda = new Agenda(agendaId, "Test");
+        agenda.setStatus(status);
+        return agenda;
+    }
+}
@@ -0,0 +1,283 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaResult;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class AgendaResultsProjectorTest {
+
+    private static final BsonDocument OPENED_AT = new BsonDocument("_data", new BsonString("0"));
+    private static final long TOKEN = 7;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private LeaderElection leaderElection;
+
+    @Mock
+    private LeaderElection.Leadership leadership;
+
+    @Mock
+    private MongoCollection<Document> agendas;
+
+    @Mock
+    private MongoCollection<Document> results;
+
+    @Mock
+    private MongoCollection<Document> checkpointDocuments;
+
+    @Mock
+    private MongoCollection<BsonDocument> checkpoints;
+
+    @Mock
+    private FindIterable<BsonDocument> checkpoint;
+
+    @Mock
+    private FindIterable<Document> agendaPage;
+
+    @Mock
+    private MongoCursor<Document> agendaCursor;
+
+    @Mock
+    private ChangeStreamIterable<Document> changeStream;
+
+    @Mock
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+
+    private BlockingQueue<ChangeStreamDocument<Document>> changes = new LinkedBlockingQueue<>();
+    private AgendaResultsProjector projector;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        AtomicReference<BsonDocument> resumeToken = new AtomicReference<>(OPENED_AT);
+
+        given(leaderElection.join(AgendaResultsProjector.JOB)).willReturn(leadership);
+        given(leadership.isLeader()).willReturn(true);
+        given(leadership.getToken()).willReturn(TOKEN);
+
+        given(mongoTemplate.getCollectionName(Agenda.class)).willReturn("agenda");
+        given(mongoTemplate.getCollectionName(AgendaResult.class)).willReturn("agenda_results");
+        given(mongoTemplate.getCollection("agenda")).willReturn(agendas);
+        given(mongoTemplate.getCollection("agenda_results")).willReturn(results);
+        given(mongoTemplate.getCollection(AgendaResultsProjector.CHECKPOINT_COLLECTION)).willReturn(checkpointDocuments);
+        given(checkpointDocuments.withDocumentClass(BsonDocument.class)).willReturn(checkpoints);
+        given(checkpoints.find(BDDMockito.any(Bson.class))).willReturn(checkpoint);
+
+        given(agendas.find()).willReturn(agendaPage);
+        given(agendaPage.projection(BDDMockito.any())).willReturn(agendaPage);
+        given(agendaPage.batchSize(BDDMockito.anyInt())).willReturn(agendaPage);
+        given(agendaPage.iterator()).willReturn(agendaCursor);
+        given(results.deleteMany(BDDMockito.any(Bson.class))).willReturn(DeleteResult.acknowledged(0));
+
+        given(agendas.watch(BDDMockito.anyList())).willReturn(changeStream);
+        given(changeStream.maxAwaitTime(BDDMockito.anyLong(), BDDMockito.any())).willReturn(changeStream);
+        given(changeStream.resumeAfter(BDDMockito.any())).willReturn(changeStream);
+        given(changeStream.cursor()).willReturn(cursor);
+        given(cursor.getResumeToken()).willAnswer(invocation -> resumeToken.get());
+        given(cursor.tryNext()).willAnswer(invocation -> {
+            try {
+                ChangeStreamDocument<Document> change = changes.poll(10, TimeUnit.MILLISECONDS);
+
+                if (change != null) {
+                    resumeToken.set(change.getResumeToken());
+                }
+
+                return change;
+            } catch (InterruptedException e) {
+                return null;
+            }
+        });
+
+        projector = new AgendaResultsProjector(mongoTemplate, leaderElection);
+        ReflectionTestUtils.setField(projector, "enabled", true);
+        ReflectionTestUtils.setField(projector, "batchSize", 500);
+        ReflectionTestUtils.setField(projector, "maxAwaitTime", Duration.ofMillis(10));
+        ReflectionTestUtils.setField(projector, "retryInterval", Duration.ofMillis(10));
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        projector.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRebuildResultsWithoutResumeToken() {
+        ObjectId agendaId = new ObjectId();
+        given(agendaCursor.hasNext()).willReturn(true, false);
+        given(agendaCursor.next()).willReturn(new Document("_id", agendaId).append("status", "OPENED").append("yesCount", 2L));
+
+        projector.start();
+
+        ArgumentCaptor<List<WriteModel<Document>>> writes = ArgumentCaptor.forClass(List.class);
+        BDDMockito.then(results).should(timeout(2000)).bulkWrite(writes.capture(), BDDMockito.any(BulkWriteOptions.class));
+        BDDMockito.then(checkpoints).should(timeout(2000)).replaceOne(BDDMockito.any(Bson.class), BDDMockito.eq(checkpoint(OPENED_AT)), BDDMockito.any(ReplaceOptions.class));
+        BDDMockito.then(changeStream).should(never()).resumeAfter(BDDMockito.any());
+
+        ReplaceOneModel<Document> rebuilt = (ReplaceOneModel<Document>) writes.getValue().get(0);
+        assertEquals(new BsonObjectId(agendaId), id(rebuilt.getFilter()));
+        assertEquals(2L, rebuilt.getReplacement().get("yesCount"));
+
+        ArgumentCaptor<Bson> orphans = ArgumentCaptor.forClass(Bson.class);
+        BDDMockito.then(results).should().deleteMany(orphans.capture());
+        BsonDocument rebuild = orphans.getValue().toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry())
+                .getDocument(AgendaResultsProjector.REBUILD);
+        assertEquals(new BsonObjectId((ObjectId) rebuilt.getReplacement().get(AgendaResultsProjector.REBUILD)), rebuild.get("$ne"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldResumeAndMergeChangesOfTheSameAgenda() {
+        BsonDocument stored = new BsonDocument("_data", new BsonString("1"));
+        given(checkpoint.first()).willReturn(checkpoint(stored));
+
+        BsonObjectId voted = new BsonObjectId(new ObjectId());
+        BsonObjectId created = new BsonObjectId(new ObjectId());
+        BsonObjectId deleted = new BsonObjectId(new ObjectId());
+        changes.add(update(2, voted, new BsonDocument("yesCount", new BsonInt64(1))));
+        changes.add(insert(3, created, new Document("_id", created.getValue()).append("description", "Test").append("status", "OPENED")));
+        changes.add(update(4, voted, new BsonDocument("yesCount", new BsonInt64(2)).append("status", new BsonString("CLOSED"))));
+        changes.add(new ChangeStreamDocument<>(OperationType.DELETE, token(5), null, null, null, new BsonDocument("_id", deleted), null, null));
+
+        projector.start();
+
+        ArgumentCaptor<List<WriteModel<Document>>> writes = ArgumentCaptor.forClass(List.class);
+        BDDMockito.then(results).should(timeout(2000)).bulkWrite(writes.capture(), BDDMockito.any(BulkWriteOptions.class));
+        BDDMockito.then(checkpoints).should(timeout(2000)).replaceOne(BDDMockito.any(Bson.class), BDDMockito.eq(checkpoint(token(5))), BDDMockito.any(ReplaceOptions.class));
+        BDDMockito.then(changeStream).should().resumeAfter(stored);
+        BDDMockito.then(agendas).should(never()).find();
+
+        assertEquals(3, writes.getValue().size());
+
+        UpdateOneModel<Document> vote = (UpdateOneModel<Document>) writes.getValue().get(0);
+        Document set = (Document) ((Document) vote.getUpdate()).get("$set");
+        assertEquals(voted, id(vote.getFilter()));
+        assertEquals(new BsonInt64(2), set.get("yesCount"));
+        assertEquals(new BsonString("CLOSED"), set.get("status"));
+        assertEquals(TOKEN, set.get(AgendaResultsProjector.TOKEN));
+
+        UpdateOneModel<Document> creation = (UpdateOneModel<Document>) writes.getValue().get(1);
+        assertEquals(created, id(creation.getFilter()));
+        assertEquals("Test", ((Document) ((Document) creation.getUpdate()).get("$set")).get("description"));
+        assertTrue(((Document) ((Document) creation.getUpdate()).get("$unset")).containsKey("yesCount"));
+
+        assertEquals(deleted, id(((DeleteOneModel<Document>) writes.getValue().get(2)).getFilter()));
+    }
+
+    @Test
+    public void shouldRebuildResultsWhenResumeTokenIsLost() {
+        given(checkpoint.first()).willReturn(checkpoint(new BsonDocument("_data", new BsonString("1"))));
+        given(changeStream.cursor())
+                .willThrow(new MongoCommandException(new BsonDocument("ok", new BsonInt32(0)).append("code", new BsonInt32(286)).append("errmsg", new BsonString("Resume token not found")), new ServerAddress()))
+                .willReturn(cursor);
+        given(agendaCursor.hasNext()).willReturn(false);
+
+        projector.start();
+
+        BDDMockito.then(agendas).should(timeout(2000)).find();
+        BDDMockito.then(changeStream).should(timeout(2000).times(1)).resumeAfter(BDDMockito.any());
+    }
+
+    @Test
+    public void shouldNotMoveCheckpointOnceANewerLeaderWroteTheResults() {
+        given(checkpoint.first()).willReturn(checkpoint(new BsonDocument("_data", new BsonString("1"))));
+        given(results.bulkWrite(BDDMockito.anyList(), BDDMockito.any(BulkWriteOptions.class))).willThrow(new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(),
+                Collections.singletonList(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 0)),
+                null,
+                new ServerAddress()));
+        changes.add(update(2, new BsonObjectId(new ObjectId()), new BsonDocument("yesCount", new BsonInt64(1))));
+        // Leading for one round of projection, the next heartbeat tells this node it lost the lease.
+        given(leadership.isLeader()).willReturn(true, true, false);
+
+        projector.start();
+
+        BDDMockito.then(results).should(timeout(2000)).bulkWrite(BDDMockito.anyList(), BDDMockito.any(BulkWriteOptions.class));
+        BDDMockito.then(checkpoints).should(after(200).never()).replaceOne(BDDMockito.any(Bson.class), BDDMockito.any(BsonDocument.class), BDDMockito.any(ReplaceOptions.class));
+    }
+
+    @Test
+    public void shouldNotProjectWhileNotLeading() {
+        given(leadership.isLeader()).willReturn(false);
+
+        projector.start();
+
+        BDDMockito.then(agendas).should(after(200).never()).watch(BDDMockito.anyList());
+    }
+
+    private static BsonValue id(Bson filter) {
+        return filter.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry()).get("_id");
+    }
+
+    private static BsonDocument checkpoint(BsonDocument resumeToken) {
+        return new BsonDocument("_id", new BsonString(AgendaResultsProjector.JOB)).append("resumeToken", resumeToken).append(AgendaResultsProjector.TOKEN, new BsonInt64(TOKEN));
+    }
+
+    private static BsonDocument token(int position) {
+        return new BsonDocument("_data", new BsonString(String.valueOf(position)));
+    }
+
+    private static ChangeStreamDocument<Document> insert(int position, BsonValue id, Document agenda) {
+        return new ChangeStreamDocument<>(OperationType.INSERT, token(position), null, null, agenda, new BsonDocument("_id", id), null, null);
+    }
+
+    private static ChangeStreamDocument<Document> update(int position, BsonValue id, BsonDocument updatedFields) {
+        return new ChangeStreamDocument<>(OperationType.UPDATE, token(position), null, null, null, new BsonDocument("_id", id), null,
+                new UpdateDescription(Collections.emptyList(), updatedFields));
+    }
+}
@@ -0,0 +1,189 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.AckLevel;
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.domain.VoteReceipt;
+import com.github.votingsessionmanager.exception.IdempotencyKeyException;
+import com.github.votingsessionmanager.exception.InvalidVoteException;
+import com.github.votingsessionmanager.repository.VoteReceiptRepository;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class IdempotencyStoreTest {
+
+    @Mock
+    private VoteReceiptRepository voteReceiptRepository;
+
+    @Mock
+    private VoteRepository voteRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private IdempotencyStore store;
+    private AtomicInteger registrations = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        store = new IdempotencyStore(voteReceiptRepository, voteRepository, meterRegistry);
+        ReflectionTestUtils.setField(store, "maximumSize", 100L);
+        ReflectionTestUtils.setField(store, "ttl", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(store, "persistent", false);
+        store.start();
+    }
+
+    @Test
+    public void shouldReplayReceiptWithoutRegisteringAgain() {
+        Vote vote = vote();
+
+        VoteReceipt first = store.register("key", "1", vote, this::register);
+        VoteReceipt retry = store.register("key", "1", vote(), this::register);
+
+        assertEquals(1, registrations.get());
+        assertSame(vote, retry.getVote());
+        assertEquals(first.getAck(), retry.getAck());
+        assertEquals(1, meterRegistry.get("idempotency.replays").counter().count());
+    }
+
+    @Test
+    public void shouldRegisterAgainWhenRegistrationFailed() {
+        assertThrows(InvalidVoteException.class, () -> store.register("key", "1", vote(), () -> {
+            throw new InvalidVoteException("Member is unable to vote.");
+        }));
+
+        store.register("key", "1", vote(), this::register);
+
+        assertEquals(1, registrations.get());
+    }
+
+    @Test
+    public void shouldRejectKeyReusedForAnotherVote() {
+        store.register("key", "1", vote(), this::register);
+
+        Vote other = new Vote("2", "456", VoteOption.NAO);
+
+        assertThrows(IdempotencyKeyException.class, () -> store.register("key", "1", other, this::register));
+        assertThrows(IdempotencyKeyException.class, () -> store.register("key", "2", vote(), this::register));
+        assertEquals(1, registrations.get());
+    }
+
+    @Test
+    public void shouldRejectOversizedKey() {
+        assertThrows(IdempotencyKeyException.class, () -> store.register(new String(new char[256]).replace('\0', 'k'), "1", vote(), this::register));
+        assertEquals(0, registrations.get());
+    }
+
+    @Test
+    public void shouldWaitForConcurrentRequestWithSameKey() throws Exception {
+        CountDownLatch registering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<VoteReceipt> first = CompletableFuture.supplyAsync(() -> store.register("key", "1", vote(), () -> {
+            registering.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return register();
+        }));
+
+        assertTrue(registering.await(2, TimeUnit.SECONDS));
+        CompletableFuture<VoteReceipt> retry = CompletableFuture.supplyAsync(() -> store.register("key", "1", vote(), this::register));
+
+        Thread.sleep(100);
+        assertFalse(retry.isDone());
+
+        release.countDown();
+
+        assertSame(first.get(2, TimeUnit.SECONDS), retry.get(2, TimeUnit.SECONDS));
+        assertEquals(1, registrations.get());
+    }
+
+    @Test
+    public void shouldStoreAndFindReceiptsWhenPersistent() {
+        ReflectionTestUtils.setField(store, "persistent", true);
+        VoteReceipt stored = new VoteReceipt("stored", "1", vote(), AckLevel.PERSISTED, LocalDateTime.now().plusMinutes(5));
+        VoteReceipt expired = new VoteReceipt("expired", "1", vote(), AckLevel.PERSISTED, LocalDateTime.now().minusMinutes(5));
+
+        given(voteReceiptRepository.findById("stored")).willReturn(Optional.of(stored));
+        given(voteReceiptRepository.findById("expired")).willReturn(Optional.of(expired));
+        given(voteReceiptRepository.findById("new")).willReturn(Optional.empty());
+
+        assertSame(stored, store.register("stored", "1", vote(), this::register));
+        assertEquals(0, registrations.get());
+
+        store.register("expired", "1", vote(), this::register);
+        VoteReceipt registered = store.register("new", "1", vote(), this::register);
+
+        assertEquals(2, registrations.get());
+        BDDMockito.then(voteReceiptRepository).should().save(registered);
+    }
+
+    @Test
+    public void shouldReplayReceiptStoredByAnotherNodeWhenRegistrationFails() {
+        ReflectionTestUtils.setField(store, "persistent", true);
+        VoteReceipt stored = new VoteReceipt("key", "1", vote(), AckLevel.PERSISTED, LocalDateTime.now().plusMinutes(5));
+
+        given(voteReceiptRepository.findById("key")).willReturn(Optional.empty(), Optional.of(stored));
+
+        VoteReceipt receipt = store.register("key", "1", vote(), () -> {
+            throw new InvalidVoteException("Member already voted.");
+        });
+
+        assertSame(stored, receipt);
+    }
+
+    @Test
+    public void shouldReplayVoteRegisteredByAnAttemptWhoseReceiptWasLost() {
+        ReflectionTestUtils.setField(store, "persistent", true);
+        given(voteReceiptRepository.findById("key")).willReturn(Optional.empty());
+        given(voteRepository.findByAgendaIdAndMemberId("1", "1")).willReturn(Optional.of(vote()));
+
+        VoteReceipt receipt = store.register("key", "1", vote(), () -> {
+            throw new InvalidVoteException("Member already voted.");
+        });
+
+        assertEquals(AckLevel.PERSISTED, receipt.getAck());
+        assertEquals(1, meterRegistry.get("idempotency.replays").counter().count());
+        BDDMockito.then(voteReceiptRepository).should().save(receipt);
+    }
+
+    @Test
+    public void shouldNotReplayAnotherVoteOfTheMember() {
+        given(voteRepository.findByAgendaIdAndMemberId("1", "1")).willReturn(Optional.of(new Vote("1", "123", VoteOption.NAO)));
+
+        assertThrows(InvalidVoteException.class, () -> store.register("key", "1", vote(), () -> {
+            throw new InvalidVoteException("Member already voted.");
+        }));
+    }
+
+    private AckLevel register() {
+        registrations.incrementAndGet();
+        return AckLevel.PERSISTED;
+    }
+
+    private Vote vote() {
+        return new Vote("1", "123", VoteOption.SIM);
+    }
+}
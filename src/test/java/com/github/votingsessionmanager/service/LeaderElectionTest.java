@@ -0,0 +1,116 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Lease;
+import com.github.votingsessionmanager.repository.LeaseRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.timeout;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class LeaderElectionTest {
+
+    private static final Duration TTL = Duration.ofMillis(300);
+
+    @Mock
+    private LeaseRepository leaseRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private LeaderElection leaderElection;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        leaderElection = new LeaderElection(leaseRepository, meterRegistry);
+        ReflectionTestUtils.setField(leaderElection, "nodeId", "node-1");
+        ReflectionTestUtils.setField(leaderElection, "leaseTtl", TTL);
+        ReflectionTestUtils.setField(leaderElection, "heartbeatInterval", Duration.ofMillis(100));
+    }
+
+    @Test
+    public void shouldLeadOnceTheLeaseIsTaken() {
+        given(leaseRepository.acquire("job", "node-1", TTL)).willReturn(Optional.of(lease(3)));
+
+        LeaderElection.Leadership leadership = leaderElection.join("job");
+        assertFalse(leadership.isLeader());
+
+        leaderElection.heartbeat();
+
+        assertTrue(leadership.isLeader());
+        assertEquals(3, leadership.getToken());
+        assertEquals(1, meterRegistry.get("leader_election.leader").tag("job", "job").gauge().value());
+    }
+
+    @Test
+    public void shouldNotLeadWhileAnotherNodeHoldsTheLease() {
+        given(leaseRepository.acquire("job", "node-1", TTL)).willReturn(Optional.empty());
+
+        LeaderElection.Leadership leadership = leaderElection.join("job");
+        leaderElection.heartbeat();
+
+        assertFalse(leadership.isLeader());
+    }
+
+    @Test
+    public void shouldRenewTheLeaseUntilAnotherNodeTakesIt() {
+        given(leaseRepository.acquire("job", "node-1", TTL)).willReturn(Optional.of(lease(3)), Optional.empty());
+        given(leaseRepository.renew("job", "node-1", 3, TTL)).willReturn(true, false);
+
+        LeaderElection.Leadership leadership = leaderElection.join("job");
+        leaderElection.heartbeat();
+        leaderElection.heartbeat();
+
+        assertTrue(leadership.isLeader());
+
+        leaderElection.heartbeat();
+
+        assertFalse(leadership.isLeader());
+        BDDMockito.then(leaseRepository).should(BDDMockito.times(2)).acquire("job", "node-1", TTL);
+    }
+
+    @Test
+    public void shouldStepDownBeforeTheLeaseExpiresWhenHeartbeatsFail() throws InterruptedException {
+        given(leaseRepository.acquire("job", "node-1", TTL)).willReturn(Optional.of(lease(3)));
+        given(leaseRepository.renew("job", "node-1", 3, TTL)).willThrow(new DataAccessResourceFailureException("Timed out"));
+
+        LeaderElection.Leadership leadership = leaderElection.join("job");
+        leaderElection.heartbeat();
+        leaderElection.heartbeat();
+
+        assertTrue(leadership.isLeader());
+
+        Thread.sleep(TTL.minusMillis(50).toMillis());
+
+        assertFalse(leadership.isLeader());
+    }
+
+    @Test
+    public void shouldReleaseTheLeaseOnStop() throws InterruptedException {
+        given(leaseRepository.acquire("job", "node-1", TTL)).willReturn(Optional.of(lease(3)));
+        given(leaseRepository.renew("job", "node-1", 3, TTL)).willReturn(true);
+
+        leaderElection.start();
+        leaderElection.join("job");
+
+        BDDMockito.then(leaseRepository).should(timeout(2000)).acquire("job", "node-1", TTL);
+        leaderElection.stop();
+
+        BDDMockito.then(leaseRepository).should().release("job", "node-1", 3);
+    }
+
+    private Lease lease(long token) {
+        return new Lease("job", "node-1", token, LocalDateTime.now().plus(TTL));
+    }
+}
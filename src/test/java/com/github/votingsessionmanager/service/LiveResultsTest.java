@@ -0,0 +1,268 @@
+package com.github.votingsessionmanager.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.votingsessionmanager.domain.Agenda;
+import com.github.votingsessionmanager.domain.AgendaStatus;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.exception.IdNotFoundException;
+import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.github.votingsessionmanager.repository.SessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.ExecutorServiceAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class LiveResultsTest {
+
+    @Mock
+    private AgendaRepository agendaRepository;
+
+    @Mock
+    private SessionRepository sessionRepository;
+
+    private ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private LiveResults liveResults;
+
+    @BeforeEach
+    public void setUp() {
+        liveResults = new LiveResults(agendaRepository, sessionRepository, objectMapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(liveResults, "maxRate", 4);
+        ReflectionTestUtils.setField(liveResults, "resyncInterval", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(liveResults, "workers", new ExecutorServiceAdapter(new SyncTaskExecutor()));
+
+        given(sessionRepository.findByAgendaId("1")).willReturn(Collections.emptyList());
+    }
+
+    @Test
+    public void shouldSendSnapshotThenCoalescedTally() throws IOException {
+        given(agendaRepository.findById("1")).willReturn(Optional.of(agenda(AgendaStatus.OPENED, 10, 5)));
+
+        RecordingListener listener = new RecordingListener();
+        liveResults.subscribe("1", listener);
+
+        liveResults.voteAccepted("1", VoteOption.SIM);
+        liveResults.voteAccepted("1", VoteOption.SIM);
+        liveResults.voteAccepted("1", VoteOption.NAO);
+        liveResults.publish();
+        liveResults.publish();
+
+        assertEquals(2, listener.names.size());
+        assertEquals("snapshot", listener.names.get(0));
+        assertEquals(10, listener.data(0).get("yesCount").asLong());
+        assertEquals("tally", listener.names.get(1));
+        assertEquals(2, listener.data(1).get("yesDelta").asLong());
+        assertEquals(1, listener.data(1).get("noDelta").asLong());
+        assertEquals(12, listener.data(1).get("yesCount").asLong());
+        assertEquals(6, listener.data(1).get("noCount").asLong());
+    }
+
+    @Test
+    public void shouldLoadAgendaOnceForAllSubscribers() {
+        given(agendaRepository.findById("1")).willReturn(Optional.of(agenda(AgendaStatus.OPENED, 0, 0)));
+
+        List<RecordingListener> listeners = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            RecordingListener listener = new RecordingListener();
+            liveResults.subscribe("1", listener);
+            listeners.add(listener);
+        }
+
+        liveResults.voteAccepted("1", VoteOption.NAO);
+        liveResults.publish();
+
+        listeners.forEach(listener -> assertEquals(Collections.singletonList("tally"), listener.names.subList(1, listener.names.size())));
+        BDDMockito.then(agendaRepository).should().findById("1");
+    }
+
+    @Test
+    public void shouldPushStatusAndEndStreamsWhenAgendaCloses() throws IOException {
+        given(agendaRepository.findById("1")).willReturn(Optional.of(agenda(AgendaStatus.OPENED, 1, 0)), Optional.of(agenda(AgendaStatus.CLOSED, 2, 0)));
+
+        RecordingListener listener = new RecordingListener();
+        liveResults.subscribe("1", listener);
+
+        liveResults.statusChanged("1");
+        liveResults.publish();
+        liveResults.voteAccepted("1", VoteOption.SIM);
+        liveResults.publish();
+
+        assertEquals(2, listener.names.size());
+        assertEquals("status", listener.names.get(1));
+        assertEquals("CLOSED", listener.data(1).get("agendaStatus").asText());
+        assertEquals(2, listener.data(1).get("yesCount").asLong());
+        assertTrue(listener.completed);
+    }
+
+    @Test
+    public void shouldNotCountTwiceVotesPublishedWhileReloading() throws IOException {
+        given(agendaRepository.findById("1")).willReturn(Optional.of(agenda(AgendaStatus.OPENED, 10, 0))).willAnswer(invocation -> {
+            liveResults.voteAccepted("1", VoteOption.SIM);
+            return Optional.of(agenda(AgendaStatus.OPENED, 11, 0));
+        });
+
+        RecordingListener listener = new RecordingListener();
+        liveResults.subscribe("1", listener);
+
+        liveResults.statusChanged("1");
+        liveResults.publish();
+        liveResults.voteAccepted("1", VoteOption.SIM);
+        liveResults.publish();
+
+        assertEquals(3, listener.names.size());
+        assertEquals(11, listener.data(1).get("yesCount").asLong());
+        assertEquals(1, listener.data(2).get("yesDelta").asLong());
+        assertEquals(12, listener.data(2).get("yesCount").asLong());
+    }
+
+    @Test
+    public void shouldRetryReloadRejectedByBusyWorkers() {
+        given(agendaRepository.findById("1")).willReturn(Optional.of(agenda(AgendaStatus.OPENED, 0, 0)));
+
+        RecordingListener listener = new RecordingListener();
+        liveResults.subscribe("1", listener);
+        ReflectionTestUtils.setField(liveResults, "workers", new ExecutorServiceAdapter(task -> {
+            throw new RejectedExecutionException();
+        }));
+
+        liveResults.statusChanged("1");
+        liveResults.publish();
+
+        ReflectionTestUtils.setField(liveResults, "workers", new ExecutorServiceAdapter(new SyncTaskExecutor()));
+        liveResults.publish();
+
+        assertEquals(Arrays.asList("snapshot", "status"), listener.names);
+    }
+
+    @Test
+    public void shouldDropFailingSubscribers() {
+        given(agendaRepository.findById("1")).willReturn(Optional.of(agenda(AgendaStatus.OPENED, 0, 0)));
+
+        RecordingListener failing = new RecordingListener();
+        RecordingListener healthy = new RecordingListener();
+        liveResults.subscribe("1", failing);
+        liveResults.subscribe("1", healthy);
+        failing.failing = true;
+
+        liveResults.voteAccepted("1", VoteOption.SIM);
+        liveResults.publish();
+        liveResults.voteAccepted("1", VoteOption.SIM);
+        liveResults.publish();
+
+        assertEquals(1, failing.names.size());
+        assertEquals(3, healthy.names.size());
+    }
+
+    @Test
+    public void shouldNotWaitForSlowAsyncSubscribers() throws Exception {
+        ExecutorService workers = Executors.newCachedThreadPool();
+        ReflectionTestUtils.setField(liveResults, "workers", workers);
+        given(agendaRepository.findById("1")).willReturn(Optional.of(agenda(AgendaStatus.OPENED, 0, 0)));
+
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener slow = new RecordingListener() {
+            @Override
+            public void onEvent(String name, String data) throws IOException {
+                sending.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+
+                super.onEvent(name, data);
+            }
+        };
+        RecordingListener healthy = new RecordingListener();
+
+        try {
+            liveResults.subscribeAsync("1", slow);
+            liveResults.subscribe("1", healthy);
+            sending.await();
+
+            for (int i = 0; i < 100; i++) {
+                liveResults.voteAccepted("1", VoteOption.SIM);
+                liveResults.publish();
+            }
+
+            assertEquals(101, healthy.names.size());
+
+            release.countDown();
+            workers.shutdown();
+            assertTrue(workers.awaitTermination(5, TimeUnit.SECONDS));
+
+            // The snapshot being sent and the 64 pending tallies
+            assertEquals(65, slow.names.size());
+            assertTrue(slow.completed);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldFailToSubscribeToUnknownAgenda() {
+        given(agendaRepository.findById("2")).willReturn(Optional.empty());
+
+        assertThrows(IdNotFoundException.class, () -> liveResults.subscribe("2", new RecordingListener()));
+    }
+
+    private Agenda agenda(AgendaStatus status, long yesCount, long noCount) {
+        Agenda agenda = new Agenda("1", "Test");
+        agenda.setStatus(status);
+        agenda.setYesCount(yesCount);
+        agenda.setNoCount(noCount);
+        return agenda;
+    }
+
+    private class RecordingListener implements LiveResults.Listener {
+        private final List<String> names = new ArrayList<>();
+        private final List<String> data = new ArrayList<>();
+        private boolean failing;
+        private boolean completed;
+
+        @Override
+        public void onEvent(String name, String data) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+
+            this.names.add(name);
+            this.data.add(data);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        private JsonNode data(int index) throws IOException {
+            return objectMapper.readTree(data.get(index));
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.*;
+import com.github.votingsessionmanager.exception.*;
+import com.github.votingsessionmanager.feign.ReactiveCPFValidator;
+import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.github.votingsessionmanager.repository.ReactiveAgendaRepository;
+import com.github.votingsessionmanager.repository.ReactiveSessionRepository;
+import com.github.votingsessionmanager.repository.ReactiveVoteRepository;
+import com.github.votingsessionmanager.repository.SessionRepository;
+import com.github.votingsessionmanager.service.VotingMetrics.Rejection;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.inOrder;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class ReactiveVotingServiceTest {
+
+    @Mock
+    private ReactiveAgendaRepository agendaRepository;
+
+    @Mock
+    private ReactiveSessionRepository sessionRepository;
+
+    @Mock
+    private ReactiveVoteRepository voteRepository;
+
+    @Mock
+    private ReactiveCPFValidator cpfValidator;
+
+    @Mock
+    private SessionExpiryScheduler sessionExpiryScheduler;
+
+    @Mock
+    private VotingService votingService;
+
+    @Mock
+    private AgendaRepository blockingAgendaRepository;
+
+    @Mock
+    private SessionRepository blockingSessionRepository;
+
+    @Mock
+    private VotingMetrics votingMetrics;
+
+    @Mock
+    private LiveResults liveResults;
+
+    @Mock
+    private IdempotencyStore idempotencyStore;
+
+    @InjectMocks
+    private ReactiveVotingService service;
+
+    @Test
+    public void shouldFailWhenAgendaIdIsNotFound() {
+        given(agendaRepository.findById("1")).willReturn(Mono.empty());
+
+        assertThrows(IdNotFoundException.class, () -> service.findAgendaById("1").block());
+    }
+
+    @Test
+    public void shouldRegisterVote() {
+        Vote vote = new Vote("1", "123", VoteOption.SIM);
+        givenOpenedSession("1", "2");
+
+        given(cpfValidator.validateCPF("123")).willReturn(Mono.just(new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE)));
+        given(voteRepository.insertIntoOpenedSession(vote)).willReturn(Mono.just(VoteOutcome.ACCEPTED));
+
+        Vote registered = service.registerVote(vote, "1").block();
+
+        assertEquals("1", registered.getAgendaId());
+        assertEquals("2", registered.getSessionId());
+    }
+
+    @Test
+    public void shouldRegisterVoteWithIdempotencyKey() {
+        Vote vote = new Vote("1", "123", VoteOption.SIM);
+        givenOpenedSession("1", "2");
+
+        given(cpfValidator.validateCPF("123")).willReturn(Mono.just(new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE)));
+        given(voteRepository.insertIntoOpenedSession(vote)).willReturn(Mono.just(VoteOutcome.ACCEPTED));
+        given(idempotencyStore.register(BDDMockito.eq("key"), BDDMockito.eq("1"), BDDMockito.eq(vote), BDDMockito.any()))
+                .willAnswer(invocation -> {
+                    Supplier<AckLevel> registration = invocation.getArgument(3);
+                    return new VoteReceipt("key", "1", vote, registration.get(), LocalDateTime.now().plusHours(1));
+                });
+
+        Vote registered = service.registerVote(vote, "1", "key").block();
+
+        assertEquals("2", registered.getSessionId());
+        BDDMockito.then(voteRepository).should().insertIntoOpenedSession(vote);
+    }
+
+    @Test
+    public void shouldFailWhenMemberAlreadyVoted() {
+        Vote vote = new Vote("1", "123", VoteOption.SIM);
+        givenOpenedSession("1", "2");
+
+        given(cpfValidator.validateCPF("123")).willReturn(Mono.just(new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE)));
+        given(voteRepository.insertIntoOpenedSession(vote)).willReturn(Mono.just(VoteOutcome.DUPLICATE));
+
+        InvalidVoteException e = assertThrows(InvalidVoteException.class, () -> service.registerVote(vote, "1").block());
+        assertEquals("Member already voted.", e.getMessage());
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.DUPLICATE);
+    }
+
+    @Test
+    public void shouldFailWhenMemberIsUnableToVote() {
+        Vote vote = new Vote("1", "123", VoteOption.SIM);
+        givenOpenedSession("1", "2");
+
+        given(cpfValidator.validateCPF("123")).willReturn(Mono.just(new CPFStatusDTO(VoterStatus.UNABLE_TO_VOTE)));
+
+        assertThrows(InvalidVoteException.class, () -> service.registerVote(vote, "1").block());
+        BDDMockito.then(voteRepository).shouldHaveNoInteractions();
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.INELIGIBLE);
+    }
+
+    @Test
+    public void shouldFailWhenCpfIsNotFound() {
+        Vote vote = new Vote("1", "123", VoteOption.SIM);
+        givenOpenedSession("1", "2");
+
+        given(cpfValidator.validateCPF("123")).willReturn(Mono.error(WebClientResponseException.create(404, "Not Found", null, null, null)));
+
+        InvalidVoteException e = assertThrows(InvalidVoteException.class, () -> service.registerVote(vote, "1").block());
+        assertEquals("Invalid CPF.", e.getMessage());
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.INVALID_CPF);
+    }
+
+    @Test
+    public void shouldFailWhenThereIsNoOpenedSession() {
+        Vote vote = new Vote("1", "123", VoteOption.SIM);
+        Session expired = new Session("2", "1", 1, SessionStatus.OPENED);
+        expired.setEndDate(LocalDateTime.now().minusMinutes(1));
+
+        given(agendaRepository.findById("1")).willReturn(Mono.just(openedAgenda("1")));
+        given(sessionRepository.findSummariesByAgendaId("1")).willReturn(Flux.just(expired));
+        given(cpfValidator.validateCPF("123")).willReturn(Mono.just(new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE)));
+
+        assertThrows(SessionStatusException.class, () -> service.registerVote(vote, "1").block());
+        BDDMockito.then(voteRepository).shouldHaveNoInteractions();
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.CLOSED_SESSION);
+    }
+
+    @Test
+    public void shouldFailWhenVoteIsMissingFields() {
+        assertThrows(RequiredFieldException.class, () -> service.registerVote(new Vote("1", "123", null), "1").block());
+        BDDMockito.then(cpfValidator).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void shouldNotCreateSessionWhenOneIsOpened() {
+        givenOpenedSession("1", "2");
+
+        assertThrows(SessionStatusException.class, () -> service.createSession(new Session(null, "1")).block());
+        BDDMockito.then(sessionRepository).should(BDDMockito.never()).save(BDDMockito.any(Session.class));
+    }
+
+    @Test
+    public void shouldCreateAndScheduleSession() {
+        given(agendaRepository.findById("1")).willReturn(Mono.just(openedAgenda("1")));
+        given(sessionRepository.findSummariesByAgendaId("1")).willReturn(Flux.empty());
+        given(sessionRepository.save(BDDMockito.any(Session.class))).willAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        Session created = service.createSession(new Session(null, "1")).block();
+
+        assertEquals(SessionStatus.OPENED, created.getStatus());
+        assertEquals(1, created.getDuration());
+        assertEquals(created.getStartDate().plusMinutes(1), created.getEndDate());
+        BDDMockito.then(sessionExpiryScheduler).should().schedule(created);
+    }
+
+    @Test
+    public void shouldCloseSessionsBeforeAgenda() {
+        Agenda closed = openedAgenda("1");
+        closed.setStatus(AgendaStatus.CLOSED);
+        closed.setYesCount(2);
+
+        given(agendaRepository.findById("1")).willReturn(Mono.just(openedAgenda("1")));
+        given(sessionRepository.closeOpenedSessions("1")).willReturn(Mono.just(1L));
+        given(agendaRepository.closeAgenda("1")).willReturn(Mono.just(closed));
+        given(agendaRepository.setResult("1", "SIM")).willReturn(Mono.empty());
+        given(votingService.calculateResult(closed)).willReturn("SIM");
+
+        Agenda actual = service.closeAgenda(closedStatus(), "1").block();
+
+        assertEquals("SIM", actual.getResult());
+
+        InOrder order = inOrder(sessionRepository, agendaRepository);
+        order.verify(sessionRepository).closeOpenedSessions("1");
+        order.verify(agendaRepository).closeAgenda("1");
+        order.verify(agendaRepository).setResult("1", "SIM");
+    }
+
+    @Test
+    public void shouldFailToCloseAgendaClosedConcurrently() {
+        given(agendaRepository.findById("1")).willReturn(Mono.just(openedAgenda("1")));
+        given(sessionRepository.closeOpenedSessions("1")).willReturn(Mono.just(0L));
+        given(agendaRepository.closeAgenda("1")).willReturn(Mono.empty());
+
+        assertThrows(AgendaStatusException.class, () -> service.closeAgenda(closedStatus(), "1").block());
+    }
+
+    private void givenOpenedSession(String agendaId, String sessionId) {
+        Session session = new Session(sessionId, agendaId, 1, SessionStatus.OPENED);
+        session.setEndDate(LocalDateTime.now().plusMinutes(1));
+
+        given(agendaRepository.findById(agendaId)).willReturn(Mono.just(openedAgenda(agendaId)));
+        given(sessionRepository.findSummariesByAgendaId(agendaId)).willReturn(Flux.just(session));
+    }
+
+    private AgendaStatusDTO closedStatus() {
+        AgendaStatusDTO update = new AgendaStatusDTO();
+        update.setAgendaStatus(AgendaStatus.CLOSED);
+        return update;
+    }
+
+    private Agenda openedAgenda(String agendaId) {
+        Agenda agenda = new Agenda(agendaId, "Test");
+        agenda.setStatus(AgendaStatus.OPENED);
+        return agenda;
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Session;
+import com.github.votingsessionmanager.domain.SessionStatus;
+import com.github.votingsessionmanager.repository.SessionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class SessionExpirySchedulerTest {
+
+    @Mock
+    private SessionRepository sessionRepository;
+
+    @Mock
+    private LiveResults liveResults;
+
+    @Mock
+    private LeaderElection leaderElection;
+
+    @Mock
+    private LeaderElection.Leadership leadership;
+
+    private SessionExpiryScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new SessionExpiryScheduler(sessionRepository, liveResults, leaderElection);
+        ReflectionTestUtils.setField(scheduler, "batchSize", 100);
+        ReflectionTestUtils.setField(scheduler, "sweepInterval", Duration.ofMinutes(1));
+
+        given(leaderElection.join("session-expiry")).willReturn(leadership);
+        given(leadership.isLeader()).willReturn(true);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        scheduler.stop();
+    }
+
+    @Test
+    public void shouldCloseSessionsExpiringTogetherInOneUpdate() {
+        given(sessionRepository.findSummariesByStatus(SessionStatus.OPENED)).willReturn(Collections.emptyList());
+
+        scheduler.start();
+
+        LocalDateTime endDate = LocalDateTime.now().plusNanos(200_000_000);
+        scheduler.schedule(session("1", endDate));
+        scheduler.schedule(session("2", endDate));
+
+        BDDMockito.then(sessionRepository).should(timeout(2000)).closeExpiredSessions(
+                BDDMockito.argThat(sessionIds -> sessionIds.size() == 2 && sessionIds.containsAll(Arrays.asList("1", "2"))),
+                BDDMockito.any(LocalDateTime.class));
+    }
+
+    @Test
+    public void shouldScheduleOpenedSessionsLoadedOnStartup() {
+        given(sessionRepository.findSummariesByStatus(SessionStatus.OPENED)).willReturn(Collections.singletonList(session("1", LocalDateTime.now().plusNanos(100_000_000))));
+
+        scheduler.start();
+
+        BDDMockito.then(sessionRepository).should(timeout(2000)).closeExpiredSessions(BDDMockito.any(LocalDateTime.class));
+        BDDMockito.then(sessionRepository).should(timeout(2000)).closeExpiredSessions(BDDMockito.eq(Collections.singletonList("1")), BDDMockito.any(LocalDateTime.class));
+    }
+
+    @Test
+    public void shouldOnlyCloseSessionsCreatedHereWhenNotLeading() {
+        given(leadership.isLeader()).willReturn(false);
+
+        scheduler.start();
+        scheduler.schedule(session("1", LocalDateTime.now().plusNanos(100_000_000)));
+
+        BDDMockito.then(sessionRepository).should(timeout(2000)).closeExpiredSessions(BDDMockito.eq(Collections.singletonList("1")), BDDMockito.any(LocalDateTime.class));
+        BDDMockito.then(sessionRepository).should(never()).closeExpiredSessions(BDDMockito.any(LocalDateTime.class));
+        BDDMockito.then(sessionRepository).should(never()).findSummariesByStatus(SessionStatus.OPENED);
+    }
+
+    @Test
+    public void shouldScheduleAgainSessionsThatFailedToClose() {
+        given(leadership.isLeader()).willReturn(false);
+        given(sessionRepository.closeExpiredSessions(BDDMockito.anyCollection(), BDDMockito.any(LocalDateTime.class)))
+                .willThrow(new DataAccessResourceFailureException("Connection refused"))
+                .willReturn(1L);
+
+        scheduler.start();
+        scheduler.schedule(session("1", LocalDateTime.now().plusNanos(100_000_000)));
+
+        BDDMockito.then(sessionRepository).should(timeout(2500).times(2)).closeExpiredSessions(BDDMockito.eq(Collections.singletonList("1")), BDDMockito.any(LocalDateTime.class));
+        BDDMockito.then(liveResults).should(timeout(500)).statusChanged("1");
+    }
+
+    @Test
+    public void shouldDropLoadedSessionsWhenLeadershipIsLost() throws InterruptedException {
+        given(leadership.isLeader()).willReturn(true, false);
+        given(sessionRepository.findSummariesByStatus(SessionStatus.OPENED)).willReturn(Collections.singletonList(session("1", LocalDateTime.now().plusSeconds(3))));
+
+        scheduler.start();
+
+        awaitScheduledCount(1);
+        awaitScheduledCount(0);
+        BDDMockito.then(sessionRepository).should(never()).closeExpiredSessions(BDDMockito.anyCollection(), BDDMockito.any(LocalDateTime.class));
+    }
+
+    private void awaitScheduledCount(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2500);
+
+        while (scheduler.getScheduledCount() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(expected, scheduler.getScheduledCount());
+    }
+
+    private Session session(String id, LocalDateTime endDate) {
+        Session session = new Session(id, "1", 1, SessionStatus.OPENED);
+        session.setEndDate(endDate);
+        return session;
+    }
+}
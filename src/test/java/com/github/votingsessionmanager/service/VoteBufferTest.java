@@ -0,0 +1,179 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+import com.github.votingsessionmanager.exception.PendingVotesException;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class VoteBufferTest {
+
+    @Mock
+    private VoteRepository voteRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private VoteBuffer buffer;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        buffer = new VoteBuffer(voteRepository, new VoteJournal(voteRepository), meterRegistry);
+        ReflectionTestUtils.setField(buffer, "enabled", true);
+        ReflectionTestUtils.setField(buffer, "capacity", 10);
+        ReflectionTestUtils.setField(buffer, "batchSize", 2);
+        ReflectionTestUtils.setField(buffer, "flushInterval", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(buffer, "drainTimeout", Duration.ofSeconds(5));
+        buffer.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        buffer.stop();
+    }
+
+    @Test
+    public void shouldFlushBufferedVotesInOneBatch() throws InterruptedException {
+        Vote first = vote("1", "123");
+        Vote second = vote("2", "456");
+
+        given(voteRepository.insertAllIntoSessionOpenedAt(BDDMockito.eq("1"), BDDMockito.eq("1"), BDDMockito.anyList(), BDDMockito.anyList()))
+                .willReturn(Arrays.asList(VoteOutcome.ACCEPTED, VoteOutcome.DUPLICATE));
+
+        CompletableFuture<VoteOutcome> firstOutcome = buffer.offer(first);
+        CompletableFuture<VoteOutcome> secondOutcome = buffer.offer(second);
+
+        assertEquals(VoteOutcome.ACCEPTED, firstOutcome.join());
+        assertEquals(VoteOutcome.DUPLICATE, secondOutcome.join());
+
+        buffer.stop();
+
+        assertEquals(1, meterRegistry.get("voting.vote_buffer.flushes").timer().count());
+        assertEquals(2, meterRegistry.get("voting.vote_buffer.batch_size").summary().totalAmount());
+        assertEquals(0, meterRegistry.get("voting.vote_buffer.queue_depth").gauge().value());
+    }
+
+    @Test
+    public void shouldRejectPendingDuplicateRightAway() {
+        given(voteRepository.insertAllIntoSessionOpenedAt(BDDMockito.eq("1"), BDDMockito.eq("1"), BDDMockito.anyList(), BDDMockito.anyList()))
+                .willAnswer(invocation -> Arrays.asList(VoteOutcome.ACCEPTED));
+
+        CompletableFuture<VoteOutcome> first = buffer.offer(vote("1", "123"));
+        CompletableFuture<VoteOutcome> sameCpf = buffer.offer(vote("2", "123"));
+
+        assertTrue(sameCpf.isDone());
+        assertEquals(VoteOutcome.DUPLICATE, sameCpf.join());
+        assertEquals(VoteOutcome.ACCEPTED, first.join());
+    }
+
+    @Test
+    public void shouldDrainBufferOnStop() throws InterruptedException {
+        given(voteRepository.insertAllIntoSessionOpenedAt(BDDMockito.eq("1"), BDDMockito.eq("1"), BDDMockito.anyList(), BDDMockito.anyList()))
+                .willAnswer(invocation -> {
+                    List<Vote> votes = invocation.getArgument(2);
+                    return Collections.nCopies(votes.size(), VoteOutcome.ACCEPTED);
+                });
+
+        CompletableFuture<VoteOutcome> outcome = buffer.offer(vote("1", "123"));
+        buffer.stop();
+
+        assertTrue(outcome.isDone());
+        assertEquals(VoteOutcome.ACCEPTED, outcome.join());
+    }
+
+    @Test
+    public void shouldNotBufferVotesOfFencedAgenda() {
+        buffer.fence("1");
+
+        assertNull(buffer.offer(vote("1", "123")));
+        assertNull(buffer.offer(vote("1", "123")));
+    }
+
+    @Test
+    public void shouldForgetAgendaOnceItsVotesAreFlushed() {
+        given(voteRepository.insertAllIntoSessionOpenedAt(BDDMockito.eq("1"), BDDMockito.eq("1"), BDDMockito.anyList(), BDDMockito.anyList()))
+                .willAnswer(invocation -> Arrays.asList(VoteOutcome.ACCEPTED));
+
+        assertEquals(VoteOutcome.ACCEPTED, buffer.offer(vote("1", "123")).join());
+        buffer.awaitAgendaFlushed("1");
+
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(buffer, "pendingKeys")).isEmpty());
+    }
+
+    @Test
+    public void shouldFlushQueuedVotesOfTheAgendaWhenTheFlusherIsTooSlow() throws InterruptedException {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        given(voteRepository.insertAllIntoSessionOpenedAt(BDDMockito.eq("2"), BDDMockito.eq("1"), BDDMockito.anyList(), BDDMockito.anyList()))
+                .willAnswer(invocation -> {
+                    flushing.countDown();
+                    release.await();
+                    return Arrays.asList(VoteOutcome.ACCEPTED);
+                });
+        given(voteRepository.insertAllIntoSessionOpenedAt(BDDMockito.eq("1"), BDDMockito.eq("1"), BDDMockito.anyList(), BDDMockito.anyList()))
+                .willAnswer(invocation -> Arrays.asList(VoteOutcome.ACCEPTED));
+        ReflectionTestUtils.setField(buffer, "drainTimeout", Duration.ofMillis(100));
+
+        Vote otherAgenda = vote("1", "123");
+        otherAgenda.setAgendaId("2");
+        buffer.offer(otherAgenda);
+        flushing.await();
+        CompletableFuture<VoteOutcome> outcome = buffer.offer(vote("2", "456"));
+
+        try {
+            buffer.awaitAgendaFlushed("1");
+            assertTrue(outcome.isDone());
+            assertEquals(VoteOutcome.ACCEPTED, outcome.join());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void shouldFailAwaitingAgendaWhoseVotesAreStillBeingFlushed() throws InterruptedException {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        given(voteRepository.insertAllIntoSessionOpenedAt(BDDMockito.eq("1"), BDDMockito.eq("1"), BDDMockito.anyList(), BDDMockito.anyList()))
+                .willAnswer(invocation -> {
+                    flushing.countDown();
+                    release.await();
+                    return Arrays.asList(VoteOutcome.ACCEPTED);
+                });
+        ReflectionTestUtils.setField(buffer, "drainTimeout", Duration.ofMillis(100));
+
+        buffer.offer(vote("1", "123"));
+        flushing.await();
+
+        try {
+            assertThrows(PendingVotesException.class, () -> buffer.awaitAgendaFlushed("1"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private Vote vote(String memberId, String cpf) {
+        Vote vote = new Vote(memberId, cpf, VoteOption.SIM);
+        vote.setAgendaId("1");
+        vote.setSessionId("1");
+        return vote;
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class VoteJournalTest {
+
+    @Mock
+    private VoteRepository voteRepository;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void setUp() {
+        given(voteRepository.insertAllIntoSessionOpenedAt(BDDMockito.anyString(), BDDMockito.anyString(), BDDMockito.anyList(), BDDMockito.anyList()))
+                .willAnswer(invocation -> {
+                    List<Vote> votes = invocation.getArgument(2);
+                    return Collections.nCopies(votes.size(), VoteOutcome.ACCEPTED);
+                });
+    }
+
+    @Test
+    public void shouldReplayUnshippedVotesOnStartup() throws Exception {
+        VoteJournal journal = journal();
+        journal.start();
+        LocalDateTime acceptedAt = LocalDateTime.of(2020, 1, 1, 10, 0, 0, 123_000_000);
+        journal.append(vote("1", "123"), acceptedAt).join();
+        journal.append(vote("2", "456"), acceptedAt.plusSeconds(1)).join();
+        journal.stop();
+
+        assertEquals(1, segments().size());
+
+        VoteJournal restarted = journal();
+        restarted.start();
+
+        try {
+            ArgumentCaptor<List<Vote>> votes = ArgumentCaptor.forClass(List.class);
+            BDDMockito.then(voteRepository).should().insertAllIntoSessionOpenedAt(BDDMockito.eq("1"), BDDMockito.eq("1"), votes.capture(), BDDMockito.eq(Arrays.asList(acceptedAt, acceptedAt.plusSeconds(1))));
+            assertEquals(2, votes.getValue().size());
+            assertEquals("123", votes.getValue().get(0).getMemberCPF());
+            assertEquals("vote-1", votes.getValue().get(0).getId());
+            assertEquals(VoteOption.NAO, votes.getValue().get(1).getVoteOption());
+            assertTrue(segments().isEmpty());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    @Test
+    public void shouldDeleteSegmentOnceAllVotesAreShipped() throws Exception {
+        VoteJournal journal = journal();
+        journal.start();
+        VoteJournal.Segment segment = journal.append(vote("1", "123"), LocalDateTime.now()).join();
+        journal.shipped(segment);
+        journal.stop();
+
+        assertTrue(segments().isEmpty());
+    }
+
+    @Test
+    public void shouldKeepSegmentWhoseReplayFailed() throws Exception {
+        VoteJournal journal = journal();
+        journal.start();
+        journal.append(vote("1", "123"), LocalDateTime.now()).join();
+        journal.stop();
+
+        given(voteRepository.insertAllIntoSessionOpenedAt(BDDMockito.anyString(), BDDMockito.anyString(), BDDMockito.anyList(), BDDMockito.anyList()))
+                .willThrow(new DataAccessResourceFailureException("Connection refused"));
+
+        VoteJournal restarted = journal();
+        restarted.start();
+        restarted.stop();
+
+        assertEquals(1, segments().stream().filter(segment -> segment.toString().endsWith(".journal")).count());
+    }
+
+    @Test
+    public void shouldRollOverToANewSegmentAfterAFailedWrite() throws Exception {
+        VoteJournal journal = journal();
+        journal.start();
+
+        try {
+            VoteJournal.Segment first = journal.append(vote("1", "123"), LocalDateTime.now()).join();
+            ((FileChannel) ReflectionTestUtils.getField(first, "channel")).close();
+
+            assertThrows(CompletionException.class, () -> journal.append(vote("2", "456"), LocalDateTime.now()).join());
+            assertNotSame(first, journal.append(vote("2", "456"), LocalDateTime.now()).join());
+        } finally {
+            journal.stop();
+        }
+    }
+
+    @Test
+    public void shouldQuarantineSegmentWithAnUnreadableRecord() throws Exception {
+        VoteJournal journal = journal();
+        journal.start();
+        journal.append(vote("1", "123"), LocalDateTime.now()).join();
+        journal.stop();
+
+        Files.write(segments().get(0), new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        VoteJournal restarted = journal();
+        restarted.start();
+
+        try {
+            ArgumentCaptor<List<Vote>> votes = ArgumentCaptor.forClass(List.class);
+            BDDMockito.then(voteRepository).should().insertAllIntoSessionOpenedAt(BDDMockito.eq("1"), BDDMockito.eq("1"), votes.capture(), BDDMockito.anyList());
+            assertEquals(1, votes.getValue().size());
+            assertEquals(1, segments().size());
+            assertTrue(segments().get(0).toString().endsWith(".journal.corrupt"));
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    private VoteJournal journal() {
+        VoteJournal journal = new VoteJournal(voteRepository);
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", directory.toString());
+        ReflectionTestUtils.setField(journal, "segmentSize", 1024 * 1024L);
+        return journal;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toFile().length() > 0).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Vote vote(String memberId, String cpf) {
+        Vote vote = new Vote(memberId, cpf, memberId.equals("1") ? VoteOption.SIM : VoteOption.NAO);
+        vote.setId("vote-" + memberId);
+        vote.setAgendaId("1");
+        vote.setSessionId("1");
+        return vote;
+    }
+}
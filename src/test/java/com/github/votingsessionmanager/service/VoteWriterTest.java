@@ -0,0 +1,249 @@
+package com.github.votingsessionmanager.service;
+
+import com.github.votingsessionmanager.domain.Vote;
+import com.github.votingsessionmanager.domain.VoteOption;
+import com.github.votingsessionmanager.domain.VoteOutcome;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
+public class VoteWriterTest {
+
+    private static final int AGENDAS = 4;
+    private static final int MEMBERS = 250;
+    private static final int VOTES_PER_MEMBER = 4;
+
+    @Mock
+    private VoteRepository voteRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private VoteWriter writer;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        writer = new VoteWriter(voteRepository, meterRegistry);
+        ReflectionTestUtils.setField(writer, "stripes", 256);
+        ReflectionTestUtils.setField(writer, "maxBatchSize", 500);
+        writer.start();
+    }
+
+    @Test
+    public void shouldStoreEachMemberOnceUnderConcurrentVotes() throws Exception {
+        Map<String, UnsafeStore> stores = new ConcurrentHashMap<>();
+        AtomicBoolean overlapped = new AtomicBoolean();
+
+        for (int agenda = 0; agenda < AGENDAS; agenda++) {
+            stores.put(String.valueOf(agenda), new UnsafeStore());
+        }
+
+        given(voteRepository.insertIntoOpenedSession(BDDMockito.any(Vote.class))).willAnswer(invocation -> {
+            Vote vote = invocation.getArgument(0);
+            return stores.get(vote.getAgendaId()).insert(Collections.singletonList(vote), overlapped).get(0);
+        });
+        given(voteRepository.insertAllIntoOpenedSession(BDDMockito.anyString(), BDDMockito.anyString(), BDDMockito.anyList()))
+                .willAnswer(invocation -> stores.get(invocation.<String>getArgument(0)).insert(invocation.getArgument(2), overlapped));
+
+        ExecutorService voters = Executors.newFixedThreadPool(32);
+        List<Future<VoteOutcome>> outcomes = new ArrayList<>();
+
+        for (int member = 0; member < MEMBERS; member++) {
+            for (int repeat = 0; repeat < VOTES_PER_MEMBER; repeat++) {
+                for (int agenda = 0; agenda < AGENDAS; agenda++) {
+                    Vote vote = vote(String.valueOf(agenda), "member-" + member, member % 2 == 0 ? VoteOption.SIM : VoteOption.NAO);
+                    outcomes.add(voters.submit(() -> writer.insert(vote)));
+                }
+            }
+        }
+
+        int accepted = 0;
+        int duplicates = 0;
+
+        for (Future<VoteOutcome> outcome : outcomes) {
+            if (outcome.get(30, TimeUnit.SECONDS).equals(VoteOutcome.ACCEPTED)) {
+                accepted++;
+            } else {
+                duplicates++;
+            }
+        }
+
+        voters.shutdown();
+
+        assertFalse(overlapped.get());
+        assertEquals(AGENDAS * MEMBERS, accepted);
+        assertEquals(AGENDAS * MEMBERS * (VOTES_PER_MEMBER - 1), duplicates);
+
+        for (UnsafeStore store : stores.values()) {
+            assertEquals(MEMBERS, store.votes.size());
+            assertEquals(MEMBERS / 2, store.yesCount);
+            assertEquals(MEMBERS / 2, store.noCount);
+        }
+
+        assertEquals(outcomes.size(), (long) meterRegistry.get("voting.vote_writer.batch_size").summary().totalAmount());
+        assertTrue(meterRegistry.get("voting.vote_writer.lock_waits").timer().count() > 0);
+    }
+
+    @Test
+    public void shouldWriteDifferentAgendasInParallel() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        given(voteRepository.insertIntoOpenedSession(BDDMockito.any(Vote.class))).willAnswer(invocation -> {
+            if (invocation.<Vote>getArgument(0).getAgendaId().equals("1")) {
+                blocked.countDown();
+                release.await();
+            }
+
+            return VoteOutcome.ACCEPTED;
+        });
+
+        ExecutorService voters = Executors.newSingleThreadExecutor();
+        Future<VoteOutcome> slow = voters.submit(() -> writer.insert(vote("1", "member-1", VoteOption.SIM)));
+        blocked.await();
+
+        assertEquals(VoteOutcome.ACCEPTED, writer.insert(vote("2", "member-1", VoteOption.SIM)));
+
+        release.countDown();
+        assertEquals(VoteOutcome.ACCEPTED, slow.get(5, TimeUnit.SECONDS));
+        voters.shutdown();
+    }
+
+    @Test
+    public void shouldStoreVotesQueuedWhileTheAgendaIsBusyInOneBatch() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        given(voteRepository.insertIntoOpenedSession(BDDMockito.any(Vote.class))).willAnswer(invocation -> {
+            blocked.countDown();
+            release.await();
+            return VoteOutcome.ACCEPTED;
+        });
+        given(voteRepository.insertAllIntoOpenedSession(BDDMockito.eq("1"), BDDMockito.eq("session-1"), BDDMockito.anyList()))
+                .willAnswer(invocation -> Collections.nCopies(invocation.<List<Vote>>getArgument(2).size(), VoteOutcome.ACCEPTED));
+
+        ExecutorService voters = Executors.newFixedThreadPool(6);
+        List<Future<VoteOutcome>> outcomes = new ArrayList<>();
+        outcomes.add(voters.submit(() -> writer.insert(vote("1", "member-0", VoteOption.SIM))));
+        blocked.await();
+
+        List<Thread> waiting = new ArrayList<>();
+
+        for (int member = 1; member <= 5; member++) {
+            Vote vote = vote("1", "member-" + member, VoteOption.NAO);
+            CountDownLatch started = new CountDownLatch(1);
+            Thread[] thread = new Thread[1];
+
+            outcomes.add(voters.submit(() -> {
+                thread[0] = Thread.currentThread();
+                started.countDown();
+                return writer.insert(vote);
+            }));
+
+            started.await();
+            waiting.add(thread[0]);
+        }
+
+        awaitParked(waiting);
+        release.countDown();
+
+        for (Future<VoteOutcome> outcome : outcomes) {
+            assertEquals(VoteOutcome.ACCEPTED, outcome.get(5, TimeUnit.SECONDS));
+        }
+
+        voters.shutdown();
+
+        BDDMockito.then(voteRepository).should().insertAllIntoOpenedSession(BDDMockito.eq("1"), BDDMockito.eq("session-1"), BDDMockito.argThat(votes -> votes.size() == 5));
+        assertEquals(5, meterRegistry.get("voting.vote_writer.batch_size").summary().max());
+    }
+
+    @Test
+    public void shouldFailEveryVoteOfAFailedWrite() {
+        given(voteRepository.insertIntoOpenedSession(BDDMockito.any(Vote.class))).willThrow(new DataAccessResourceFailureException("Timed out"));
+
+        assertThrows(DataAccessResourceFailureException.class, () -> writer.insert(vote("1", "member-1", VoteOption.SIM)));
+        given(voteRepository.insertIntoOpenedSession(BDDMockito.any(Vote.class))).willReturn(VoteOutcome.ACCEPTED);
+        assertEquals(VoteOutcome.ACCEPTED, writer.insert(vote("1", "member-1", VoteOption.SIM)));
+    }
+
+    private void awaitParked(List<Thread> threads) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (!threads.stream().allMatch(thread -> thread.getState().equals(Thread.State.WAITING))) {
+            assertTrue(System.nanoTime() < deadline, "Voters didn't queue on the agenda's writer.");
+            Thread.sleep(1);
+        }
+    }
+
+    private Vote vote(String agendaId, String memberId, VoteOption voteOption) {
+        Vote vote = new Vote(memberId, memberId, voteOption);
+        vote.setAgendaId(agendaId);
+        vote.setSessionId("session-" + agendaId);
+        return vote;
+    }
+
+    /**
+     * Check-then-write store without any synchronization, concurrent writers on an agenda would lose or duplicate
+     * votes. Flags any overlap.
+     */
+    private static class UnsafeStore {
+        private final Map<String, Vote> votes = new HashMap<>();
+        private final AtomicInteger writers = new AtomicInteger();
+        private long yesCount;
+        private long noCount;
+
+        private List<VoteOutcome> insert(List<Vote> batch, AtomicBoolean overlapped) {
+            if (writers.incrementAndGet() > 1) {
+                overlapped.set(true);
+            }
+
+            List<VoteOutcome> outcomes = new ArrayList<>();
+
+            for (Vote vote : batch) {
+                boolean duplicate = votes.containsKey(vote.getMemberId());
+                Thread.yield();
+
+                if (duplicate) {
+                    outcomes.add(VoteOutcome.DUPLICATE);
+                    continue;
+                }
+
+                votes.put(vote.getMemberId(), vote);
+
+                if (vote.getVoteOption().equals(VoteOption.SIM)) {
+                    yesCount++;
+                } else {
+                    noCount++;
+                }
+
+                outcomes.add(VoteOutcome.ACCEPTED);
+            }
+
+            writers.decrementAndGet();
+            return outcomes;
+        }
+    }
+}
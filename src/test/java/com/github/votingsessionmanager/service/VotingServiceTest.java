@@ -1,35 +1,37 @@
 package com.github.votingsessionmanager.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.votingsessionmanager.domain.*;
 import com.github.votingsessionmanager.exception.*;
-import com.github.votingsessionmanager.feign.CPFValidator;
+import com.github.votingsessionmanager.feign.AsyncCPFValidator;
 import com.github.votingsessionmanager.repository.AgendaRepository;
+import com.github.votingsessionmanager.repository.AgendaResultRepository;
 import com.github.votingsessionmanager.repository.SessionRepository;
+import com.github.votingsessionmanager.repository.VoteRepository;
+import com.github.votingsessionmanager.service.VotingMetrics.Rejection;
 import feign.FeignException;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.BDDMockito.given;
 
-@SpringBootTest(properties = {"springdoc.api-docs.enabled=false"})
+@SpringBootTest(properties = {"springdoc.api-docs.enabled=false", "spring.data.mongodb.auto-index-creation=false"})
 public class VotingServiceTest {
 
-    @Autowired
-    private ObjectMapper mapper;
-
     @Mock
     private AgendaRepository agendaRepository;
 
@@ -37,11 +39,46 @@ public class VotingServiceTest {
     private SessionRepository sessionRepository;
 
     @Mock
-    private CPFValidator cpfValidator;
+    private VoteRepository voteRepository;
+
+    @Mock
+    private AgendaResultRepository agendaResultRepository;
+
+    @Mock
+    private VoteWriter voteWriter;
+
+    @Mock
+    private AsyncCPFValidator cpfValidator;
+
+    @Mock
+    private VoteBuffer voteBuffer;
+
+    @Mock
+    private SessionExpiryScheduler sessionExpiryScheduler;
+
+    @Mock
+    private AgendaCache agendaCache;
+
+    @Mock
+    private VotingMetrics votingMetrics;
+
+    @Mock
+    private LiveResults liveResults;
+
+    @Mock
+    private AgendaResultsProjector agendaResultsProjector;
 
     @InjectMocks
     private VotingService service;
 
+    @BeforeEach
+    public void setUp() {
+        given(agendaCache.findById(BDDMockito.anyString())).willAnswer(invocation -> agendaRepository.findById(invocation.getArgument(0)));
+        given(voteWriter.insert(BDDMockito.any(Vote.class))).willAnswer(invocation -> voteRepository.insertIntoOpenedSession(invocation.getArgument(0)));
+        given(voteWriter.insertAll(BDDMockito.anyString(), BDDMockito.anyString(), BDDMockito.anyList()))
+                .willAnswer(invocation -> voteRepository.insertAllIntoOpenedSession(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+    }
+
     @Test
     public void shouldFindAllAgendas() {
         List<Agenda> expected = new ArrayList<>();
@@ -49,11 +86,31 @@ public class VotingServiceTest {
         expected.add(new Agenda("2", "Test 2"));
         expected.add(new Agenda("3", "Test 3"));
 
-        given(agendaRepository.findAll()).willReturn(expected);
+        given(agendaRepository.findPage(null, null, null, null, 100)).willReturn(expected);
+
+        List<Agenda> actual = service.findAgendas(null, null, null, null, 100);
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void shouldFindAgendaResults() {
+        List<AgendaResult> expected = new ArrayList<>();
+        expected.add(new AgendaResult("1", "Test 1", AgendaStatus.OPENED, 2, 1));
+        expected.add(new AgendaResult("2", "Test 2", AgendaStatus.CLOSED, 0, 3));
+
+        given(agendaResultsProjector.isEnabled()).willReturn(true);
+        given(agendaResultRepository.findPage(AgendaStatus.OPENED, "0", 100)).willReturn(expected);
 
-        List<Agenda> actual = service.findAllAgendas();
+        List<AgendaResult> actual = service.findAgendaResults(AgendaStatus.OPENED, "0", 100);
 
         assertEquals(expected, actual);
+        assertEquals(3, actual.get(0).getTurnout());
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenFindingAgendaResultsWithProjectorDisabled() {
+        assertThrows(AgendaResultsDisabledException.class, () -> service.findAgendaResults(null, null, 100));
     }
 
     @Test
@@ -124,16 +181,47 @@ public class VotingServiceTest {
         given(sessionRepository.findByAgendaId(agendaId)).willReturn(sessions);
         given(sessionRepository.save(BDDMockito.any(Session.class))).willReturn(session);
         given(sessionRepository.findById(session.getId())).willReturn(Optional.of(session));
-        given(agendaRepository.save(BDDMockito.any(Agenda.class))).willReturn(dummyAgenda);
+        given(agendaRepository.closeAgenda(agendaId)).willAnswer(invocation -> {
+            dummyAgenda.setStatus(AgendaStatus.CLOSED);
+            return dummyAgenda;
+        });
 
         Agenda actual = service.closeAgenda(update, agendaId);
-        Session updatedSession = sessionRepository.findById(session.getId()).get();
 
         assertEquals(agendaId, actual.getId());
         assertEquals("Test", actual.getDescription());
         assertEquals(AgendaStatus.CLOSED, actual.getStatus());
         assertEquals("EMPATE", actual.getResult());
-        assertEquals(SessionStatus.CLOSED, updatedSession.getStatus());
+        BDDMockito.then(sessionRepository).should().closeOpenedSessions(agendaId);
+        BDDMockito.then(agendaCache).should().invalidate(agendaId);
+    }
+
+    @Test
+    public void shouldRecountUncountedVotesBeforeSettingTheResult() {
+        String agendaId = "1";
+        Session session = new Session("2", agendaId, 2, SessionStatus.CLOSED);
+
+        AgendaStatusDTO update = new AgendaStatusDTO();
+        update.setAgendaStatus(AgendaStatus.CLOSED);
+
+        Agenda agenda = new Agenda(agendaId, "Test");
+        agenda.setStatus(AgendaStatus.OPENED);
+
+        given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
+        given(agendaRepository.closeAgenda(agendaId)).willAnswer(invocation -> {
+            agenda.setStatus(AgendaStatus.CLOSED);
+            return agenda;
+        });
+        given(sessionRepository.findByAgendaId(agendaId)).willReturn(Collections.singletonList(session));
+        given(voteRepository.hasUncounted(agendaId)).willReturn(true);
+        given(voteRepository.tallyBySession(agendaId)).willReturn(Collections.singletonList(new SessionTallyDTO("2", 1, 0)));
+
+        Agenda actual = service.closeAgenda(update, agendaId);
+
+        assertEquals(1, actual.getYesCount());
+        assertEquals("SIM", actual.getResult());
+        BDDMockito.then(agendaRepository).should().setTally(agendaId, 1, 0);
+        BDDMockito.then(voteRepository).should().markCounted(agendaId);
     }
 
     @Test
@@ -180,13 +268,40 @@ public class VotingServiceTest {
         expected.add(new Session("2", agendaId, duration, SessionStatus.CLOSED));
         expected.add(new Session("3", agendaId, duration, SessionStatus.OPENED));
 
-        given(sessionRepository.findAll()).willReturn(expected);
+        given(sessionRepository.findPage(null, null, null, null, 100)).willReturn(expected);
 
-        List<Session> actual = service.findAllSessions();
+        List<Session> actual = service.findSessions(null, null, null, null, 100);
 
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void shouldFindSessionVotesPage() {
+        String sessionId = "1";
+        List<Vote> expected = new ArrayList<>();
+        expected.add(new Vote("1", "123", VoteOption.SIM));
+
+        given(sessionRepository.existsById(sessionId)).willReturn(true);
+        given(voteRepository.findPage(sessionId, "0", 10)).willReturn(expected);
+
+        assertEquals(expected, service.findSessionVotes(sessionId, "0", 10));
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenFindingVotesOfInvalidSession() {
+        given(sessionRepository.existsById("1")).willReturn(false);
+
+        assertThrows(IdNotFoundException.class, () -> service.findSessionVotes("1", null, 10));
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenPageSizeIsTooLarge() {
+        assertThrows(InvalidPageException.class, () -> service.findSessions(null, null, null, null, 1001));
+        given(agendaResultsProjector.isEnabled()).willReturn(true);
+        assertThrows(InvalidPageException.class, () -> service.findAgendas(null, null, null, null, 0));
+        assertThrows(InvalidPageException.class, () -> service.findAgendaResults(null, null, 0));
+    }
+
     @Test
     public void shouldFindAndUpdateSessionById() {
         String sessionId = "1";
@@ -209,6 +324,22 @@ public class VotingServiceTest {
         assertEquals(SessionStatus.CLOSED, actual.getStatus());
     }
 
+    @Test
+    public void shouldReportExpiredSessionAsClosedWithoutWritingIt() {
+        String sessionId = "1";
+
+        Session expired = new Session(sessionId, "1", 1, SessionStatus.OPENED);
+        expired.setEndDate(LocalDateTime.now().minusMinutes(1));
+
+        given(sessionRepository.findById(sessionId)).willReturn(Optional.of(expired));
+
+        Session actual = service.findAndUpdateSessionById(sessionId);
+
+        assertEquals(SessionStatus.CLOSED, actual.getStatus());
+        BDDMockito.then(sessionRepository).should(BDDMockito.never()).closeOpenedSessions("1");
+        BDDMockito.then(agendaRepository).shouldHaveNoInteractions();
+    }
+
     @Test
     public void shouldThrowExceptionWhenTryingToFindAndUpdateSessionWithInvalidId() {
         String sessionId = "1";
@@ -267,7 +398,7 @@ public class VotingServiceTest {
         agenda.setStatus(AgendaStatus.OPENED);
 
         given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
-        given(sessionRepository.findByAgendaId(agendaId)).willReturn(new ArrayList<>());
+        given(sessionRepository.findSummariesByAgendaId(agendaId)).willReturn(new ArrayList<>());
         given(sessionRepository.save(BDDMockito.any(Session.class))).willReturn(expected);
 
         Session actual = service.createSession(expected);
@@ -290,7 +421,7 @@ public class VotingServiceTest {
         agenda.setStatus(AgendaStatus.OPENED);
 
         given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
-        given(sessionRepository.findByAgendaId(agendaId)).willReturn(new ArrayList<>());
+        given(sessionRepository.findSummariesByAgendaId(agendaId)).willReturn(new ArrayList<>());
         given(sessionRepository.save(BDDMockito.any(Session.class))).willReturn(expected);
 
         Session actual = service.createSession(expected);
@@ -326,6 +457,22 @@ public class VotingServiceTest {
         assertThrows(AgendaStatusException.class, () -> service.createSession(session));
     }
 
+    @Test
+    public void shouldThrowExceptionWhenTryingToCreateSessionWithAgendaClosedButStillCached() {
+        String agendaId = "1";
+
+        Agenda cached = new Agenda(agendaId, "test");
+        cached.setStatus(AgendaStatus.OPENED);
+
+        Agenda agenda = new Agenda(agendaId, "test");
+        agenda.setStatus(AgendaStatus.CLOSED);
+
+        given(agendaCache.findById(agendaId)).willReturn(Optional.of(cached));
+        given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
+
+        assertThrows(AgendaStatusException.class, () -> service.createSession(new Session("1", agendaId, 2)));
+    }
+
     @Test
     public void shouldThrowExceptionWhenTryingToCreateSessionWithOpenedSessionInCourse() {
         String agendaId = "1";
@@ -344,13 +491,13 @@ public class VotingServiceTest {
         Session session = new Session("2", agendaId, duration);
 
         given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
-        given(sessionRepository.findByAgendaId(agendaId)).willReturn(sessions);
+        given(sessionRepository.findSummariesByAgendaId(agendaId)).willReturn(sessions);
 
         assertThrows(SessionStatusException.class, () -> service.createSession(session));
     }
 
     @Test
-    public void shouldRegisterVote() throws JsonProcessingException {
+    public void shouldRegisterVote() {
         String id = "1";
         String cpf = "123";
 
@@ -366,18 +513,20 @@ public class VotingServiceTest {
 
         Vote vote = new Vote(id, cpf, VoteOption.SIM);
 
-        ObjectNode cpfValidatorResponse = mapper.readValue("{\"status\":\"ABLE_TO_VOTE\"}", ObjectNode.class);
+        CPFStatusDTO cpfValidatorResponse = new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE);
 
         given(agendaRepository.findById(id)).willReturn(Optional.of(agenda));
-        given(sessionRepository.findByAgendaId(id)).willReturn(sessions);
-        given(cpfValidator.validateCPF(cpf)).willReturn(cpfValidatorResponse);
-        given(sessionRepository.save(BDDMockito.any(Session.class))).willReturn(openedSession);
+        given(sessionRepository.findSummariesByAgendaId(id)).willReturn(sessions);
+        given(cpfValidator.validateCPF(cpf)).willReturn(CompletableFuture.completedFuture(cpfValidatorResponse));
+        given(voteRepository.insertIntoOpenedSession(BDDMockito.any(Vote.class))).willReturn(VoteOutcome.ACCEPTED);
 
-        service.registerVote(vote, id);
+        Vote actual = service.registerVote(vote, id);
 
-        assertEquals(id, openedSession.getVotes().get(0).getMemberId());
-        assertEquals(cpf, openedSession.getVotes().get(0).getMemberCPF());
-        assertEquals(VoteOption.SIM, openedSession.getVotes().get(0).getVoteOption());
+        assertEquals(id, actual.getMemberId());
+        assertEquals(cpf, actual.getMemberCPF());
+        assertEquals(VoteOption.SIM, actual.getVoteOption());
+        assertEquals(id, actual.getAgendaId());
+        assertEquals(openedSession.getId(), actual.getSessionId());
     }
 
     @Test
@@ -459,67 +608,70 @@ public class VotingServiceTest {
         Vote vote = new Vote(id, cpf, VoteOption.SIM);
 
         given(agendaRepository.findById(id)).willReturn(Optional.of(agenda));
-        given(sessionRepository.findByAgendaId(id)).willReturn(sessions);
+        given(sessionRepository.findSummariesByAgendaId(id)).willReturn(sessions);
 
         assertThrows(SessionStatusException.class, () -> service.registerVote(vote, id));
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.CLOSED_SESSION);
     }
 
     @Test
-    public void shouldThrowExceptionWhenTryingToRegisterVoteWithSameMemberId() throws JsonProcessingException {
+    public void shouldThrowExceptionWhenTryingToRegisterVoteAndMemberAlreadyVoted() {
         String id = "1";
         String cpf = "123";
 
         Agenda agenda = new Agenda(id, "Test");
         agenda.setStatus(AgendaStatus.OPENED);
 
-        List<Vote> votes = new ArrayList<>();
-        votes.add(new Vote(id, "321", VoteOption.SIM));
-
         Session openedSession = new Session(id, id, 2, SessionStatus.OPENED);
         openedSession.setStartDate(LocalDateTime.now());
         openedSession.setEndDate(openedSession.getStartDate().plusMinutes(openedSession.getDuration()));
-        openedSession.setVotes(votes);
 
         List<Session> sessions = new ArrayList<>();
         sessions.add(openedSession);
 
         Vote vote = new Vote(id, cpf, VoteOption.SIM);
 
+        CPFStatusDTO cpfValidatorResponse = new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE);
+
         given(agendaRepository.findById(id)).willReturn(Optional.of(agenda));
-        given(sessionRepository.findByAgendaId(id)).willReturn(sessions);
+        given(sessionRepository.findSummariesByAgendaId(id)).willReturn(sessions);
+        given(cpfValidator.validateCPF(cpf)).willReturn(CompletableFuture.completedFuture(cpfValidatorResponse));
+        given(voteRepository.insertIntoOpenedSession(BDDMockito.any(Vote.class))).willReturn(VoteOutcome.DUPLICATE);
 
         assertThrows(InvalidVoteException.class, () -> service.registerVote(vote, id));
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.DUPLICATE);
     }
 
     @Test
-    public void shouldThrowExceptionWhenTryingToRegisterVoteWithSameMemberCpf() throws JsonProcessingException {
+    public void shouldThrowExceptionWhenTryingToRegisterVoteAndSessionClosesMeanwhile() {
         String id = "1";
         String cpf = "123";
 
         Agenda agenda = new Agenda(id, "Test");
         agenda.setStatus(AgendaStatus.OPENED);
 
-        List<Vote> votes = new ArrayList<>();
-        votes.add(new Vote("2", cpf, VoteOption.SIM));
-
         Session openedSession = new Session(id, id, 2, SessionStatus.OPENED);
         openedSession.setStartDate(LocalDateTime.now());
         openedSession.setEndDate(openedSession.getStartDate().plusMinutes(openedSession.getDuration()));
-        openedSession.setVotes(votes);
 
         List<Session> sessions = new ArrayList<>();
         sessions.add(openedSession);
 
         Vote vote = new Vote(id, cpf, VoteOption.SIM);
 
+        CPFStatusDTO cpfValidatorResponse = new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE);
+
         given(agendaRepository.findById(id)).willReturn(Optional.of(agenda));
-        given(sessionRepository.findByAgendaId(id)).willReturn(sessions);
+        given(sessionRepository.findSummariesByAgendaId(id)).willReturn(sessions);
+        given(cpfValidator.validateCPF(cpf)).willReturn(CompletableFuture.completedFuture(cpfValidatorResponse));
+        given(voteRepository.insertIntoOpenedSession(BDDMockito.any(Vote.class))).willReturn(VoteOutcome.CLOSED);
 
-        assertThrows(InvalidVoteException.class, () -> service.registerVote(vote, id));
+        assertThrows(SessionStatusException.class, () -> service.registerVote(vote, id));
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.CLOSED_SESSION);
     }
 
     @Test
-    public void shouldThrowExceptionWhenTryingToRegisterVoteWithUnableToVoteCpf() throws JsonProcessingException {
+    public void shouldThrowExceptionWhenTryingToRegisterVoteWithUnableToVoteCpf() {
         String id = "1";
         String cpf = "123";
 
@@ -535,13 +687,14 @@ public class VotingServiceTest {
 
         Vote vote = new Vote(id, cpf, VoteOption.SIM);
 
-        ObjectNode cpfValidatorResponse = mapper.readValue("{\"status\":\"UNABLE_TO_VOTE\"}", ObjectNode.class);
+        CPFStatusDTO cpfValidatorResponse = new CPFStatusDTO(VoterStatus.UNABLE_TO_VOTE);
 
         given(agendaRepository.findById(id)).willReturn(Optional.of(agenda));
-        given(sessionRepository.findByAgendaId(id)).willReturn(sessions);
-        given(cpfValidator.validateCPF(cpf)).willReturn(cpfValidatorResponse);
+        given(sessionRepository.findSummariesByAgendaId(id)).willReturn(sessions);
+        given(cpfValidator.validateCPF(cpf)).willReturn(CompletableFuture.completedFuture(cpfValidatorResponse));
 
         assertThrows(InvalidVoteException.class, () -> service.registerVote(vote, id));
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.INELIGIBLE);
     }
 
     @Test
@@ -562,42 +715,119 @@ public class VotingServiceTest {
         Vote vote = new Vote(id, cpf, VoteOption.SIM);
 
         given(agendaRepository.findById(id)).willReturn(Optional.of(agenda));
-        given(sessionRepository.findByAgendaId(id)).willReturn(sessions);
-        given(cpfValidator.validateCPF(cpf)).willThrow(FeignException.NotFound.class);
+        given(sessionRepository.findSummariesByAgendaId(id)).willReturn(sessions);
+        CompletableFuture<CPFStatusDTO> cpfValidatorResponse = new CompletableFuture<>();
+        cpfValidatorResponse.completeExceptionally(BDDMockito.mock(FeignException.NotFound.class));
+
+        given(cpfValidator.validateCPF(cpf)).willReturn(cpfValidatorResponse);
 
         assertThrows(InvalidVoteException.class, () -> service.registerVote(vote, id));
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.INVALID_CPF);
     }
 
     @Test
-    public void shouldCalculateResultSIM() {
-        String agendaId = "1";
-
-        List<Vote> firstVotes = new ArrayList<>();
-        firstVotes.add(new Vote("1", "123", VoteOption.SIM));
-        firstVotes.add(new Vote("2", "1234", VoteOption.SIM));
+    public void shouldRegisterVoteBatchWithOneResultPerVote() {
+        String id = "1";
 
-        Session firstSession = new Session("1", agendaId, 2, SessionStatus.CLOSED);
-        firstSession.setStartDate(LocalDateTime.now().minusMinutes(10));
-        firstSession.setEndDate(firstSession.getStartDate().plusMinutes(firstSession.getDuration()));
-        firstSession.setVotes(firstVotes);
+        Agenda agenda = new Agenda(id, "Test");
+        agenda.setStatus(AgendaStatus.OPENED);
 
-        List<Vote> secondVotes = new ArrayList<>();
-        secondVotes.add(new Vote("3", "321", VoteOption.SIM));
-        secondVotes.add(new Vote("4", "4321", VoteOption.NAO));
-        Session secondSession = new Session("2", agendaId, 2, SessionStatus.CLOSED);
-        secondSession.setStartDate(LocalDateTime.now().minusMinutes(10));
-        secondSession.setEndDate(secondSession.getStartDate().plusMinutes(secondSession.getDuration()));
-        secondSession.setVotes(secondVotes);
+        Session openedSession = new Session(id, id, 2, SessionStatus.OPENED);
+        openedSession.setStartDate(LocalDateTime.now());
+        openedSession.setEndDate(openedSession.getStartDate().plusMinutes(openedSession.getDuration()));
 
         List<Session> sessions = new ArrayList<>();
-        sessions.add(firstSession);
-        sessions.add(secondSession);
+        sessions.add(openedSession);
+
+        List<Vote> votes = new ArrayList<>();
+        votes.add(new Vote("1", "111", VoteOption.SIM));
+        votes.add(new Vote("2", "222", VoteOption.NAO));
+        votes.add(new Vote("3", "333", null));
+        votes.add(new Vote("4", "444", VoteOption.SIM));
+        votes.add(new Vote("5", "555", VoteOption.SIM));
+
+        CompletableFuture<CPFStatusDTO> invalidCpf = new CompletableFuture<>();
+        invalidCpf.completeExceptionally(BDDMockito.mock(FeignException.NotFound.class));
+
+        List<VoteOutcome> outcomes = new ArrayList<>();
+        outcomes.add(VoteOutcome.ACCEPTED);
+        outcomes.add(VoteOutcome.DUPLICATE);
+
+        given(agendaRepository.findById(id)).willReturn(Optional.of(agenda));
+        given(sessionRepository.findSummariesByAgendaId(id)).willReturn(sessions);
+        given(cpfValidator.validateCPF("111")).willReturn(CompletableFuture.completedFuture(new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE)));
+        given(cpfValidator.validateCPF("222")).willReturn(CompletableFuture.completedFuture(new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE)));
+        given(cpfValidator.validateCPF("444")).willReturn(CompletableFuture.completedFuture(new CPFStatusDTO(VoterStatus.UNABLE_TO_VOTE)));
+        given(cpfValidator.validateCPF("555")).willReturn(invalidCpf);
+        given(voteRepository.insertAllIntoOpenedSession(BDDMockito.eq(id), BDDMockito.eq(id), BDDMockito.anyList())).willReturn(outcomes);
+
+        List<VoteResultDTO> actual = service.registerVotes(votes, id);
+
+        assertEquals(5, actual.size());
+        assertEquals(VoteOutcome.ACCEPTED, actual.get(0).getOutcome());
+        assertEquals(VoteOutcome.DUPLICATE, actual.get(1).getOutcome());
+        assertEquals(VoteOutcome.INVALID, actual.get(2).getOutcome());
+        assertEquals(VoteOutcome.INELIGIBLE, actual.get(3).getOutcome());
+        assertEquals(VoteOutcome.INVALID, actual.get(4).getOutcome());
+        assertEquals("5", actual.get(4).getMemberId());
+        assertEquals(id, votes.get(0).getSessionId());
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.DUPLICATE);
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.INELIGIBLE);
+        BDDMockito.then(votingMetrics).should().countRejection(Rejection.INVALID_CPF);
+        BDDMockito.then(votingMetrics).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    public void shouldValidateVoteBatchInWindowsAndReportUnavailableValidator() {
+        String id = "1";
+
+        Agenda agenda = new Agenda(id, "Test");
+        agenda.setStatus(AgendaStatus.OPENED);
+
+        Session openedSession = new Session(id, id, 2, SessionStatus.OPENED);
+        openedSession.setStartDate(LocalDateTime.now());
+        openedSession.setEndDate(openedSession.getStartDate().plusMinutes(openedSession.getDuration()));
+
+        List<Vote> votes = new ArrayList<>();
+        votes.add(new Vote("1", "111", VoteOption.SIM));
+        votes.add(new Vote("2", "222", VoteOption.NAO));
+
+        CompletableFuture<CPFStatusDTO> unavailable = CompletableFuture.supplyAsync(() -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+            throw new CPFValidatorUnavailableException();
+        });
+
+        given(agendaRepository.findById(id)).willReturn(Optional.of(agenda));
+        given(sessionRepository.findSummariesByAgendaId(id)).willReturn(Collections.singletonList(openedSession));
+        given(cpfValidator.getCapacity()).willReturn(1);
+        given(cpfValidator.validateCPF("111")).willReturn(unavailable);
+        given(cpfValidator.validateCPF("222")).willAnswer(invocation -> {
+            assertTrue(unavailable.isDone());
+            return CompletableFuture.completedFuture(new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE));
+        });
+        given(voteRepository.insertAllIntoOpenedSession(BDDMockito.eq(id), BDDMockito.eq(id), BDDMockito.anyList()))
+                .willReturn(Collections.singletonList(VoteOutcome.ACCEPTED));
+
+        List<VoteResultDTO> actual = service.registerVotes(votes, id);
+
+        assertEquals(VoteOutcome.UNAVAILABLE, actual.get(0).getOutcome());
+        assertEquals(VoteOutcome.ACCEPTED, actual.get(1).getOutcome());
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenTryingToRegisterEmptyVoteBatch() {
+        assertThrows(InvalidVoteException.class, () -> service.registerVotes(new ArrayList<>(), "1"));
+    }
+
+    @Test
+    public void shouldCalculateResultSIM() {
+        String agendaId = "1";
 
         Agenda agenda = new Agenda(agendaId, "Test");
         agenda.setStatus(AgendaStatus.OPENED);
 
-        given(sessionRepository.findByAgendaId(agendaId)).willReturn(sessions);
-        given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
+        agenda.setYesCount(3);
+        agenda.setNoCount(1);
 
         String result = service.calculateResult(agenda);
 
@@ -608,98 +838,257 @@ public class VotingServiceTest {
     public void shouldCalculateResultNAO() {
         String agendaId = "1";
 
-        List<Vote> firstVotes = new ArrayList<>();
-        firstVotes.add(new Vote("1", "123", VoteOption.NAO));
-        firstVotes.add(new Vote("2", "1234", VoteOption.NAO));
+        Agenda agenda = new Agenda(agendaId, "Test");
+        agenda.setStatus(AgendaStatus.OPENED);
 
-        Session firstSession = new Session("1", agendaId, 2, SessionStatus.CLOSED);
-        firstSession.setStartDate(LocalDateTime.now().minusMinutes(10));
-        firstSession.setEndDate(firstSession.getStartDate().plusMinutes(firstSession.getDuration()));
-        firstSession.setVotes(firstVotes);
+        agenda.setYesCount(1);
+        agenda.setNoCount(3);
 
-        List<Vote> secondVotes = new ArrayList<>();
-        secondVotes.add(new Vote("3", "321", VoteOption.SIM));
-        secondVotes.add(new Vote("4", "4321", VoteOption.NAO));
-        Session secondSession = new Session("2", agendaId, 2, SessionStatus.CLOSED);
-        secondSession.setStartDate(LocalDateTime.now().minusMinutes(10));
-        secondSession.setEndDate(secondSession.getStartDate().plusMinutes(secondSession.getDuration()));
-        secondSession.setVotes(secondVotes);
+        String result = service.calculateResult(agenda);
 
-        List<Session> sessions = new ArrayList<>();
-        sessions.add(firstSession);
-        sessions.add(secondSession);
+        assertEquals("NAO", result);
+    }
+
+    @Test
+    public void shouldCalculateResultEMPATE() {
+        String agendaId = "1";
 
         Agenda agenda = new Agenda(agendaId, "Test");
         agenda.setStatus(AgendaStatus.OPENED);
 
-        given(sessionRepository.findByAgendaId(agendaId)).willReturn(sessions);
-        given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
+        agenda.setYesCount(2);
+        agenda.setNoCount(2);
 
         String result = service.calculateResult(agenda);
 
-        assertEquals("NAO", result);
+        assertEquals("EMPATE", result);
     }
 
     @Test
-    public void shouldCalculateResultEMPATE() {
+    public void shouldCalculateResultEMPATEWithNoVotes() {
         String agendaId = "1";
 
-        List<Vote> firstVotes = new ArrayList<>();
-        firstVotes.add(new Vote("1", "123", VoteOption.NAO));
-        firstVotes.add(new Vote("2", "1234", VoteOption.NAO));
+        Agenda agenda = new Agenda(agendaId, "Test");
+        agenda.setStatus(AgendaStatus.OPENED);
+
+        agenda.setYesCount(0);
+        agenda.setNoCount(0);
+
+        String result = service.calculateResult(agenda);
+
+        assertEquals("EMPATE", result);
+    }
+
+    @Test
+    public void shouldReconcileTallyAndReportDrift() {
+        String agendaId = "1";
+
+        Agenda agenda = new Agenda(agendaId, "Test");
+        agenda.setStatus(AgendaStatus.CLOSED);
+        agenda.setYesCount(1);
+        agenda.setNoCount(2);
 
         Session firstSession = new Session("1", agendaId, 2, SessionStatus.CLOSED);
-        firstSession.setStartDate(LocalDateTime.now().minusMinutes(10));
-        firstSession.setEndDate(firstSession.getStartDate().plusMinutes(firstSession.getDuration()));
-        firstSession.setVotes(firstVotes);
+        firstSession.setYesCount(1);
+        firstSession.setNoCount(1);
 
-        List<Vote> secondVotes = new ArrayList<>();
-        secondVotes.add(new Vote("3", "321", VoteOption.SIM));
-        secondVotes.add(new Vote("4", "4321", VoteOption.SIM));
         Session secondSession = new Session("2", agendaId, 2, SessionStatus.CLOSED);
-        secondSession.setStartDate(LocalDateTime.now().minusMinutes(10));
-        secondSession.setEndDate(secondSession.getStartDate().plusMinutes(secondSession.getDuration()));
-        secondSession.setVotes(secondVotes);
+        secondSession.setNoCount(1);
 
         List<Session> sessions = new ArrayList<>();
         sessions.add(firstSession);
         sessions.add(secondSession);
 
+        given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
+        given(sessionRepository.findByAgendaId(agendaId)).willReturn(sessions);
+        given(voteRepository.tallyBySession(agendaId)).willReturn(Arrays.asList(
+                new SessionTallyDTO("1", 1, 1),
+                new SessionTallyDTO("2", 2, 1)));
+
+        TallyReconciliationDTO actual = service.reconcileTally(agendaId);
+
+        assertTrue(actual.isDrifted());
+        assertEquals(1, actual.getRecordedYesCount());
+        assertEquals(3, actual.getYesCount());
+        assertEquals(2, actual.getNoCount());
+        assertEquals(1, actual.getDriftedSessionIds().size());
+        assertEquals("2", actual.getDriftedSessionIds().get(0));
+
+        BDDMockito.then(sessionRepository).should().setTally("2", 2, 1);
+        BDDMockito.then(agendaRepository).should().setTally(agendaId, 3, 2);
+        BDDMockito.then(agendaRepository).should().setResult(agendaId, "SIM");
+    }
+
+    @Test
+    public void shouldResetTallyOfSessionWithoutStoredVotes() {
+        String agendaId = "1";
+
         Agenda agenda = new Agenda(agendaId, "Test");
-        agenda.setStatus(AgendaStatus.OPENED);
+        agenda.setStatus(AgendaStatus.CLOSED);
+        agenda.setNoCount(1);
+
+        Session session = new Session("1", agendaId, 2, SessionStatus.CLOSED);
+        session.setNoCount(1);
+
+        List<Session> sessions = new ArrayList<>();
+        sessions.add(session);
 
-        given(sessionRepository.findByAgendaId(agendaId)).willReturn(sessions);
         given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
+        given(sessionRepository.findByAgendaId(agendaId)).willReturn(sessions);
+        given(voteRepository.tallyBySession(agendaId)).willReturn(Collections.emptyList());
 
-        String result = service.calculateResult(agenda);
+        TallyReconciliationDTO actual = service.reconcileTally(agendaId);
 
-        assertEquals("EMPATE", result);
+        assertTrue(actual.isDrifted());
+        assertEquals(0, actual.getNoCount());
+        BDDMockito.then(sessionRepository).should().setTally("1", 0, 0);
+        BDDMockito.then(agendaRepository).should().setTally(agendaId, 0, 0);
     }
 
     @Test
-    public void shouldCalculateResultEMPATEWithNoVotes() {
+    public void shouldReconcileTallyWithoutDrift() {
         String agendaId = "1";
 
-        Session firstSession = new Session("1", agendaId, 2, SessionStatus.CLOSED);
-        firstSession.setStartDate(LocalDateTime.now().minusMinutes(10));
-        firstSession.setEndDate(firstSession.getStartDate().plusMinutes(firstSession.getDuration()));
+        Agenda agenda = new Agenda(agendaId, "Test");
+        agenda.setStatus(AgendaStatus.CLOSED);
+        agenda.setYesCount(1);
 
-        Session secondSession = new Session("2", agendaId, 2, SessionStatus.CLOSED);
-        secondSession.setStartDate(LocalDateTime.now().minusMinutes(10));
-        secondSession.setEndDate(secondSession.getStartDate().plusMinutes(secondSession.getDuration()));
+        Session session = new Session("1", agendaId, 2, SessionStatus.CLOSED);
+        session.setYesCount(1);
 
         List<Session> sessions = new ArrayList<>();
-        sessions.add(firstSession);
-        sessions.add(secondSession);
+        sessions.add(session);
+
+        given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
+        given(sessionRepository.findByAgendaId(agendaId)).willReturn(sessions);
+        given(voteRepository.tallyBySession(agendaId)).willReturn(Collections.singletonList(new SessionTallyDTO("1", 1, 0)));
+
+        TallyReconciliationDTO actual = service.reconcileTally(agendaId);
+
+        assertFalse(actual.isDrifted());
+        BDDMockito.then(agendaRepository).should(BDDMockito.never()).setTally(agendaId, 1, 0);
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenTryingToReconcileOpenedAgenda() {
+        String agendaId = "1";
 
         Agenda agenda = new Agenda(agendaId, "Test");
         agenda.setStatus(AgendaStatus.OPENED);
 
-        given(sessionRepository.findByAgendaId(agendaId)).willReturn(sessions);
         given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
 
-        String result = service.calculateResult(agenda);
+        assertThrows(AgendaStatusException.class, () -> service.reconcileTally(agendaId));
+        BDDMockito.then(voteRepository).should(BDDMockito.never()).tallyBySession(agendaId);
+    }
 
-        assertEquals("EMPATE", result);
+    @Test
+    public void shouldAcknowledgeBufferedVoteBeforeItIsPersisted() {
+        String id = "1";
+        String cpf = "123";
+
+        Agenda agenda = new Agenda(id, "Test");
+        agenda.setStatus(AgendaStatus.OPENED);
+
+        Session openedSession = new Session(id, id, 2, SessionStatus.OPENED);
+        openedSession.setStartDate(LocalDateTime.now());
+        openedSession.setEndDate(openedSession.getStartDate().plusMinutes(openedSession.getDuration()));
+
+        List<Session> sessions = new ArrayList<>();
+        sessions.add(openedSession);
+
+        Vote vote = new Vote(id, cpf, VoteOption.SIM);
+
+        given(agendaRepository.findById(id)).willReturn(Optional.of(agenda));
+        given(sessionRepository.findSummariesByAgendaId(id)).willReturn(sessions);
+        given(cpfValidator.validateCPF(cpf)).willReturn(CompletableFuture.completedFuture(new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE)));
+        given(voteBuffer.isEnabled()).willReturn(true);
+        given(voteBuffer.offer(vote)).willReturn(new CompletableFuture<>());
+
+        assertEquals(AckLevel.BUFFERED, service.registerVote(vote, id, AckLevel.BUFFERED));
+        assertEquals(openedSession.getId(), vote.getSessionId());
+        BDDMockito.then(voteRepository).should(BDDMockito.never()).insertIntoOpenedSession(vote);
+    }
+
+    @Test
+    public void shouldWaitForBufferedVoteWhenPersistedAckIsRequested() {
+        String id = "1";
+        String cpf = "123";
+
+        Agenda agenda = new Agenda(id, "Test");
+        agenda.setStatus(AgendaStatus.OPENED);
+
+        Session openedSession = new Session(id, id, 2, SessionStatus.OPENED);
+        openedSession.setStartDate(LocalDateTime.now());
+        openedSession.setEndDate(openedSession.getStartDate().plusMinutes(openedSession.getDuration()));
+
+        List<Session> sessions = new ArrayList<>();
+        sessions.add(openedSession);
+
+        Vote vote = new Vote(id, cpf, VoteOption.SIM);
+
+        given(agendaRepository.findById(id)).willReturn(Optional.of(agenda));
+        given(sessionRepository.findSummariesByAgendaId(id)).willReturn(sessions);
+        given(cpfValidator.validateCPF(cpf)).willReturn(CompletableFuture.completedFuture(new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE)));
+        given(voteBuffer.isEnabled()).willReturn(true);
+        given(voteBuffer.offer(vote)).willReturn(CompletableFuture.completedFuture(VoteOutcome.DUPLICATE));
+
+        assertThrows(InvalidVoteException.class, () -> service.registerVote(vote, id, AckLevel.PERSISTED));
+    }
+
+    @Test
+    public void shouldLookUpAgendaOnceAndCloseItsSessionsInOneWrite() {
+        String agendaId = "1";
+
+        Agenda agenda = new Agenda(agendaId, "Test");
+        agenda.setStatus(AgendaStatus.CLOSED);
+
+        List<Session> sessions = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++) {
+            Session session = new Session(String.valueOf(i), agendaId, 2, SessionStatus.OPENED);
+            session.setEndDate(LocalDateTime.now().plusMinutes(i % 2 == 0 ? 1 : -1));
+            sessions.add(session);
+        }
+
+        given(agendaRepository.findById(agendaId)).willReturn(Optional.of(agenda));
+        given(sessionRepository.findByAgendaId(agendaId)).willReturn(sessions);
+
+        List<Session> actual = service.findAndUpdateSessionsByAgendaId(agendaId);
+
+        assertTrue(actual.stream().allMatch(session -> session.getStatus().equals(SessionStatus.CLOSED)));
+        BDDMockito.then(sessionRepository).should(BDDMockito.times(1)).findByAgendaId(agendaId);
+        BDDMockito.then(agendaRepository).should(BDDMockito.times(1)).findById(agendaId);
+        BDDMockito.then(sessionRepository).should(BDDMockito.times(1)).closeOpenedSessions(agendaId);
+        BDDMockito.verifyNoMoreInteractions(agendaRepository, sessionRepository);
+    }
+
+    @Test
+    public void shouldRegisterVoteWithOneAgendaLookUp() {
+        String id = "1";
+        String cpf = "123";
+
+        Agenda agenda = new Agenda(id, "Test");
+        agenda.setStatus(AgendaStatus.OPENED);
+
+        List<Session> sessions = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            Session session = new Session(String.valueOf(i), id, 2, i == 0 ? SessionStatus.OPENED : SessionStatus.CLOSED);
+            session.setEndDate(LocalDateTime.now().plusMinutes(i == 0 ? 1 : -1));
+            sessions.add(session);
+        }
+
+        given(agendaRepository.findById(id)).willReturn(Optional.of(agenda));
+        given(sessionRepository.findSummariesByAgendaId(id)).willReturn(sessions);
+        given(cpfValidator.validateCPF(cpf)).willReturn(CompletableFuture.completedFuture(new CPFStatusDTO(VoterStatus.ABLE_TO_VOTE)));
+        given(voteRepository.insertIntoOpenedSession(BDDMockito.any(Vote.class))).willReturn(VoteOutcome.ACCEPTED);
+
+        service.registerVote(new Vote(id, cpf, VoteOption.SIM), id);
+
+        BDDMockito.then(agendaRepository).should(BDDMockito.times(1)).findById(id);
+        BDDMockito.then(sessionRepository).should(BDDMockito.times(1)).findSummariesByAgendaId(id);
+        BDDMockito.then(voteRepository).should(BDDMockito.times(1)).insertIntoOpenedSession(BDDMockito.any(Vote.class));
+        BDDMockito.verifyNoMoreInteractions(agendaRepository, sessionRepository, voteRepository);
     }
 }